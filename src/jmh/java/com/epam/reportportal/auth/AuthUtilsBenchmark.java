@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.primitives.Bytes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.oauth2.common.util.SerializationUtils;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures recovery of authentication serialized with outdated serialVersionUID.
+ * Baseline reproduces previous implementation: failed attempt of plain de-serialization
+ * followed by second pass resolving local descriptors for every class. Logging of
+ * baseline is omitted, so real difference is even bigger
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuthUtilsBenchmark {
+
+	private byte[] mismatched;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		User user = new User("default", "", Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER")));
+		UsernamePasswordAuthenticationToken userAuth = new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities());
+		OAuth2Request request = new OAuth2Request(ImmutableMap.of("grant_type", "password", "username", "default"), "ui",
+				Collections.emptyList(), true, ImmutableSet.of("ui"), Collections.emptySet(), null, Collections.emptySet(),
+				Collections.emptyMap());
+		mismatched = SerializationUtils.serialize(new OAuth2Authentication(request, userAuth));
+
+		// class descriptor is class name followed by serialVersionUID. Change UID to emulate old version of class
+		byte[] className = OAuth2Authentication.class.getName().getBytes(StandardCharsets.UTF_8);
+		int uidPosition = Bytes.indexOf(mismatched, className) + className.length;
+		mismatched[uidPosition + 7] ^= 1;
+	}
+
+	@Benchmark
+	public Object recoverBaseline() throws IOException, ClassNotFoundException {
+		try {
+			return SerializationUtils.deserialize(mismatched);
+		} catch (IllegalArgumentException e) {
+			if (!InvalidClassException.class.equals(e.getCause().getClass())) {
+				throw e;
+			}
+			return new UncachedReplacingInputStream(new ByteArrayInputStream(mismatched)).readObject();
+		}
+	}
+
+	@Benchmark
+	public Object recover() {
+		return AuthUtils.deserializeSafely(mismatched, null);
+	}
+
+	private static class UncachedReplacingInputStream extends ObjectInputStream {
+
+		UncachedReplacingInputStream(InputStream in) throws IOException {
+			super(in);
+		}
+
+		@Override
+		protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+			ObjectStreamClass streamDescriptor = super.readClassDescriptor();
+			Class<?> localClass;
+			try {
+				localClass = Class.forName(streamDescriptor.getName());
+			} catch (ClassNotFoundException e) {
+				return streamDescriptor;
+			}
+			ObjectStreamClass localDescriptor = ObjectStreamClass.lookup(localClass);
+			if (null != localDescriptor && localDescriptor.getSerialVersionUID() != streamDescriptor.getSerialVersionUID()) {
+				return localDescriptor;
+			}
+			return streamDescriptor;
+		}
+	}
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth;
+
+import com.google.common.collect.ImmutableMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.ClientDetails;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.OAuth2RequestFactory;
+import org.springframework.security.oauth2.provider.client.BaseClientDetails;
+import org.springframework.security.oauth2.provider.client.InMemoryClientDetailsService;
+import org.springframework.security.oauth2.provider.request.DefaultOAuth2RequestFactory;
+import org.springframework.security.oauth2.provider.token.store.InMemoryTokenStore;
+
+import java.util.Collections;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Minting of api token as done by {@link TokenServicesFacade#createToken(ReportPortalClient, String, org.springframework.security.core.Authentication)}.
+ * Baseline reproduces previous implementation loading client details and building request through
+ * {@link DefaultOAuth2RequestFactory} on each call. Token store is in-memory, so results show cost of
+ * request building rather than storage. Run with '-prof gc' to compare allocation rate per operation
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenServicesFacadeBenchmark {
+
+	private static final int USERS = 1000;
+
+	private InMemoryClientDetailsService clientDetailsService;
+	private OAuth2RequestFactory requestFactory;
+	private ReportPortalTokenServices tokenServices;
+	private TokenServicesFacade facade;
+	private UsernamePasswordAuthenticationToken[] users;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		clientDetailsService = new InMemoryClientDetailsService();
+		clientDetailsService.setClientDetailsStore(ImmutableMap.of(ReportPortalClient.ui.name(),
+				client(ReportPortalClient.ui, "refresh_token,password", 3600), ReportPortalClient.api.name(),
+				client(ReportPortalClient.api, "password", -1), ReportPortalClient.internal.name(),
+				client(ReportPortalClient.internal, "client_credentials", 3600)));
+		requestFactory = new DefaultOAuth2RequestFactory(clientDetailsService);
+
+		tokenServices = new ReportPortalTokenServices();
+		tokenServices.setTokenStore(new InMemoryTokenStore());
+		tokenServices.setClientDetailsService(clientDetailsService);
+		facade = new TokenServicesFacade(tokenServices, new InMemoryTokenStore(), clientDetailsService);
+		facade.afterSingletonsInstantiated();
+
+		users = new UsernamePasswordAuthenticationToken[USERS];
+		for (int i = 0; i < USERS; i++) {
+			User user = new User("user" + i, "", Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER")));
+			users[i] = new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities());
+		}
+	}
+
+	@Benchmark
+	public OAuth2AccessToken createTokenBaseline() {
+		UsernamePasswordAuthenticationToken user = nextUser();
+		ClientDetails clientDetails = clientDetailsService.loadClientByClientId(ReportPortalClient.api.name());
+		OAuth2Request request = requestFactory.createOAuth2Request(clientDetails, requestFactory.createTokenRequest(
+				ImmutableMap.of("client_id", ReportPortalClient.api.name(), "username", user.getName(), "grant", "password"),
+				clientDetails));
+		return tokenServices.createAccessToken(new OAuth2Authentication(request, user));
+	}
+
+	@Benchmark
+	public OAuth2AccessToken createToken() {
+		UsernamePasswordAuthenticationToken user = nextUser();
+		return facade.createToken(ReportPortalClient.api, user.getName(), user);
+	}
+
+	private UsernamePasswordAuthenticationToken nextUser() {
+		return users[ThreadLocalRandom.current().nextInt(USERS)];
+	}
+
+	private static ClientDetails client(ReportPortalClient client, String grantTypes, int validity) {
+		BaseClientDetails details = new BaseClientDetails(client.name(), null, client.name(), grantTypes, null);
+		details.setAccessTokenValiditySeconds(validity);
+		return details;
+	}
+}
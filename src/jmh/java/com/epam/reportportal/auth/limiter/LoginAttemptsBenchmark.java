@@ -0,0 +1,116 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.limiter;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Credential stuffing from many source IPs: each operation checks whether random source
+ * is blocked and records its failure. Compares {@link SlidingWindowLimiter} with the former
+ * guava cache of 5000 counters. That a blocked source survives such a flood is checked by
+ * {@code SlidingWindowLimiterTest}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(16)
+@Fork(1)
+public class LoginAttemptsBenchmark {
+
+	private static final String BLOCKED = "10.0.0.1";
+	private static final int MAX_ATTEMPTS = 3;
+
+	@Param({ "sliding-window", "guava" })
+	public String limiterType;
+
+	@Param({ "100000" })
+	public int sources;
+
+	private SlidingWindowLimiter limiter;
+	private LoadingCache<String, AtomicInteger> failures;
+	private String[] ips;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		limiter = new SlidingWindowLimiter(new AttemptPolicy(MAX_ATTEMPTS, 30), 100_000);
+		failures = CacheBuilder.newBuilder().maximumSize(5000).expireAfterWrite(30, TimeUnit.SECONDS)
+				.build(new CacheLoader<String, AtomicInteger>() {
+					@Override
+					public AtomicInteger load(String key) {
+						return new AtomicInteger(0);
+					}
+				});
+		ips = new String[sources];
+		for (int i = 0; i < sources; i++) {
+			ips[i] = "192." + (i >>> 16 & 0xFF) + "." + (i >>> 8 & 0xFF) + "." + (i & 0xFF);
+		}
+		for (int i = 0; i <= MAX_ATTEMPTS; i++) {
+			recordFailure(BLOCKED);
+		}
+	}
+
+	@Benchmark
+	public boolean attempt() {
+		String ip = ips[ThreadLocalRandom.current().nextInt(ips.length)];
+		boolean blocked = isBlocked(ip);
+		if (!blocked) {
+			recordFailure(ip);
+		}
+		return blocked;
+	}
+
+	private boolean isBlocked(String ip) {
+		if ("guava".equals(limiterType)) {
+			AtomicInteger attempts = failures.getIfPresent(ip);
+			return null != attempts && attempts.get() > MAX_ATTEMPTS;
+		}
+		return limiter.isBlocked(ip);
+	}
+
+	private void recordFailure(String ip) {
+		if ("guava".equals(limiterType)) {
+			failures.getUnchecked(ip).incrementAndGet();
+		} else {
+			limiter.recordFailure(ip);
+		}
+	}
+}
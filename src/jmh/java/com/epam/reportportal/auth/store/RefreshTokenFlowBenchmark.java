@@ -0,0 +1,215 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.store;
+
+import com.epam.reportportal.auth.store.codec.BinaryTokenCodec;
+import com.epam.reportportal.auth.store.codec.TokenCodec;
+import com.epam.reportportal.auth.store.entity.OAuth2AccessTokenEntity;
+import com.epam.reportportal.auth.store.entity.OAuth2RefreshTokenEntity;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.mongodb.MongoClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.DefaultAuthenticationKeyGenerator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Storage part of refresh_token grant of ui client: reading refresh token with its authentication
+ * and replacing access token issued with it. Compares requests made by default token services
+ * (two projected reads of refresh token, lookup of access token, delete and save) with
+ * single document read, findAndRemove and conditional upsert.
+ * Requires running MongoDB, see host and port params. Dataset is generated in
+ * a separate database which is dropped after the run
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RefreshTokenFlowBenchmark {
+
+	private static final String DATABASE = "rp_refresh_flow_benchmark";
+
+	@Param("localhost")
+	public String host;
+
+	@Param("27017")
+	public int port;
+
+	@Param("10000")
+	public int sessions;
+
+	private MongoClient mongoClient;
+	private MongoTemplate mongoTemplate;
+	private TokenCodec codec;
+	private DefaultAuthenticationKeyGenerator keyGenerator;
+	private List<String> refreshTokens;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		mongoClient = new MongoClient(host, port);
+		mongoClient.dropDatabase(DATABASE);
+		mongoTemplate = new MongoTemplate(mongoClient, DATABASE);
+		mongoTemplate.indexOps(OAuth2AccessTokenEntity.class).ensureIndex(new Index("refreshToken", Sort.Direction.ASC));
+		mongoTemplate.indexOps(OAuth2AccessTokenEntity.class)
+				.ensureIndex(new Index("authenticationId", Sort.Direction.ASC).unique());
+
+		codec = new BinaryTokenCodec();
+		keyGenerator = new DefaultAuthenticationKeyGenerator();
+		refreshTokens = new ArrayList<>(sessions);
+		for (int i = 0; i < sessions; i++) {
+			OAuth2Authentication authentication = authentication("user" + i);
+			OAuth2RefreshToken refreshToken = new DefaultExpiringOAuth2RefreshToken(UUID.randomUUID().toString(),
+					new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1)));
+			OAuth2RefreshTokenEntity refreshEntity = new OAuth2RefreshTokenEntity();
+			refreshEntity.setTokenId(refreshToken.getValue());
+			refreshEntity.setoAuth2RefreshToken(codec.encodeRefreshToken(refreshToken));
+			refreshEntity.setAuthentication(codec.encodeAuthentication(authentication));
+			mongoTemplate.insert(refreshEntity);
+			mongoTemplate.insert(accessTokenEntity(accessToken(refreshToken), authentication));
+			refreshTokens.add(refreshToken.getValue());
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		mongoClient.dropDatabase(DATABASE);
+		mongoClient.close();
+	}
+
+	@Benchmark
+	public OAuth2AccessToken defaultFlow() {
+		String refreshTokenValue = nextRefreshToken();
+		Query byId = Query.query(Criteria.where("_id").is(refreshTokenValue));
+		byId.fields().include("oAuth2RefreshToken");
+		OAuth2RefreshToken refreshToken = codec.decodeRefreshToken(
+				mongoTemplate.findOne(byId, OAuth2RefreshTokenEntity.class).getoAuth2RefreshToken());
+		Query authenticationById = Query.query(Criteria.where("_id").is(refreshTokenValue));
+		authenticationById.fields().include("authentication");
+		OAuth2Authentication authentication = codec.decodeAuthentication(
+				mongoTemplate.findOne(authenticationById, OAuth2RefreshTokenEntity.class).getAuthentication(), null);
+
+		Query byRefreshToken = Query.query(Criteria.where("refreshToken").is(refreshTokenValue));
+		byRefreshToken.fields().include("_id");
+		OAuth2AccessTokenEntity existing = mongoTemplate.findOne(byRefreshToken, OAuth2AccessTokenEntity.class);
+		mongoTemplate.remove(Query.query(Criteria.where("_id").is(existing.getTokenId())), OAuth2AccessTokenEntity.class);
+
+		OAuth2AccessToken accessToken = accessToken(refreshToken);
+		mongoTemplate.save(accessTokenEntity(accessToken, authentication));
+		return accessToken;
+	}
+
+	@Benchmark
+	public OAuth2AccessToken singleReadFlow() {
+		String refreshTokenValue = nextRefreshToken();
+		OAuth2RefreshTokenEntity stored = mongoTemplate.findById(refreshTokenValue, OAuth2RefreshTokenEntity.class);
+		OAuth2RefreshToken refreshToken = codec.decodeRefreshToken(stored.getoAuth2RefreshToken());
+		OAuth2Authentication authentication = codec.decodeAuthentication(stored.getAuthentication(), null);
+
+		Query byRefreshToken = Query.query(Criteria.where("refreshToken").is(refreshTokenValue));
+		byRefreshToken.fields().include("_id");
+		mongoTemplate.findAndRemove(byRefreshToken, OAuth2AccessTokenEntity.class);
+
+		OAuth2AccessToken accessToken = accessToken(refreshToken);
+		Query byAuthentication = Query.query(Criteria.where("authenticationId").is(keyGenerator.extractKey(authentication)));
+		byAuthentication.fields().include("token");
+		Update update = Update.update("authentication", codec.encodeAuthentication(authentication))
+				.setOnInsert("_id", accessToken.getValue())
+				.setOnInsert("token", codec.encodeAccessToken(accessToken))
+				.setOnInsert("userName", authentication.getName())
+				.setOnInsert("clientId", "ui")
+				.setOnInsert("refreshToken", refreshTokenValue)
+				.setOnInsert("expiresAt", accessToken.getExpiration());
+		mongoTemplate.findAndModify(byAuthentication, update, FindAndModifyOptions.options().upsert(true).returnNew(true),
+				OAuth2AccessTokenEntity.class);
+		return accessToken;
+	}
+
+	private String nextRefreshToken() {
+		return refreshTokens.get(ThreadLocalRandom.current().nextInt(refreshTokens.size()));
+	}
+
+	private OAuth2AccessTokenEntity accessTokenEntity(OAuth2AccessToken token, OAuth2Authentication authentication) {
+		OAuth2AccessTokenEntity entity = new OAuth2AccessTokenEntity();
+		entity.setTokenId(token.getValue());
+		entity.setToken(codec.encodeAccessToken(token));
+		entity.setAuthentication(codec.encodeAuthentication(authentication));
+		entity.setAuthenticationId(keyGenerator.extractKey(authentication));
+		entity.setUserName(authentication.getName());
+		entity.setClientId("ui");
+		entity.setRefreshToken(token.getRefreshToken().getValue());
+		entity.setExpiresAt(token.getExpiration());
+		return entity;
+	}
+
+	private static OAuth2AccessToken accessToken(OAuth2RefreshToken refreshToken) {
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(UUID.randomUUID().toString());
+		token.setExpiration(new Date(System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(30)));
+		token.setScope(Collections.singleton("ui"));
+		token.setRefreshToken(refreshToken);
+		return token;
+	}
+
+	private static OAuth2Authentication authentication(String username) {
+		User user = new User(username, "", Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER")));
+		UsernamePasswordAuthenticationToken userAuth = new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities());
+		OAuth2Request request = new OAuth2Request(ImmutableMap.of("grant_type", "refresh_token", "username", username), "ui",
+				Collections.emptyList(), true, ImmutableSet.of("ui"), Collections.emptySet(), null, Collections.emptySet(),
+				Collections.emptyMap());
+		return new OAuth2Authentication(request, userAuth);
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.store;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Many threads reading a few tokens while cache is periodically cleared, which is what
+ * parallel reporting threads sharing one api token do on cold cache.
+ * Compares coalesced loads of {@link OAuth2TokenCache} with check-then-load cache,
+ * where each concurrent miss goes to the storage. Loader burns CPU to emulate query and
+ * de-serialization. Loads and cache clears are reported as secondary results, their ratio
+ * is count of storage reads caused by each clear
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(64)
+@Fork(1)
+public class TokenCacheContentionBenchmark {
+
+	@Param({ "coalescing", "check-then-load" })
+	public String cacheType;
+
+	@Param({ "4" })
+	public int keys;
+
+	/* operations between cache clears */
+	@Param({ "10000" })
+	public int clearEvery;
+
+	private final AtomicLong operations = new AtomicLong();
+
+	private OAuth2TokenCache tokenCache;
+	private Cache<String, OAuth2AccessToken> plainCache;
+	private String[] tokenIds;
+
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	@State(Scope.Thread)
+	public static class Counters {
+		public long loads;
+		public long clears;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			loads = 0;
+			clears = 0;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		tokenCache = new OAuth2TokenCache(1000, 60, 10);
+		plainCache = CacheBuilder.newBuilder().maximumSize(1000).expireAfterWrite(60, TimeUnit.SECONDS).build();
+		tokenIds = new String[keys];
+		for (int i = 0; i < keys; i++) {
+			tokenIds[i] = "token-" + i;
+		}
+	}
+
+	@Benchmark
+	public OAuth2AccessToken read(Counters counters) {
+		if (operations.incrementAndGet() % clearEvery == 0) {
+			counters.clears++;
+			tokenCache.evictAll();
+			plainCache.invalidateAll();
+		}
+		String tokenId = tokenIds[ThreadLocalRandom.current().nextInt(keys)];
+		if ("coalescing".equals(cacheType)) {
+			return tokenCache.getAccessToken(tokenId, id -> load(id, counters));
+		}
+		OAuth2AccessToken cached = plainCache.getIfPresent(tokenId);
+		if (null == cached) {
+			cached = load(tokenId, counters);
+			plainCache.put(tokenId, cached);
+		}
+		return cached;
+	}
+
+	private static OAuth2AccessToken load(String tokenId, Counters counters) {
+		counters.loads++;
+		Blackhole.consumeCPU(200_000);
+		return new DefaultOAuth2AccessToken(tokenId);
+	}
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.store;
+
+import com.epam.reportportal.auth.store.codec.BinaryTokenCodec;
+import com.epam.reportportal.auth.store.codec.JavaSerializationTokenCodec;
+import com.epam.reportportal.auth.store.codec.TokenCodec;
+import com.epam.reportportal.auth.store.entity.OAuth2AccessTokenEntity;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.mongodb.MongoClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.DefaultAuthenticationKeyGenerator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares full and projected reads of access token documents.
+ * Requires running MongoDB, see host and port params. Dataset is generated in
+ * a separate database which is dropped after the run
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenProjectionBenchmark {
+
+	private static final String DATABASE = "rp_token_projection_benchmark";
+
+	@Param("localhost")
+	public String host;
+
+	@Param("27017")
+	public int port;
+
+	@Param("100000")
+	public int tokens;
+
+	@Param({ "java", "binary" })
+	public String codecName;
+
+	private MongoClient mongoClient;
+	private MongoTemplate mongoTemplate;
+	private List<String> tokenIds;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		mongoClient = new MongoClient(host, port);
+		mongoClient.dropDatabase(DATABASE);
+		mongoTemplate = new MongoTemplate(mongoClient, DATABASE);
+
+		TokenCodec codec = "java".equals(codecName) ? new JavaSerializationTokenCodec() : new BinaryTokenCodec();
+		DefaultAuthenticationKeyGenerator keyGenerator = new DefaultAuthenticationKeyGenerator();
+		tokenIds = new ArrayList<>(tokens);
+		List<OAuth2AccessTokenEntity> batch = new ArrayList<>();
+		for (int i = 0; i < tokens; i++) {
+			DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(UUID.randomUUID().toString());
+			token.setExpiration(new Date(System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(30)));
+			token.setScope(Collections.singleton("ui"));
+			OAuth2Authentication authentication = authentication("user" + i % 1000);
+
+			OAuth2AccessTokenEntity entity = new OAuth2AccessTokenEntity();
+			entity.setTokenId(token.getValue());
+			entity.setToken(codec.encodeAccessToken(token));
+			entity.setAuthentication(codec.encodeAuthentication(authentication));
+			entity.setAuthenticationId(keyGenerator.extractKey(authentication));
+			entity.setUserName(authentication.getName());
+			entity.setClientId("ui");
+			entity.setExpiresAt(token.getExpiration());
+			batch.add(entity);
+			tokenIds.add(token.getValue());
+
+			if (batch.size() == 1000) {
+				mongoTemplate.insert(batch, OAuth2AccessTokenEntity.class);
+				batch.clear();
+			}
+		}
+		mongoTemplate.insert(batch, OAuth2AccessTokenEntity.class);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		mongoClient.dropDatabase(DATABASE);
+		mongoClient.close();
+	}
+
+	@Benchmark
+	public OAuth2AccessTokenEntity readFull() {
+		return mongoTemplate.findOne(byId(), OAuth2AccessTokenEntity.class);
+	}
+
+	@Benchmark
+	public OAuth2AccessTokenEntity readTokenOnly() {
+		Query query = byId();
+		query.fields().include("token");
+		return mongoTemplate.findOne(query, OAuth2AccessTokenEntity.class);
+	}
+
+	@Benchmark
+	public List<OAuth2AccessTokenEntity> findUserTokensFull() {
+		return mongoTemplate.find(byUser(), OAuth2AccessTokenEntity.class);
+	}
+
+	@Benchmark
+	public List<OAuth2AccessTokenEntity> findUserTokensTokenOnly() {
+		Query query = byUser();
+		query.fields().include("token");
+		return mongoTemplate.find(query, OAuth2AccessTokenEntity.class);
+	}
+
+	private Query byId() {
+		return Query.query(Criteria.where("_id").is(tokenIds.get(ThreadLocalRandom.current().nextInt(tokenIds.size()))));
+	}
+
+	private static Query byUser() {
+		return Query.query(Criteria.where("clientId").is("ui").and("userName").is("user" + ThreadLocalRandom.current().nextInt(1000)));
+	}
+
+	private static OAuth2Authentication authentication(String username) {
+		User user = new User(username, "", Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER")));
+		UsernamePasswordAuthenticationToken userAuth = new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities());
+		userAuth.setDetails(ImmutableMap.of("grant_type", "password", "username", username));
+		OAuth2Request request = new OAuth2Request(ImmutableMap.of("grant_type", "password", "username", username), "ui",
+				Collections.emptyList(), true, ImmutableSet.of("ui"), Collections.emptySet(), null, Collections.emptySet(),
+				Collections.emptyMap());
+		return new OAuth2Authentication(request, userAuth);
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.store.codec;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares encoding/decoding time of token documents in java serialization and binary formats.
+ * Sizes of encoded documents are compared by {@code BinaryTokenCodecTest}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenCodecBenchmark {
+
+	@Param({ "java", "binary" })
+	public String codecName;
+
+	private TokenCodec codec;
+	private OAuth2AccessToken token;
+	private OAuth2Authentication authentication;
+	private byte[] encodedToken;
+	private byte[] encodedAuthentication;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		codec = "java".equals(codecName) ? new JavaSerializationTokenCodec() : new BinaryTokenCodec();
+
+		DefaultOAuth2AccessToken accessToken = new DefaultOAuth2AccessToken(UUID.randomUUID().toString());
+		accessToken.setExpiration(new Date(System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(30)));
+		accessToken.setScope(Collections.singleton("ui"));
+		token = accessToken;
+
+		User user = new User("default", "", Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER")));
+		UsernamePasswordAuthenticationToken userAuth = new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities());
+		userAuth.setDetails(ImmutableMap.of("grant_type", "password", "username", "default"));
+		OAuth2Request request = new OAuth2Request(ImmutableMap.of("grant_type", "password", "username", "default"), "ui",
+				Collections.emptyList(), true, ImmutableSet.of("ui"), Collections.emptySet(), null, Collections.emptySet(),
+				Collections.emptyMap());
+		authentication = new OAuth2Authentication(request, userAuth);
+
+		encodedToken = codec.encodeAccessToken(token);
+		encodedAuthentication = codec.encodeAuthentication(authentication);
+	}
+
+	@Benchmark
+	public byte[] encodeToken() {
+		return codec.encodeAccessToken(token);
+	}
+
+	@Benchmark
+	public OAuth2AccessToken decodeToken() {
+		return codec.decodeAccessToken(encodedToken);
+	}
+
+	@Benchmark
+	public byte[] encodeAuthentication() {
+		return codec.encodeAuthentication(authentication);
+	}
+
+	@Benchmark
+	public OAuth2Authentication decodeAuthentication() {
+		return codec.decodeAuthentication(encodedAuthentication, null);
+	}
+}
@@ -21,23 +21,30 @@
 package com.epam.reportportal.auth;
 
 import com.epam.ta.reportportal.database.entity.user.UserRole;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
-import org.springframework.security.oauth2.common.util.SerializationUtils;
 
 import javax.annotation.Nullable;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InvalidClassException;
 import java.io.ObjectInputStream;
 import java.io.ObjectStreamClass;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * Authentication utils
@@ -50,12 +57,19 @@ public final class AuthUtils {
         //statics only
     }
 
-    public static final Function<UserRole, List<GrantedAuthority>> AS_AUTHORITIES = userRole -> Collections
-            .singletonList(new SimpleGrantedAuthority(userRole.getAuthority()));
+    /*
+     * Authorities are immutable, so single list per role is shared
+     */
+    private static final Map<UserRole, List<GrantedAuthority>> ROLE_AUTHORITIES = Maps.immutableEnumMap(Arrays
+            .stream(UserRole.values()).collect(Collectors.toMap(Function.identity(),
+                    userRole -> Collections.singletonList(new SimpleGrantedAuthority(userRole.getAuthority())))));
+
+    public static final Function<UserRole, List<GrantedAuthority>> AS_AUTHORITIES = userRole -> Preconditions
+            .checkNotNull(ROLE_AUTHORITIES.get(userRole), "Unknown user role %s", userRole);
 
     /**
      * Dirty hack to fix <a href="https://github.com/spring-projects/spring-security-oauth/issues/665">Spring Security Issue</a>
-     * If there is serialUid mismatch, replaces Uuid and tries de-serialize object again
+     * If there is serialUid mismatch, replaces Uuid and de-serializes object in the same pass
      * Introduces mismatchCallback function to handle successful recovery of Uuid mismatch
      *
      * @param data             Data to de-serialize
@@ -65,24 +79,14 @@ public final class AuthUtils {
      */
     @SuppressWarnings("unchecked")
     public static <T> T deserializeSafely(byte[] data, @Nullable Consumer<T> mismatchCallback) {
-        try {
-            return SerializationUtils.deserialize(data);
-        } catch (IllegalArgumentException e) {
-            boolean serialUidMismatch = java.io.InvalidClassException.class.equals(e.getCause().getClass());
-            if (!serialUidMismatch) {
-                throw e;
-            }
-
-            try {
-                ObjectInputStream is = new SerialUidReplacingInputStream(new ByteArrayInputStream(data));
-                T t = (T) is.readObject();
-                if (null != mismatchCallback) {
-                    mismatchCallback.accept(t);
-                }
-                return t;
-            } catch (IOException | ClassNotFoundException e1) {
-                throw new IllegalArgumentException("Unable to serialize object", e1);
+        try (SerialUidReplacingInputStream is = new SerialUidReplacingInputStream(new ByteArrayInputStream(data))) {
+            T t = (T) is.readObject();
+            if (is.isReplaced() && null != mismatchCallback) {
+                mismatchCallback.accept(t);
             }
+            return t;
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalArgumentException("Unable to deserialize object", e);
         }
     }
 
@@ -90,33 +94,66 @@ public final class AuthUtils {
 
         private static Logger logger = LoggerFactory.getLogger(SerialUidReplacingInputStream.class);
 
+        /*
+         * class name#stream serialVersionUID -> local descriptor to be used instead of stream one.
+         * Empty if stream descriptor is fine or there is no local class
+         */
+        private static final ConcurrentMap<String, Optional<ObjectStreamClass>> LOCAL_DESCRIPTORS = new ConcurrentHashMap<>();
+
+        /*
+         * Classes mismatch has been already reported for
+         */
+        private static final Set<String> REPORTED = ConcurrentHashMap.newKeySet();
+
+        private boolean replaced;
+
         public SerialUidReplacingInputStream(InputStream in) throws IOException {
             super(in);
         }
 
+        /**
+         * @return TRUE if at least one class descriptor has been replaced with local one
+         */
+        public boolean isReplaced() {
+            return replaced;
+        }
+
         protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
             ObjectStreamClass resultClassDescriptor = super.readClassDescriptor(); // initially streams descriptor
+            Optional<ObjectStreamClass> localClassDescriptor = LOCAL_DESCRIPTORS.computeIfAbsent(
+                    resultClassDescriptor.getName() + "#" + resultClassDescriptor.getSerialVersionUID(),
+                    key -> findReplacement(resultClassDescriptor));
+            if (localClassDescriptor.isPresent()) {
+                replaced = true;
+                return localClassDescriptor.get(); // Use local class descriptor for deserialization
+            }
+            return resultClassDescriptor;
+        }
+
+        private static Optional<ObjectStreamClass> findReplacement(ObjectStreamClass streamClassDescriptor) {
+            String name = streamClassDescriptor.getName();
             Class localClass; // the class in the local JVM that this descriptor represents.
             try {
-                localClass = Class.forName(resultClassDescriptor.getName());
+                localClass = Class.forName(name);
             } catch (ClassNotFoundException e) {
-                logger.error("No local class for " + resultClassDescriptor.getName(), e);
-                return resultClassDescriptor;
+                if (REPORTED.add(name)) {
+                    logger.error("No local class for " + name, e);
+                }
+                return Optional.empty();
             }
             ObjectStreamClass localClassDescriptor = ObjectStreamClass.lookup(localClass);
             if (localClassDescriptor != null) { // only if class implements serializable
                 final long localSUID = localClassDescriptor.getSerialVersionUID();
-                final long streamSUID = resultClassDescriptor.getSerialVersionUID();
+                final long streamSUID = streamClassDescriptor.getSerialVersionUID();
                 if (streamSUID != localSUID) { // check for serialVersionUID mismatch.
-                    final StringBuffer s = new StringBuffer("Overriding serialized class version mismatch: ");
-                    s.append("local serialVersionUID = ").append(localSUID);
-                    s.append(" stream serialVersionUID = ").append(streamSUID);
-                    Exception e = new InvalidClassException(s.toString());
-                    logger.error("Potentially Fatal Deserialization Operation.", e);
-                    resultClassDescriptor = localClassDescriptor; // Use local class descriptor for deserialization
+                    if (REPORTED.add(name)) {
+                        logger.warn("Overriding serialized class version mismatch of {}: local serialVersionUID = {} stream serialVersionUID = {}",
+                                name, localSUID, streamSUID);
+                    }
+                    return Optional.of(localClassDescriptor);
                 }
             }
-            return resultClassDescriptor;
+            return Optional.empty();
         }
     }
 }
@@ -26,6 +26,7 @@ import com.epam.ta.reportportal.commons.validation.BusinessRule;
 import com.epam.ta.reportportal.ws.model.ErrorType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
@@ -51,12 +52,22 @@ class BasicPasswordAuthenticationProvider extends DaoAuthenticationProvider {
 
 	@Override
 	public Authentication authenticate(Authentication authentication) throws AuthenticationException {
-		boolean accountNonLocked = !failureEventHandler.isBlocked(request.get());
+		boolean accountNonLocked = !failureEventHandler.isBlocked(request.get(), authentication.getName());
 		if (!accountNonLocked) {
 			BusinessRule.fail().withError(ErrorType.ADDRESS_LOCKED);
 		}
 
-		Authentication auth = super.authenticate(authentication);
+		Authentication auth;
+		try {
+			auth = super.authenticate(authentication);
+		} catch (BadCredentialsException e) {
+			/* password might be changed by another service since user is cached */
+			if (!(getUserDetailsService() instanceof DatabaseUserDetailsService) || !((DatabaseUserDetailsService) getUserDetailsService())
+					.evict(authentication.getName())) {
+				throw e;
+			}
+			auth = super.authenticate(authentication);
+		}
 		eventPublisher.publishEvent(new UiUserSignedInEvent(auth));
 		return auth;
 	}
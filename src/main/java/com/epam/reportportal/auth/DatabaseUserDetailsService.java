@@ -22,24 +22,101 @@ package com.epam.reportportal.auth;
 
 import com.epam.ta.reportportal.database.dao.UserRepository;
 import com.epam.ta.reportportal.database.entity.user.User;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.mongodb.DBObject;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Spring's {@link UserDetailsService} implementation. Uses {@link User} entity
- * from ReportPortal database
+ * from ReportPortal database.
+ * Loaded users are cached for a short time. Cache entry is evicted once user is saved or
+ * deleted by this instance or tokens of user are revoked. Other services change users without
+ * notification, so such changes are seen once cache entry expires. Password which does not match cached user
+ * is checked again against reloaded one, see {@link BasicPasswordAuthenticationProvider}
  *
  * @author <a href="mailto:andrei_varabyeu@epam.com">Andrei Varabyeu</a>
  */
-class DatabaseUserDetailsService implements UserDetailsService {
+class DatabaseUserDetailsService implements UserDetailsService, PublicMetrics {
+
+    private static final String METRIC_PREFIX = "cache.user.";
 
     @Autowired
     private UserRepository userRepository;
 
+    private final Cache<String, UserDetails> users;
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maximumSize       Max count of cached users
+     * @param expirationSeconds Expiration of cached users
+     */
+    DatabaseUserDetailsService(long maximumSize, long expirationSeconds) {
+        this.users = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expirationSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .<String, UserDetails>removalListener(notification -> {
+                    if (notification.wasEvicted()) {
+                        evictions.incrementAndGet();
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Returns copy of cached user since authentication manager erases
+     * credentials of returned user after authentication
+     */
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+        UserDetails cached;
+        try {
+            cached = users.get(username.toLowerCase(), () -> loadUser(username));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new IllegalStateException(e.getCause());
+        }
+        return new org.springframework.security.core.userdetails.User(cached.getUsername(), cached.getPassword(), true, true, true, true,
+                cached.getAuthorities());
+    }
+
+    /**
+     * Evicts cached user
+     *
+     * @param username User name
+     * @return TRUE if user has been cached
+     */
+    public boolean evict(String username) {
+        return null != users.asMap().remove(username.toLowerCase());
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        CacheStats stats = users.stats();
+        return Arrays.asList(new Metric<>(METRIC_PREFIX + "size", users.size()), new Metric<>(METRIC_PREFIX + "hit", stats.hitCount()),
+                new Metric<>(METRIC_PREFIX + "miss", stats.missCount()), new Metric<>(METRIC_PREFIX + "hit.ratio", stats.hitRate()),
+                new Metric<>(METRIC_PREFIX + "eviction", evictions.get()));
+    }
+
+    private UserDetails loadUser(String username) {
         User userEntity = userRepository.findOne(username.toLowerCase());
         if (null == userEntity) {
             throw new UsernameNotFoundException("Username '" + username + "' not found");
@@ -51,4 +128,32 @@ class DatabaseUserDetailsService implements UserDetailsService {
         return new org.springframework.security.core.userdetails.User(login, password, true, true, true, true,
                 AuthUtils.AS_AUTHORITIES.apply(userEntity.getRole()));
     }
-}
\ No newline at end of file
+
+    /**
+     * Evicts users saved or deleted by this instance
+     */
+    static class UserChangeListener extends AbstractMongoEventListener<User> {
+
+        private final DatabaseUserDetailsService userDetailsService;
+
+        UserChangeListener(DatabaseUserDetailsService userDetailsService) {
+            this.userDetailsService = userDetailsService;
+        }
+
+        @Override
+        public void onAfterSave(AfterSaveEvent<User> event) {
+            userDetailsService.evict(event.getSource().getLogin());
+        }
+
+        @Override
+        public void onAfterDelete(AfterDeleteEvent<User> event) {
+            DBObject query = event.getSource();
+            Object id = null == query ? null : query.get("_id");
+            if (id instanceof String) {
+                userDetailsService.evict((String) id);
+            } else {
+                userDetailsService.users.invalidateAll();
+            }
+        }
+    }
+}
@@ -21,21 +21,34 @@
 package com.epam.reportportal.auth;
 
 import com.epam.reportportal.auth.store.OAuth2MongoTokenStore;
+import com.epam.reportportal.auth.store.OAuth2RedisTokenStore;
+import com.epam.reportportal.auth.store.OAuth2TokenCache;
+import com.epam.reportportal.auth.store.codec.BinaryTokenCodec;
+import com.epam.reportportal.auth.store.codec.JavaSerializationTokenCodec;
+import com.epam.reportportal.auth.store.codec.TokenCodec;
+import com.epam.reportportal.auth.store.jwt.SignedTokenConverter;
+import com.epam.reportportal.auth.store.jwt.SignedTokenStore;
+import com.epam.reportportal.auth.store.jwt.TokenDenyList;
 import com.epam.ta.reportportal.commons.ExceptionMappings;
 import com.epam.ta.reportportal.commons.exception.rest.DefaultErrorResolver;
 import com.epam.ta.reportportal.commons.exception.rest.ReportPortalExceptionResolver;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.ProviderManager;
 import org.springframework.security.authentication.encoding.Md5PasswordEncoder;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.authentication.configurers.GlobalAuthenticationConfigurerAdapter;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
-import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UserDetailsByNameServiceWrapper;
 import org.springframework.security.oauth2.config.annotation.configurers.ClientDetailsServiceConfigurer;
 import org.springframework.security.oauth2.config.annotation.web.configuration.AuthorizationServerConfigurerAdapter;
 import org.springframework.security.oauth2.config.annotation.web.configuration.EnableAuthorizationServer;
@@ -43,6 +56,12 @@ import org.springframework.security.oauth2.config.annotation.web.configuration.E
 import org.springframework.security.oauth2.config.annotation.web.configuration.ResourceServerConfigurerAdapter;
 import org.springframework.security.oauth2.config.annotation.web.configurers.AuthorizationServerEndpointsConfigurer;
 import org.springframework.security.oauth2.config.annotation.web.configurers.AuthorizationServerSecurityConfigurer;
+import org.springframework.security.oauth2.provider.ClientDetailsService;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationProvider;
+
+import java.util.Arrays;
+import java.util.Collections;
 
 /**
  * Set of general Security configs. This class is not supposed to be extended
@@ -73,9 +92,23 @@ class PrimarySecurityConfigs {
 	@Configuration
 	protected static class GlobalSecurityConfiguration extends GlobalAuthenticationConfigurerAdapter {
 
+		@Value("${rp.auth.user-cache.size:1000}")
+		private long userCacheSize;
+
+		/*
+		 * Seconds. Bounds how long changes made by other services are not seen on login
+		 */
+		@Value("${rp.auth.user-cache.expiration:5}")
+		private long userCacheExpiration;
+
+		@Bean
+		DatabaseUserDetailsService userDetailsService() {
+			return new DatabaseUserDetailsService(userCacheSize, userCacheExpiration);
+		}
+
 		@Bean
-		UserDetailsService userDetailsService() {
-			return new DatabaseUserDetailsService();
+		DatabaseUserDetailsService.UserChangeListener userChangeListener() {
+			return new DatabaseUserDetailsService.UserChangeListener(userDetailsService());
 		}
 
 		@Bean
@@ -103,9 +136,123 @@ class PrimarySecurityConfigs {
 		@Value("${rp.session.live}")
 		private Integer sessionLive;
 
+		/*
+		 * Validity of refresh tokens, seconds
+		 */
+		@Value("${rp.session.refresh-live:2592000}")
+		private Integer refreshLive;
+
+		@Autowired
+		private DatabaseUserDetailsService userDetailsService;
+
+		/*
+		 * Type of token storage: 'mongo' (default) or 'redis'
+		 */
+		@Value("${rp.auth.token-store:mongo}")
+		private String tokenStoreType;
+
+		@Value("${rp.auth.token-codec:binary}")
+		private String tokenCodecType;
+
+		@Autowired
+		private RedisConnectionFactory redisConnectionFactory;
+
+		/*
+		 * Present if signed tokens are enabled
+		 */
+		@Autowired(required = false)
+		private SignedTokenConverter signedTokenConverter;
+
+		@Autowired(required = false)
+		private TokenDenyList tokenDenyList;
+
+		/*
+		 * Lazy proxy, built from clients configured below
+		 */
+		@Autowired
+		private ClientDetailsService clientDetailsService;
+
+		@Bean
+		public TokenStore tokenStore() {
+			TokenStore tokenStore = "redis".equals(tokenStoreType) ?
+					new OAuth2RedisTokenStore(redisConnectionFactory, tokenCodec()) :
+					new OAuth2MongoTokenStore();
+			if (null != signedTokenConverter) {
+				return new SignedTokenStore(tokenStore, signedTokenConverter, tokenDenyList);
+			}
+			return tokenStore;
+		}
+
+		/**
+		 * Token services issuing tokens in one step if token store supports it.
+		 * User is loaded again on token refresh, so removed user cannot refresh tokens
+		 */
 		@Bean
-		public OAuth2MongoTokenStore tokenStore() {
-			return new OAuth2MongoTokenStore();
+		@Primary
+		public ReportPortalTokenServices tokenServices() {
+			ReportPortalTokenServices tokenServices = new ReportPortalTokenServices();
+			tokenServices.setTokenStore(tokenStore());
+			tokenServices.setSupportRefreshToken(true);
+			tokenServices.setReuseRefreshToken(true);
+			tokenServices.setClientDetailsService(clientDetailsService);
+
+			PreAuthenticatedAuthenticationProvider refreshProvider = new PreAuthenticatedAuthenticationProvider();
+			refreshProvider.setPreAuthenticatedUserDetailsService(new UserDetailsByNameServiceWrapper<>(userDetailsService));
+			tokenServices.setAuthenticationManager(new ProviderManager(Collections.singletonList(refreshProvider)));
+
+			if (null != signedTokenConverter) {
+				validateSignedTokens();
+				tokenServices.setTokenEnhancer(signedTokenConverter);
+			}
+			return tokenServices;
+		}
+
+		/**
+		 * Signed tokens cannot be removed, only revoked until they expire.
+		 * So every signed token should expire and revocations should be kept as long as the longest-living token is valid
+		 */
+		private void validateSignedTokens() {
+			if (!signedTokenConverter.isOpaque(ReportPortalClient.api.name())) {
+				throw new IllegalStateException(
+						"Tokens of '" + ReportPortalClient.api.name() + "' client never expire. Client should be listed in rp.auth.jwt.opaque-clients");
+			}
+			if (refreshLive <= 0) {
+				throw new IllegalStateException("rp.session.refresh-live should be positive if signed tokens are enabled");
+			}
+			long longestValidity = Math.max(sessionLive, refreshLive);
+			if (tokenDenyList.getRevocationTtl() < longestValidity) {
+				throw new IllegalStateException(
+						"rp.auth.jwt.revocation-ttl should not be less than validity of signed tokens (" + longestValidity + " seconds)");
+			}
+		}
+
+		@Bean
+		public OAuth2TokenCache tokenCache(@Value("${rp.auth.token-cache.size}") long size,
+				@Value("${rp.auth.token-cache.expiration}") long expiration,
+				@Value("${rp.auth.token-cache.negative-expiration:10}") long negativeExpiration,
+				@Value("${rp.auth.token-cache.broadcast:true}") boolean broadcast) {
+			return new OAuth2TokenCache(size, expiration, negativeExpiration, broadcast ? redisConnectionFactory : null);
+		}
+
+		/**
+		 * Applies token cache evictions made by other instances
+		 */
+		@Bean
+		@ConditionalOnProperty(name = "rp.auth.token-cache.broadcast", havingValue = "true", matchIfMissing = true)
+		public RedisMessageListenerContainer tokenCacheContainer(OAuth2TokenCache tokenCache) {
+			RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+			container.setConnectionFactory(redisConnectionFactory);
+			container.addMessageListener(tokenCache, OAuth2TokenCache.TOPIC);
+			return container;
+		}
+
+		/**
+		 * Format of token documents. Both codecs read documents written with java serialization,
+		 * 'java' might be used to keep writing legacy format
+		 */
+		@Bean
+		public TokenCodec tokenCodec() {
+			return "java".equals(tokenCodecType) ? new JavaSerializationTokenCodec() : new BinaryTokenCodec();
 		}
 
 		@Override
@@ -120,8 +267,12 @@ class PrimarySecurityConfigs {
 					.authenticationManager(authenticationManager)
 					.exceptionTranslator(new OAuthErrorHandler(new ReportPortalExceptionResolver(new DefaultErrorResolver(ExceptionMappings.DEFAULT_MAPPING))))
 
-					.tokenStore(tokenStore());
+					.tokenStore(tokenStore())
+					.tokenServices(tokenServices());
 			//@formatter:on
+			if (null != signedTokenConverter) {
+				endpoints.tokenEnhancer(signedTokenConverter);
+			}
 		}
 
 		@Override
@@ -139,6 +290,7 @@ class PrimarySecurityConfigs {
                     	.authorizedGrantTypes("refresh_token", "password")
                     	.scopes("ui")
 						.accessTokenValiditySeconds(sessionLive)
+						.refreshTokenValiditySeconds(refreshLive)
                     .and()
                     .withClient(ReportPortalClient.api.name())
                     	.secret("apiman")
@@ -155,4 +307,45 @@ class PrimarySecurityConfigs {
             //@formatter:on
 		}
 	}
+
+	/**
+	 * Signed self-contained tokens. Validated without token store lookup,
+	 * signing key is published through /sso/oauth/token_key. Tokens of opaque clients are still kept in token store
+	 */
+	@Configuration
+	@ConditionalOnProperty(name = "rp.auth.jwt.enabled", havingValue = "true")
+	protected static class SignedTokensConfig {
+
+		@Value("${rp.auth.jwt.signing-key}")
+		private String signingKey;
+
+		@Value("${rp.auth.jwt.opaque-clients:}")
+		private String[] opaqueClients;
+
+		/*
+		 * Seconds. Should not be less than validity of refresh tokens
+		 */
+		@Value("${rp.auth.jwt.revocation-ttl:${rp.session.refresh-live:2592000}}")
+		private Long revocationTtl;
+
+		@Bean
+		public SignedTokenConverter signedTokenConverter() {
+			SignedTokenConverter converter = new SignedTokenConverter(Arrays.asList(opaqueClients));
+			converter.setSigningKey(signingKey);
+			return converter;
+		}
+
+		@Bean(initMethod = "load")
+		public TokenDenyList tokenDenyList(RedisConnectionFactory redisConnectionFactory) {
+			return new TokenDenyList(redisConnectionFactory, revocationTtl);
+		}
+
+		@Bean
+		public RedisMessageListenerContainer tokenDenyListContainer(RedisConnectionFactory redisConnectionFactory) {
+			RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+			container.setConnectionFactory(redisConnectionFactory);
+			container.addMessageListener(tokenDenyList(redisConnectionFactory), TokenDenyList.TOPIC);
+			return container;
+		}
+	}
 }
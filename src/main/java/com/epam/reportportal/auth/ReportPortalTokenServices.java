@@ -0,0 +1,218 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth;
+
+import com.epam.reportportal.auth.store.IssuingTokenStore;
+import com.epam.reportportal.auth.store.RefreshTokenAuthentication;
+import com.epam.reportportal.auth.store.RevocableTokenStore;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidGrantException;
+import org.springframework.security.oauth2.common.exceptions.InvalidScopeException;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.TokenRequest;
+import org.springframework.security.oauth2.provider.token.DefaultTokenServices;
+import org.springframework.security.oauth2.provider.token.TokenEnhancer;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationToken;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * {@link DefaultTokenServices} which issues tokens in one step if token store supports it.
+ * Otherwise tokens are issued as usual: existing token is looked up, removed if expired and then new one is stored.
+ * Refresh grant reads refresh token with its authentication at once and replaces access token in one step as well
+ */
+public class ReportPortalTokenServices extends DefaultTokenServices {
+
+	private TokenStore tokenStore;
+	private TokenEnhancer tokenEnhancer;
+	private AuthenticationManager authenticationManager;
+	private boolean supportRefreshToken = false;
+	private boolean reuseRefreshToken = true;
+
+	@Override
+	public OAuth2AccessToken createAccessToken(OAuth2Authentication authentication) throws AuthenticationException {
+		if (!(tokenStore instanceof IssuingTokenStore)) {
+			return super.createAccessToken(authentication);
+		}
+		OAuth2AccessToken candidate = createAccessToken(authentication, createRefreshToken(authentication.getOAuth2Request()));
+		return ((IssuingTokenStore) tokenStore).issueAccessToken(candidate, authentication);
+	}
+
+	/**
+	 * Replaces token of the authentication with new one. All other tokens of the user issued for the same client
+	 * are revoked as well. Replacement is done by token store in one step if it supports it, otherwise existing
+	 * tokens are revoked and new one is created
+	 *
+	 * @param authentication Authentication
+	 * @return New access token
+	 */
+	public OAuth2AccessToken replaceAccessToken(OAuth2Authentication authentication) throws AuthenticationException {
+		if (!(tokenStore instanceof IssuingTokenStore)) {
+			OAuth2AccessToken existing = tokenStore.getAccessToken(authentication);
+			if (null != existing) {
+				revokeToken(existing.getValue());
+			}
+			if (!authentication.isClientOnly()) {
+				revokeUserTokens(authentication.getName(), authentication.getOAuth2Request().getClientId());
+			}
+			return super.createAccessToken(authentication);
+		}
+		OAuth2AccessToken candidate = createAccessToken(authentication, createRefreshToken(authentication.getOAuth2Request()));
+		return ((IssuingTokenStore) tokenStore).replaceAccessToken(candidate, authentication);
+	}
+
+	private void revokeUserTokens(String userName, String clientId) {
+		if (tokenStore instanceof RevocableTokenStore) {
+			((RevocableTokenStore) tokenStore).removeUserTokens(userName, Collections.singleton(clientId));
+			return;
+		}
+		for (OAuth2AccessToken token : tokenStore.findTokensByClientIdAndUserName(clientId, userName)) {
+			revokeToken(token.getValue());
+		}
+	}
+
+	/**
+	 * Same as {@link DefaultTokenServices#refreshAccessToken(String, TokenRequest)}, but refresh token is read together
+	 * with its authentication and access token is replaced by token store in one step
+	 */
+	@Override
+	public OAuth2AccessToken refreshAccessToken(String refreshTokenValue, TokenRequest tokenRequest) throws AuthenticationException {
+		if (!(tokenStore instanceof IssuingTokenStore)) {
+			return super.refreshAccessToken(refreshTokenValue, tokenRequest);
+		}
+		IssuingTokenStore issuingTokenStore = (IssuingTokenStore) tokenStore;
+		RefreshTokenAuthentication stored = supportRefreshToken ? issuingTokenStore.readRefreshTokenAuthentication(refreshTokenValue) : null;
+		if (null == stored) {
+			throw new InvalidGrantException("Invalid refresh token: " + refreshTokenValue);
+		}
+		OAuth2RefreshToken refreshToken = stored.getRefreshToken();
+		OAuth2Authentication authentication = stored.getAuthentication();
+		if (null != authenticationManager && !authentication.isClientOnly()) {
+			Authentication user = new PreAuthenticatedAuthenticationToken(authentication.getUserAuthentication(), "",
+					authentication.getAuthorities());
+			user = authenticationManager.authenticate(user);
+			Object details = authentication.getDetails();
+			authentication = new OAuth2Authentication(authentication.getOAuth2Request(), user);
+			authentication.setDetails(details);
+		}
+		String clientId = authentication.getOAuth2Request().getClientId();
+		if (clientId == null || !clientId.equals(tokenRequest.getClientId())) {
+			throw new InvalidGrantException("Wrong client for this refresh token: " + refreshTokenValue);
+		}
+		if (isExpired(refreshToken)) {
+			tokenStore.removeAccessTokenUsingRefreshToken(refreshToken);
+			tokenStore.removeRefreshToken(refreshToken);
+			throw new InvalidTokenException("Invalid refresh token (expired): " + refreshToken);
+		}
+
+		authentication = createRefreshedAuthentication(authentication, tokenRequest);
+		OAuth2RefreshToken newRefreshToken = refreshToken;
+		if (!reuseRefreshToken) {
+			tokenStore.removeRefreshToken(refreshToken);
+			newRefreshToken = createRefreshToken(authentication.getOAuth2Request());
+		}
+		OAuth2AccessToken candidate = createAccessToken(authentication, newRefreshToken);
+		return issuingTokenStore.refreshAccessToken(candidate, refreshToken, authentication);
+	}
+
+	@Override
+	public void setSupportRefreshToken(boolean supportRefreshToken) {
+		super.setSupportRefreshToken(supportRefreshToken);
+		this.supportRefreshToken = supportRefreshToken;
+	}
+
+	@Override
+	public void setReuseRefreshToken(boolean reuseRefreshToken) {
+		super.setReuseRefreshToken(reuseRefreshToken);
+		this.reuseRefreshToken = reuseRefreshToken;
+	}
+
+	@Override
+	public void setAuthenticationManager(AuthenticationManager authenticationManager) {
+		super.setAuthenticationManager(authenticationManager);
+		this.authenticationManager = authenticationManager;
+	}
+
+	@Override
+	public void setTokenStore(TokenStore tokenStore) {
+		super.setTokenStore(tokenStore);
+		this.tokenStore = tokenStore;
+	}
+
+	@Override
+	public void setTokenEnhancer(TokenEnhancer accessTokenEnhancer) {
+		super.setTokenEnhancer(accessTokenEnhancer);
+		this.tokenEnhancer = accessTokenEnhancer;
+	}
+
+	/*
+	 * Same as private methods of DefaultTokenServices
+	 */
+	private OAuth2Authentication createRefreshedAuthentication(OAuth2Authentication authentication, TokenRequest request) {
+		Set<String> scope = request.getScope();
+		OAuth2Request clientAuth = authentication.getOAuth2Request().refresh(request);
+		if (scope != null && !scope.isEmpty()) {
+			Set<String> originalScope = clientAuth.getScope();
+			if (originalScope == null || !originalScope.containsAll(scope)) {
+				throw new InvalidScopeException("Unable to narrow the scope of the client authentication to " + scope + ".",
+						originalScope);
+			}
+			clientAuth = clientAuth.narrowScope(scope);
+		}
+		return new OAuth2Authentication(clientAuth, authentication.getUserAuthentication());
+	}
+
+	private OAuth2RefreshToken createRefreshToken(OAuth2Request request) {
+		if (!isSupportRefreshToken(request)) {
+			return null;
+		}
+		int validitySeconds = getRefreshTokenValiditySeconds(request);
+		String value = UUID.randomUUID().toString();
+		if (validitySeconds > 0) {
+			return new DefaultExpiringOAuth2RefreshToken(value, new Date(System.currentTimeMillis() + (validitySeconds * 1000L)));
+		}
+		return new DefaultOAuth2RefreshToken(value);
+	}
+
+	private OAuth2AccessToken createAccessToken(OAuth2Authentication authentication, OAuth2RefreshToken refreshToken) {
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(UUID.randomUUID().toString());
+		int validitySeconds = getAccessTokenValiditySeconds(authentication.getOAuth2Request());
+		if (validitySeconds > 0) {
+			token.setExpiration(new Date(System.currentTimeMillis() + (validitySeconds * 1000L)));
+		}
+		token.setRefreshToken(refreshToken);
+		token.setScope(authentication.getOAuth2Request().getScope());
+		return null != tokenEnhancer ? tokenEnhancer.enhance(token, authentication) : token;
+	}
+}
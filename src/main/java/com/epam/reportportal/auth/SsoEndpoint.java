@@ -34,7 +34,6 @@ import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.security.oauth2.provider.authentication.OAuth2AuthenticationDetails;
 import org.springframework.web.bind.annotation.*;
 
-import java.security.Principal;
 import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
@@ -48,10 +47,12 @@ import java.util.stream.Collectors;
 public class SsoEndpoint {
 
 	private final TokenServicesFacade tokenServicesFacade;
+	private final DatabaseUserDetailsService userDetailsService;
 
 	@Autowired
-	public SsoEndpoint(TokenServicesFacade tokenServicesFacade) {
+	public SsoEndpoint(TokenServicesFacade tokenServicesFacade, DatabaseUserDetailsService userDetailsService) {
 		this.tokenServicesFacade = tokenServicesFacade;
+		this.userDetailsService = userDetailsService;
 	}
 
 	@RequestMapping(value = { "/sso/me", "/sso/user" }, method = RequestMethod.GET)
@@ -71,23 +72,27 @@ public class SsoEndpoint {
 
 	@RequestMapping(value = { "/sso/me/apitoken" }, method = RequestMethod.GET)
 	@ApiOperation(value = "Get api token")
-	public OAuth2AccessToken getApiToken(Principal user) {
-		Optional<OAuth2AccessToken> tokens = tokenServicesFacade.getTokens(user.getName(), ReportPortalClient.api).findAny();
-		BusinessRule.expect(tokens, Preconditions.IS_PRESENT).verify(ErrorType.USER_NOT_FOUND, user.getName());
-		return tokens.get();
+	public OAuth2AccessToken getApiToken(OAuth2Authentication user) {
+		Optional<OAuth2AccessToken> token = tokenServicesFacade.getToken(ReportPortalClient.api, user.getName(), user.getUserAuthentication());
+		if (!token.isPresent()) {
+			/* token might be issued for authentication with another key */
+			token = tokenServicesFacade.getTokens(user.getName(), ReportPortalClient.api).findAny();
+		}
+		BusinessRule.expect(token, Preconditions.IS_PRESENT).verify(ErrorType.USER_NOT_FOUND, user.getName());
+		return token.get();
 	}
 
 	@RequestMapping(value = { "/sso/me/apitoken" }, method = RequestMethod.POST)
 	@ApiOperation(value = "Create api token")
 	public OAuth2AccessToken createApiToken(OAuth2Authentication user) {
-		tokenServicesFacade.revokeUserTokens(user.getName(), ReportPortalClient.api);
-		return tokenServicesFacade.createToken(ReportPortalClient.api, user.getName(), user.getUserAuthentication());
+		return tokenServicesFacade.replaceToken(ReportPortalClient.api, user.getName(), user.getUserAuthentication());
 	}
 
 	@RequestMapping(value = { "/sso/internal/user/{user}" }, method = RequestMethod.DELETE)
 	@ApiOperation(value = "Revoke all user tokens")
 	public OperationCompletionRS revokeUserTokens(@PathVariable String user) {
 		tokenServicesFacade.revokeUserTokens(user);
+		userDetailsService.evict(user);
 		return new OperationCompletionRS(String.format("Token of user '%s' has been revoked", user));
 	}
 
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth;
+
+import com.epam.reportportal.auth.store.StaleTokensMigration;
+import com.epam.ta.reportportal.ws.model.OperationCompletionRS;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+import static org.springframework.web.bind.annotation.RequestMethod.POST;
+
+/**
+ * Endpoint for maintenance of stored tokens. Available if tokens are stored in mongo
+ */
+@RestController
+@ConditionalOnExpression("'${rp.auth.token-store:mongo}' == 'mongo'")
+@RequestMapping("/settings/tokens")
+@Api(description = "Token Maintenance Endpoint")
+public class TokenMigrationEndpoint {
+
+	private final StaleTokensMigration migration;
+
+	@Autowired
+	public TokenMigrationEndpoint(StaleTokensMigration migration) {
+		this.migration = migration;
+	}
+
+	/**
+	 * Starts background rewrite of stale token documents.
+	 * Progress is exposed via token.migration.* metrics
+	 *
+	 * @return Operation result
+	 */
+	@RequestMapping(value = "/migration", method = POST)
+	@ResponseStatus(HttpStatus.ACCEPTED)
+	@ApiOperation(value = "Migrate stale tokens")
+	public OperationCompletionRS migrate() {
+		return new OperationCompletionRS(migration.start() ?
+				"Migration of stale tokens has been started" :
+				"Migration of stale tokens is already running");
+	}
+}
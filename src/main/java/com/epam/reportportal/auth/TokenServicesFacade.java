@@ -20,21 +20,28 @@
  */
 package com.epam.reportportal.auth;
 
-import com.epam.reportportal.auth.store.OAuth2AccessTokenRepository;
+import com.epam.reportportal.auth.store.RevocableTokenStore;
 import com.google.common.collect.ImmutableMap;
+import org.springframework.beans.factory.SmartInitializingSingleton;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
-import org.springframework.security.oauth2.common.util.SerializationUtils;
 import org.springframework.security.oauth2.provider.*;
 import org.springframework.security.oauth2.provider.request.DefaultOAuth2RequestFactory;
 import org.springframework.security.oauth2.provider.token.AuthorizationServerTokenServices;
-import org.springframework.security.oauth2.provider.token.DefaultTokenServices;
+import org.springframework.security.oauth2.provider.token.TokenStore;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.Nullable;
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
@@ -43,38 +50,66 @@ import java.util.stream.Stream;
  * @author <a href="mailto:andrei_varabyeu@epam.com">Andrei Varabyeu</a>
  */
 @Service
-public class TokenServicesFacade {
+public class TokenServicesFacade implements SmartInitializingSingleton {
 
-	private final OAuth2AccessTokenRepository tokenRepository;
-	private final DefaultTokenServices tokenServices;
+	private final TokenStore tokenStore;
+	private final ReportPortalTokenServices tokenServices;
 	private final OAuth2RequestFactory oAuth2RequestFactory;
 	private final ClientDetailsService clientDetailsService;
 
+	/*
+	 * Client details are static, so requests of each client are the same except user name
+	 */
+	private final Map<ReportPortalClient, OAuth2Request> templates = Collections.synchronizedMap(new EnumMap<>(ReportPortalClient.class));
+
 	@Autowired
-	public TokenServicesFacade(AuthorizationServerTokenServices tokenServices, OAuth2AccessTokenRepository tokenRepository,
+	public TokenServicesFacade(AuthorizationServerTokenServices tokenServices, TokenStore tokenStore,
 			ClientDetailsService clientDetailsService) {
-		this.tokenServices = (DefaultTokenServices) tokenServices;
-		this.tokenRepository = tokenRepository;
+		this.tokenServices = (ReportPortalTokenServices) tokenServices;
+		this.tokenStore = tokenStore;
 		this.clientDetailsService = clientDetailsService;
 		this.oAuth2RequestFactory = new DefaultOAuth2RequestFactory(clientDetailsService);
 	}
 
 	public Stream<OAuth2AccessToken> getTokens(String username, ReportPortalClient client) {
-		return tokenRepository.findByClientIdAndUserName(client.name(), username)
-				.map(token -> SerializationUtils.<OAuth2AccessToken>deserialize(token.getToken()));
+		return tokenStore.findTokensByClientIdAndUserName(client.name(), username).stream();
 	}
 
 	public void revokeToken(String token) {
 		this.tokenServices.revokeToken(token);
 	}
 
-	public void revokeUserTokens(String user) {
-		this.tokenRepository.findByUserName(user).forEach(token -> tokenServices.revokeToken(token.getTokenId()));
+	/**
+	 * Revokes all tokens of user
+	 *
+	 * @param user User name
+	 * @return Count of revoked tokens
+	 */
+	public int revokeUserTokens(String user) {
+		return revokeUserTokens(user, ReportPortalClient.values());
 	}
 
-	public void revokeUserTokens(String user, ReportPortalClient client) {
-		this.tokenRepository.findByClientIdAndUserName(client.name(), user)
-				.forEach(token -> tokenServices.revokeToken(token.getTokenId()));
+	/**
+	 * Revokes all tokens of user issued for provided clients
+	 *
+	 * @param user    User name
+	 * @param clients Clients
+	 * @return Count of revoked tokens
+	 */
+	public int revokeUserTokens(String user, ReportPortalClient... clients) {
+		List<String> clientIds = Arrays.stream(clients).map(ReportPortalClient::name).collect(Collectors.toList());
+		if (tokenStore instanceof RevocableTokenStore) {
+			return ((RevocableTokenStore) tokenStore).removeUserTokens(user, clientIds);
+		}
+		int revoked = 0;
+		for (String clientId : clientIds) {
+			for (OAuth2AccessToken token : tokenStore.findTokensByClientIdAndUserName(clientId, user)) {
+				if (tokenServices.revokeToken(token.getValue())) {
+					revoked++;
+				}
+			}
+		}
+		return revoked;
 	}
 
 	public OAuth2AccessToken createToken(ReportPortalClient client, String username, Authentication userAuthentication) {
@@ -82,16 +117,78 @@ public class TokenServicesFacade {
 	}
 
 	public OAuth2AccessToken createToken(ReportPortalClient client, String username, Authentication userAuthentication, Map<String, Serializable> extensionParams) {
+		return tokenServices.createAccessToken(
+				new OAuth2Authentication(createOAuth2Request(client, username, extensionParams), userAuthentication));
+	}
+
+	/**
+	 * Looks up token issued by {@link #createToken(ReportPortalClient, String, Authentication)} by authentication key,
+	 * so there is no need to go through all user's tokens of the client
+	 *
+	 * @param client             Client
+	 * @param username           User name
+	 * @param userAuthentication User authentication
+	 * @return Token if there is any
+	 */
+	public Optional<OAuth2AccessToken> getToken(ReportPortalClient client, String username, Authentication userAuthentication) {
+		return Optional.ofNullable(
+				tokenServices.getAccessToken(new OAuth2Authentication(createOAuth2Request(client, username), userAuthentication)));
+	}
+
+	/**
+	 * Replaces token issued by {@link #createToken(ReportPortalClient, String, Authentication)} with new one
+	 *
+	 * @param client             Client
+	 * @param username           User name
+	 * @param userAuthentication User authentication
+	 * @return New token
+	 */
+	public OAuth2AccessToken replaceToken(ReportPortalClient client, String username, Authentication userAuthentication) {
+		return tokenServices.replaceAccessToken(new OAuth2Authentication(createOAuth2Request(client, username), userAuthentication));
+	}
+
+	/**
+	 * Builds request templates of all clients once singletons are ready, since client details are built by
+	 * authorization server configuration
+	 */
+	@Override
+	public void afterSingletonsInstantiated() {
+		Arrays.stream(ReportPortalClient.values()).forEach(this::getTemplate);
+	}
+
+	private OAuth2Request createOAuth2Request(ReportPortalClient client, String username) {
+		return createOAuth2Request(client, username, Collections.emptyMap());
+	}
+
+	/*
+	 * Request differs from client's template by user name parameter and extensions only
+	 */
+	private OAuth2Request createOAuth2Request(ReportPortalClient client, String username, Map<String, Serializable> extensions) {
+		OAuth2Request template = getTemplate(client);
+		return new OAuth2Request(requestParameters(client, username), template.getClientId(), template.getAuthorities(),
+				template.isApproved(), template.getScope(), template.getResourceIds(), template.getRedirectUri(),
+				template.getResponseTypes(), new HashMap<>(extensions));
+	}
+
+	private OAuth2Request getTemplate(ReportPortalClient client) {
+		OAuth2Request template = templates.get(client);
+		if (null == template) {
+			ClientDetails clientDetails = clientDetailsService.loadClientByClientId(client.name());
+			template = oAuth2RequestFactory.createOAuth2Request(clientDetails,
+					oAuth2RequestFactory.createTokenRequest(requestParameters(client, null), clientDetails));
+			templates.putIfAbsent(client, template);
+		}
+		return template;
+	}
+
+	private static Map<String, String> requestParameters(ReportPortalClient client, @Nullable String username) {
 		//@formatter:off
-		ClientDetails clientDetails = clientDetailsService.loadClientByClientId(client.name());
-		OAuth2Request oAuth2Request = oAuth2RequestFactory.createOAuth2Request(clientDetails, oAuth2RequestFactory.createTokenRequest(
-				ImmutableMap.<String, String>builder()
-						.put("client_id", client.name())
-						.put("username", username)
-						.put("grant", "password")
-						.build(), clientDetails));
-		oAuth2Request.getExtensions().putAll(extensionParams);
+		ImmutableMap.Builder<String, String> parameters = ImmutableMap.<String, String>builder()
+				.put("client_id", client.name());
+		if (null != username) {
+			parameters.put("username", username);
+		}
+		return parameters.put("grant", "password").build();
 		//@formatter:on
-		return tokenServices.createAccessToken(new OAuth2Authentication(oAuth2Request, userAuthentication));
 	}
 }
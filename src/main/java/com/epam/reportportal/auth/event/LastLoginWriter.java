@@ -0,0 +1,165 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.event;
+
+import com.epam.ta.reportportal.database.entity.user.User;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes last login dates of users in background.
+ * Only the latest login date of user is kept until next write, so frequent logins
+ * of the same user result in single update. Buffer is bounded: login date which does not fit
+ * is dropped and buffer is flushed right away in background, so logins never wait for the database
+ */
+@Component
+public class LastLoginWriter implements PublicMetrics, DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LastLoginWriter.class);
+
+    private static final String METRIC_PREFIX = "user.last-login.";
+    private static final String LAST_LOGIN = "metaInfo.lastLogin";
+    private static final int BATCH_SIZE = 500;
+
+    private final MongoOperations mongoOperations;
+    private final int capacity;
+
+    private final ConcurrentMap<String, Date> buffer = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executor;
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    private final AtomicLong buffered = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * @param mongoOperations Mongo operations
+     * @param capacity        Max count of buffered users
+     * @param flushInterval   Interval between writes, milliseconds
+     */
+    @Autowired
+    public LastLoginWriter(MongoOperations mongoOperations, @Value("${rp.auth.last-login.capacity:10000}") int capacity,
+            @Value("${rp.auth.last-login.interval:5000}") long flushInterval) {
+        this.mongoOperations = mongoOperations;
+        this.capacity = capacity;
+        this.executor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("last-login-writer").setDaemon(true).build());
+        this.executor.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Buffers login date of user to be written
+     *
+     * @param user      User name
+     * @param lastLogin Login date
+     */
+    public void update(String user, Date lastLogin) {
+        if (!buffer.containsKey(user) && buffer.size() >= capacity) {
+            dropped.incrementAndGet();
+            if (!executor.isShutdown() && flushRequested.compareAndSet(false, true)) {
+                executor.execute(() -> {
+                    flushRequested.set(false);
+                    flush();
+                });
+            }
+            return;
+        }
+        if (null == buffer.putIfAbsent(user, lastLogin)) {
+            buffered.incrementAndGet();
+        } else {
+            buffer.merge(user, lastLogin, (pending, current) -> current.after(pending) ? current : pending);
+            coalesced.incrementAndGet();
+        }
+    }
+
+    /**
+     * Writes all buffered login dates
+     */
+    public void flush() {
+        Iterator<Map.Entry<String, Date>> pending = buffer.entrySet().iterator();
+        while (pending.hasNext()) {
+            BulkOperations operations = mongoOperations.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class);
+            int batch = 0;
+            while (pending.hasNext() && batch < BATCH_SIZE) {
+                Map.Entry<String, Date> entry = pending.next();
+                operations.updateOne(Query.query(Criteria.where("_id").is(entry.getKey())), Update.update(LAST_LOGIN, entry.getValue()));
+                /* newer login date buffered since then stays for the next write */
+                buffer.remove(entry.getKey(), entry.getValue());
+                batch++;
+            }
+            try {
+                operations.execute();
+                written.addAndGet(batch);
+            } catch (Exception e) {
+                failed.addAndGet(batch);
+                LOGGER.warn("Unable to write last login date of {} users", batch, e);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        return Arrays.asList(new Metric<>(METRIC_PREFIX + "buffer.size", buffer.size()),
+                new Metric<>(METRIC_PREFIX + "buffered", buffered.get()),
+                new Metric<>(METRIC_PREFIX + "coalesced", coalesced.get()),
+                new Metric<>(METRIC_PREFIX + "dropped", dropped.get()),
+                new Metric<>(METRIC_PREFIX + "written", written.get()),
+                new Metric<>(METRIC_PREFIX + "failed", failed.get()));
+    }
+}
@@ -20,60 +20,109 @@
  */
 package com.epam.reportportal.auth.event;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
+import com.epam.reportportal.auth.ReportPortalClient;
+import com.epam.reportportal.auth.limiter.AttemptLimiter;
+import com.epam.reportportal.auth.limiter.AttemptPolicy;
+import com.epam.reportportal.auth.limiter.RedisAttemptLimiter;
+import com.epam.reportportal.auth.limiter.SlidingWindowLimiter;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.net.HttpHeaders;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
 import org.springframework.context.ApplicationListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.security.authentication.event.AuthenticationFailureBadCredentialsEvent;
-import org.springframework.security.web.util.matcher.RequestHeaderRequestMatcher;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Provider;
 import javax.servlet.http.HttpServletRequest;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 /**
- * Initial implementation of authentication failures handler
+ * Initial implementation of authentication failures handler.
+ * Failures are counted per client IP in sliding windows, policy depends on the OAuth client
+ * which requests a token. Requests of unknown clients follow policy of UI client.
+ * Blocking by user name is disabled by default since anyone is able to lock out any user that way. If enabled,
+ * it has its own policy which is supposed to be much weaker than per IP one.
+ * Counters may be shared by all instances through Redis, see {@link RedisAttemptLimiter}
  *
  * @author Andrei_Ramanchuk
  */
 @Component
-public class UiAuthenticationFailureEventHandler implements ApplicationListener<AuthenticationFailureBadCredentialsEvent> {
+public class UiAuthenticationFailureEventHandler implements ApplicationListener<AuthenticationFailureBadCredentialsEvent>, PublicMetrics {
 
-	private static final long MAXIMUM_SIZE = 5000;
-	private static final long EXPIRATION_SECONDS = 30;
-	private static final int MAX_ATTEMPTS = 3;
-	private static final RequestHeaderRequestMatcher AJAX_REQUEST_MATCHER = new RequestHeaderRequestMatcher(HttpHeaders.X_REQUESTED_WITH,
-			"XMLHttpRequest");
+	private static final String METRIC_PREFIX = "login.attempts.";
+	private static final String IP_PREFIX = "ip:";
+	private static final String USER_PREFIX = "user:";
+	private static final String USER_LIMITER = "user";
 
 	@Inject
 	private Provider<HttpServletRequest> request;
 
-	private LoadingCache<String, AtomicInteger> failures;
+	private final Map<String, AttemptLimiter> limiters;
+	private final AttemptLimiter defaultLimiter;
 
-	public UiAuthenticationFailureEventHandler() {
-		super();
-		failures = CacheBuilder.newBuilder().maximumSize(MAXIMUM_SIZE).expireAfterWrite(EXPIRATION_SECONDS, TimeUnit.SECONDS)
-				.build(new CacheLoader<String, AtomicInteger>() {
-					@Override
-					public AtomicInteger load(String key) {
-						return new AtomicInteger(0);
-					}
-				});
+	/*
+	 * Null if blocking by user name is disabled
+	 */
+	@Nullable
+	private final AttemptLimiter userLimiter;
+
+	@Autowired
+	public UiAuthenticationFailureEventHandler(@Value("${rp.auth.login-attempts.capacity:100000}") int capacity,
+			@Value("${rp.auth.login-attempts.ui.max-attempts:3}") int uiMaxAttempts,
+			@Value("${rp.auth.login-attempts.ui.window:30}") long uiWindow,
+			@Value("${rp.auth.login-attempts.api.max-attempts:10}") int apiMaxAttempts,
+			@Value("${rp.auth.login-attempts.api.window:60}") long apiWindow,
+			@Value("${rp.auth.login-attempts.user.max-attempts:0}") int userMaxAttempts,
+			@Value("${rp.auth.login-attempts.user.window:3600}") long userWindow,
+			@Value("${rp.auth.login-attempts.distributed:false}") boolean distributed,
+			@Value("${rp.auth.login-attempts.cache:1000}") long cacheMillis, ObjectProvider<RedisConnectionFactory> redisConnectionFactory) {
+		RedisConnectionFactory connectionFactory = distributed ? redisConnectionFactory.getIfAvailable() : null;
+		this.defaultLimiter = createLimiter(ReportPortalClient.ui.name(), new AttemptPolicy(uiMaxAttempts, uiWindow), capacity,
+				connectionFactory, cacheMillis);
+		this.limiters = ImmutableMap.of(ReportPortalClient.ui.name(), defaultLimiter, ReportPortalClient.api.name(),
+				createLimiter(ReportPortalClient.api.name(), new AttemptPolicy(apiMaxAttempts, apiWindow), capacity, connectionFactory,
+						cacheMillis));
+		this.userLimiter = userMaxAttempts > 0 ?
+				createLimiter(USER_LIMITER, new AttemptPolicy(userMaxAttempts, userWindow), capacity, connectionFactory, cacheMillis) :
+				null;
 	}
 
-	public boolean isBlocked(HttpServletRequest request) {
-		AtomicInteger attempts = failures.getIfPresent(getClientIP(request));
-		return null != attempts && attempts.get() > MAX_ATTEMPTS;
+	/**
+	 * @param request  Request
+	 * @param username Name of authenticating user
+	 * @return TRUE if there are too many failed attempts from client IP or, if enabled, for the user
+	 */
+	public boolean isBlocked(HttpServletRequest request, @Nullable String username) {
+		return getLimiter().isBlocked(IP_PREFIX + getClientIP(request)) || (null != userLimiter && !Strings.isNullOrEmpty(username)
+				&& userLimiter.isBlocked(USER_PREFIX + username.toLowerCase()));
 	}
 
-	private void onAjaxFailure(HttpServletRequest request) {
-		String clientIP = getClientIP(request);
-		failures.getUnchecked(clientIP).incrementAndGet();
+	private void onAjaxFailure(HttpServletRequest request, @Nullable String username) {
+		getLimiter().recordFailure(IP_PREFIX + getClientIP(request));
+		if (null != userLimiter && !Strings.isNullOrEmpty(username)) {
+			userLimiter.recordFailure(USER_PREFIX + username.toLowerCase());
+		}
+	}
 
+	/*
+	 * Password grant is requested by already authenticated client
+	 */
+	private AttemptLimiter getLimiter() {
+		Authentication client = SecurityContextHolder.getContext().getAuthentication();
+		return null == client ? defaultLimiter : limiters.getOrDefault(client.getName(), defaultLimiter);
 	}
 
 	private String getClientIP(HttpServletRequest request) {
@@ -86,6 +135,22 @@ public class UiAuthenticationFailureEventHandler implements ApplicationListener<
 
 	@Override
 	public void onApplicationEvent(AuthenticationFailureBadCredentialsEvent event) {
-		onAjaxFailure(request.get());
+		onAjaxFailure(request.get(), event.getAuthentication().getName());
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		List<Metric<?>> metrics = new ArrayList<>();
+		limiters.forEach((client, limiter) -> metrics.addAll(limiter.metrics(METRIC_PREFIX + client + ".")));
+		if (null != userLimiter) {
+			metrics.addAll(userLimiter.metrics(METRIC_PREFIX + USER_LIMITER + "."));
+		}
+		return metrics;
+	}
+
+	private static AttemptLimiter createLimiter(String name, AttemptPolicy policy, int capacity,
+			@Nullable RedisConnectionFactory connectionFactory, long cacheMillis) {
+		SlidingWindowLimiter local = new SlidingWindowLimiter(policy, capacity);
+		return null == connectionFactory ? local : new RedisAttemptLimiter(name, local, connectionFactory, capacity, cacheMillis);
 	}
-}
\ No newline at end of file
+}
@@ -20,7 +20,6 @@
  */
 package com.epam.reportportal.auth.event;
 
-import com.epam.ta.reportportal.database.dao.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationListener;
 import org.springframework.stereotype.Component;
@@ -28,7 +27,8 @@ import org.springframework.stereotype.Component;
 import java.util.Date;
 
 /**
- * Updates Last Login field in database User entity
+ * Updates Last Login field in database User entity.
+ * Updates are buffered and written in background by {@link LastLoginWriter}
  *
  * @author Andrei Varabyeu
  */
@@ -36,10 +36,10 @@ import java.util.Date;
 public class UiAuthenticationSuccessEventHandler implements ApplicationListener<UiUserSignedInEvent> {
 
     @Autowired
-    private UserRepository userRepository;
+    private LastLoginWriter lastLoginWriter;
 
     @Override
     public void onApplicationEvent(UiUserSignedInEvent event) {
-        userRepository.updateLastLoginDate(event.getAuthentication().getName(), new Date(event.getTimestamp()));
+        lastLoginWriter.update(event.getAuthentication().getName(), new Date(event.getTimestamp()));
     }
 }
\ No newline at end of file
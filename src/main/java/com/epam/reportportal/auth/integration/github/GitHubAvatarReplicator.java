@@ -0,0 +1,246 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.integration.github;
+
+import com.epam.ta.reportportal.database.BinaryData;
+import com.epam.ta.reportportal.database.DataStorage;
+import com.epam.ta.reportportal.database.entity.user.User;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replicates avatars of GitHub users in background, so logins do not wait for image download and storage.
+ * Count of pending avatars is bounded, avatar of the same user is not queued twice.
+ * Image is streamed from GitHub to data storage. Versions of replicated avatars are remembered:
+ * avatar is requested with ETag of known version and not stored again if it's not modified, and avatar
+ * with the same content hash does not replace user's photo. Failed replications are retried with exponential backoff,
+ * not earlier than rate limit is reset if it's exceeded
+ */
+@Component
+public class GitHubAvatarReplicator implements PublicMetrics, DisposableBean {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(GitHubAvatarReplicator.class);
+
+	private static final String METRIC_PREFIX = "github.avatar.";
+	private static final String PHOTO_ID = "photoId";
+
+	private final DataStorage dataStorage;
+	private final MongoOperations mongoOperations;
+	private final int capacity;
+	private final int maxAttempts;
+	private final long backoff;
+
+	private final Set<String> pending = ConcurrentHashMap.newKeySet();
+	private final Cache<String, AvatarVersion> versions;
+	private final ScheduledExecutorService executor;
+
+	private final AtomicLong submitted = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong stored = new AtomicLong();
+	private final AtomicLong unchanged = new AtomicLong();
+	private final AtomicLong retried = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+
+	/**
+	 * @param dataStorage     Storage of photos
+	 * @param mongoOperations Mongo operations
+	 * @param capacity        Max count of pending avatars
+	 * @param threads         Count of replicating threads
+	 * @param maxAttempts     Max count of attempts to replicate avatar
+	 * @param backoff         Delay before the first retry, milliseconds. Doubled for each next one
+	 */
+	@Autowired
+	public GitHubAvatarReplicator(DataStorage dataStorage, MongoOperations mongoOperations,
+			@Value("${rp.auth.github.avatar.capacity:1000}") int capacity, @Value("${rp.auth.github.avatar.threads:2}") int threads,
+			@Value("${rp.auth.github.avatar.attempts:3}") int maxAttempts, @Value("${rp.auth.github.avatar.backoff:1000}") long backoff) {
+		this.dataStorage = dataStorage;
+		this.mongoOperations = mongoOperations;
+		this.capacity = capacity;
+		this.maxAttempts = maxAttempts;
+		this.backoff = backoff;
+		this.versions = CacheBuilder.newBuilder().maximumSize(capacity * 10L).expireAfterAccess(1, TimeUnit.DAYS).build();
+		this.executor = Executors.newScheduledThreadPool(threads,
+				new ThreadFactoryBuilder().setNameFormat("github-avatar-%d").setDaemon(true).build());
+	}
+
+	/**
+	 * Queues replication of user's avatar
+	 *
+	 * @param login        User login
+	 * @param avatarUrl    GitHub avatar URL
+	 * @param gitHubClient Client of user's access token
+	 * @return TRUE if avatar is queued
+	 */
+	public boolean submit(String login, @Nullable String avatarUrl, GitHubClient gitHubClient) {
+		if (null == avatarUrl) {
+			return false;
+		}
+		if (!pending.add(login)) {
+			coalesced.incrementAndGet();
+			return true;
+		}
+		if (pending.size() > capacity) {
+			pending.remove(login);
+			rejected.incrementAndGet();
+			LOGGER.warn("Avatar of user {} is not replicated: too many pending avatars", login);
+			return false;
+		}
+		submitted.incrementAndGet();
+		executor.execute(() -> replicate(login, avatarUrl, gitHubClient, 1));
+		return true;
+	}
+
+	private void replicate(String login, String avatarUrl, GitHubClient gitHubClient, int attempt) {
+		try {
+			String currentPhoto = currentPhoto(login);
+			AvatarVersion known = Optional.ofNullable(versions.getIfPresent(login))
+					.filter(version -> Objects.equals(version.photoId, currentPhoto)).orElse(null);
+			gitHubClient.downloadResource(avatarUrl, null == known ? null : known.etag,
+					response -> store(login, currentPhoto, known, response));
+			pending.remove(login);
+		} catch (Exception e) {
+			if (attempt < maxAttempts && !executor.isShutdown()) {
+				retried.incrementAndGet();
+				LOGGER.debug("Unable to replicate avatar of user {}, attempt {}", login, attempt, e);
+				long delay = backoff << (attempt - 1);
+				if (e instanceof GitHubRateLimitException) {
+					delay = Math.max(delay, ((GitHubRateLimitException) e).getResetTime() - System.currentTimeMillis());
+				}
+				executor.schedule(() -> replicate(login, avatarUrl, gitHubClient, attempt + 1), delay, TimeUnit.MILLISECONDS);
+			} else {
+				pending.remove(login);
+				failed.incrementAndGet();
+				LOGGER.error("Unable to replicate avatar of user {}", login, e);
+			}
+		}
+	}
+
+	private Void store(String login, @Nullable String currentPhoto, @Nullable AvatarVersion known, ClientHttpResponse response)
+			throws IOException {
+		if (HttpStatus.NOT_MODIFIED.equals(response.getStatusCode())) {
+			unchanged.incrementAndGet();
+			return null;
+		}
+		String etag = response.getHeaders().getETag();
+		MediaType contentType = Optional.ofNullable(response.getHeaders().getContentType()).orElse(MediaType.APPLICATION_OCTET_STREAM);
+		HashingInputStream image = new HashingInputStream(Hashing.sha256(), response.getBody());
+		String photoId = dataStorage.saveData(new BinaryData(contentType.toString(), response.getHeaders().getContentLength(), image),
+				login);
+		String hash = image.hash().toString();
+
+		if (null != known && hash.equals(known.hash)) {
+			/* the same image is served with another ETag */
+			dataStorage.deleteData(photoId);
+			versions.put(login, new AvatarVersion(etag, hash, currentPhoto));
+			unchanged.incrementAndGet();
+			return null;
+		}
+
+		Query query = Query.query(Criteria.where("_id").is(login).and(PHOTO_ID).is(currentPhoto));
+		int updated;
+		try {
+			updated = mongoOperations.updateFirst(query, Update.update(PHOTO_ID, photoId), User.class).getN();
+		} catch (RuntimeException e) {
+			/* do not leave orphan photo, replication is retried */
+			dataStorage.deleteData(photoId);
+			throw e;
+		}
+		if (updated > 0) {
+			if (null != currentPhoto) {
+				dataStorage.deleteData(currentPhoto);
+			}
+			versions.put(login, new AvatarVersion(etag, hash, photoId));
+			stored.incrementAndGet();
+		} else {
+			/* photo is changed or user is removed meanwhile */
+			dataStorage.deleteData(photoId);
+		}
+		return null;
+	}
+
+	@Nullable
+	private String currentPhoto(String login) {
+		Query query = Query.query(Criteria.where("_id").is(login));
+		query.fields().include(PHOTO_ID);
+		return Optional.ofNullable(mongoOperations.findOne(query, User.class)).map(User::getPhotoId).orElse(null);
+	}
+
+	@Override
+	public void destroy() {
+		executor.shutdownNow();
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		return Arrays.asList(new Metric<>(METRIC_PREFIX + "queue", pending.size()),
+				new Metric<>(METRIC_PREFIX + "submitted", submitted.get()),
+				new Metric<>(METRIC_PREFIX + "coalesced", coalesced.get()),
+				new Metric<>(METRIC_PREFIX + "rejected", rejected.get()),
+				new Metric<>(METRIC_PREFIX + "stored", stored.get()),
+				new Metric<>(METRIC_PREFIX + "unchanged", unchanged.get()),
+				new Metric<>(METRIC_PREFIX + "retried", retried.get()),
+				new Metric<>(METRIC_PREFIX + "failed", failed.get()));
+	}
+
+	private static class AvatarVersion {
+		private final String etag;
+		private final String hash;
+		private final String photoId;
+
+		AvatarVersion(@Nullable String etag, String hash, @Nullable String photoId) {
+			this.etag = etag;
+			this.hash = hash;
+			this.photoId = photoId;
+		}
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.integration.github;
+
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Timings of GitHub API calls broken down by call
+ */
+class GitHubCallTimer {
+
+	private static final String METRIC_PREFIX = "github.call.";
+
+	private final Map<String, Timing> timings = new ConcurrentHashMap<>();
+
+	/**
+	 * Executes call and records its duration
+	 *
+	 * @param call Name of call
+	 * @param body Call
+	 * @param <T>  Type of result
+	 * @return Result of call
+	 */
+	<T> T time(String call, Supplier<T> body) {
+		Timing timing = timings.computeIfAbsent(call, it -> new Timing());
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			T result = body.get();
+			failed = false;
+			return result;
+		} finally {
+			timing.record(System.nanoTime() - start, failed);
+		}
+	}
+
+	Collection<Metric<?>> metrics() {
+		List<Metric<?>> metrics = new ArrayList<>();
+		timings.forEach((call, timing) -> {
+			long count = timing.count.sum();
+			String prefix = METRIC_PREFIX + call + ".";
+			metrics.add(new Metric<>(prefix + "count", count));
+			metrics.add(new Metric<>(prefix + "errors", timing.errors.sum()));
+			metrics.add(new Metric<>(prefix + "time.avg", 0 == count ? 0 : timing.total.sum() / (double) count / TimeUnit.MILLISECONDS.toNanos(1)));
+			metrics.add(new Metric<>(prefix + "time.max", TimeUnit.NANOSECONDS.toMillis(timing.max.get())));
+		});
+		return metrics;
+	}
+
+	private static class Timing {
+		private final LongAdder count = new LongAdder();
+		private final LongAdder errors = new LongAdder();
+		private final LongAdder total = new LongAdder();
+		private final AtomicLong max = new AtomicLong();
+
+		void record(long nanos, boolean failed) {
+			count.increment();
+			total.add(nanos);
+			max.accumulateAndGet(nanos, Math::max);
+			if (failed) {
+				errors.increment();
+			}
+		}
+	}
+}
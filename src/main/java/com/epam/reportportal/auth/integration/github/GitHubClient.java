@@ -21,73 +21,121 @@
 package com.epam.reportportal.auth.integration.github;
 
 import org.springframework.core.ParameterizedTypeReference;
-import org.springframework.core.io.Resource;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
-import org.springframework.http.ResponseEntity;
-import org.springframework.http.client.ClientHttpResponse;
-import org.springframework.security.authentication.AuthenticationServiceException;
-import org.springframework.security.oauth2.client.http.OAuth2ErrorHandler;
-import org.springframework.security.oauth2.client.resource.OAuth2AccessDeniedException;
-import org.springframework.web.client.DefaultResponseErrorHandler;
-import org.springframework.web.client.ResponseErrorHandler;
+import org.springframework.web.client.ResponseExtractor;
 import org.springframework.web.client.RestTemplate;
 
-import java.io.IOException;
+import javax.annotation.Nullable;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
 
 /**
- * Simple GitHub client
+ * GitHub API client of single access token. Instances are cheap and created
+ * by {@link GitHubClientFactory}, which owns connection pool
  *
  * @author <a href="mailto:andrei_varabyeu@epam.com">Andrei Varabyeu</a>
  */
 public class GitHubClient {
 
-	private static final String GITHUB_BASE_URL = "https://api.github.com";
-
 	private final RestTemplate restTemplate;
+	private final RestTemplate backgroundRestTemplate;
+	private final String baseUrl;
+	private final HttpEntity<Void> authorization;
+	private final GitHubCallTimer timer;
+	private final Executor executor;
 
-	private GitHubClient(String accessToken) {
-		this.restTemplate = new RestTemplate();
-		this.restTemplate.setErrorHandler(new DefaultResponseErrorHandler(){
-			@Override
-			public void handleError(ClientHttpResponse response) throws IOException {
-				throw new AuthenticationServiceException("Unable to load Github Data");
-			}
-		});
-		this.restTemplate.getInterceptors().add((request, body, execution) -> {
-			request.getHeaders().add("Authorization", "bearer " + accessToken);
-			return execution.execute(request, body);
-		});
+	GitHubClient(RestTemplate restTemplate, RestTemplate backgroundRestTemplate, String baseUrl, String accessToken,
+			GitHubCallTimer timer, Executor executor) {
+		this(restTemplate, backgroundRestTemplate, baseUrl, authorization(accessToken), timer, executor);
 	}
 
-	public static GitHubClient withAccessToken(String accessToken) {
-		return new GitHubClient(accessToken);
+	private GitHubClient(RestTemplate restTemplate, RestTemplate backgroundRestTemplate, String baseUrl,
+			HttpEntity<Void> authorization, GitHubCallTimer timer, Executor executor) {
+		this.restTemplate = restTemplate;
+		this.backgroundRestTemplate = backgroundRestTemplate;
+		this.baseUrl = baseUrl;
+		this.authorization = authorization;
+		this.timer = timer;
+		this.executor = executor;
+	}
+
+	/**
+	 * @return Client of the same token making background calls. They do not use the rest of rate limit
+	 * reserved for interactive calls
+	 */
+	public GitHubClient background() {
+		return new GitHubClient(backgroundRestTemplate, backgroundRestTemplate, baseUrl, authorization, timer, executor);
 	}
 
 	public UserResource getUser() {
-		return this.restTemplate.getForObject(GITHUB_BASE_URL + "/user", UserResource.class);
+		return getForObject("user", baseUrl + "/user", new ParameterizedTypeReference<UserResource>() {
+		});
 	}
 
 	public List<EmailResource> getUserEmails() {
-		return getForObject(GITHUB_BASE_URL + "/user/emails", new ParameterizedTypeReference<List<EmailResource>>() {
+		return getForObject("user.emails", baseUrl + "/user/emails", new ParameterizedTypeReference<List<EmailResource>>() {
+		});
+	}
+
+	/**
+	 * @return Organizations of token owner. Unlike {@link #getUserOrganizations(UserResource)} does not require
+	 * user to be loaded first
+	 */
+	public List<OrganizationResource> getUserOrganizations() {
+		return getForObject("user.orgs", baseUrl + "/user/orgs", new ParameterizedTypeReference<List<OrganizationResource>>() {
 		});
 	}
 
 	public List<OrganizationResource> getUserOrganizations(String user) {
-		return getForObject(GITHUB_BASE_URL + "/users/{}/orgs", new ParameterizedTypeReference<List<OrganizationResource>>() {
+		return getForObject("users.orgs", baseUrl + "/users/{}/orgs", new ParameterizedTypeReference<List<OrganizationResource>>() {
 		}, user);
 	}
 
 	public List<OrganizationResource> getUserOrganizations(UserResource user) {
-		return getForObject(user.organizationsUrl, new ParameterizedTypeReference<List<OrganizationResource>>() {
+		return getForObject("users.orgs", user.organizationsUrl, new ParameterizedTypeReference<List<OrganizationResource>>() {
 		});
 	}
 
-	public ResponseEntity<Resource> downloadResource(String url) {
-		return this.restTemplate.getForEntity(url, Resource.class);
+	/**
+	 * Downloads resource without buffering
+	 *
+	 * @param url       Resource URL
+	 * @param etag      ETag of known version of resource. Response is 304 without body if it's not changed
+	 * @param extractor Reads response
+	 * @param <T>       Type of result
+	 * @return Result of extractor
+	 */
+	public <T> T downloadResource(String url, @Nullable String etag, ResponseExtractor<T> extractor) {
+		return timer.time("resource", () -> this.restTemplate.execute(url, HttpMethod.GET, request -> {
+			request.getHeaders().putAll(authorization.getHeaders());
+			if (null != etag) {
+				request.getHeaders().setIfNoneMatch(etag);
+			}
+		}, extractor));
+	}
+
+	/**
+	 * Executes call on bounded executor shared by all clients
+	 *
+	 * @param call Call of this client
+	 * @param <T>  Type of result
+	 * @return Result future
+	 */
+	public <T> CompletableFuture<T> async(Function<GitHubClient, T> call) {
+		return CompletableFuture.supplyAsync(() -> call.apply(this), executor);
+	}
+
+	private static HttpEntity<Void> authorization(String accessToken) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.add(HttpHeaders.AUTHORIZATION, "bearer " + accessToken);
+		return new HttpEntity<>(headers);
 	}
 
-	private <T> T getForObject(String url, ParameterizedTypeReference<T> type, Object... urlVars) {
-		return this.restTemplate.exchange(url, HttpMethod.GET, null, type, urlVars).getBody();
+	private <T> T getForObject(String call, String url, ParameterizedTypeReference<T> type, Object... urlVars) {
+		return timer.time(call, () -> this.restTemplate.exchange(url, HttpMethod.GET, authorization, type, urlVars).getBody());
 	}
 }
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.integration.github;
+
+import com.google.common.primitives.Longs;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.DefaultResponseErrorHandler;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates {@link GitHubClient} instances. All of them share single pool of keep-alive connections
+ * and cache of conditional requests, access token is applied to each request.
+ * Independent calls might be executed concurrently on bounded executor. All calls are scheduled
+ * according to rate limit of access token, interactive ones take precedence over background ones
+ */
+@Component
+public class GitHubClientFactory implements PublicMetrics, DisposableBean {
+
+	private static final String METRIC_PREFIX = "github.pool.";
+
+	private final String baseUrl;
+	private final PoolingHttpClientConnectionManager connectionManager;
+	private final CloseableHttpClient httpClient;
+	private final RestTemplate restTemplate;
+	private final RestTemplate backgroundRestTemplate;
+	private final GitHubResponseCache responseCache;
+	private final GitHubRateLimiter rateLimiter;
+	private final GitHubCallTimer timer;
+	private final ThreadPoolExecutor executor;
+
+	/**
+	 * @param baseUrl         GitHub API URL
+	 * @param connectTimeout  Connect timeout, milliseconds
+	 * @param readTimeout     Read timeout, milliseconds
+	 * @param maxConnections  Max count of pooled connections
+	 * @param maxPerRoute     Max count of pooled connections to the same host
+	 * @param cacheSize       Max total size of cached responses, bytes
+	 * @param cacheExpiration Expiration of cached responses, seconds
+	 * @param threads         Max count of threads executing concurrent calls
+	 * @param queueSize       Max count of concurrent calls waiting for thread. Calls beyond are executed by caller
+	 * @param reserve         Remaining rate limit of token which is not used by background calls
+	 * @param maxWait         Max time background call waits for rate limit reset, milliseconds
+	 * @param maxWaiting      Max count of background calls waiting for rate limit reset
+	 */
+	@Autowired
+	public GitHubClientFactory(@Value("${rp.auth.github.base-url:https://api.github.com}") String baseUrl,
+			@Value("${rp.auth.github.connect-timeout:5000}") int connectTimeout,
+			@Value("${rp.auth.github.read-timeout:10000}") int readTimeout,
+			@Value("${rp.auth.github.pool.max-total:100}") int maxConnections,
+			@Value("${rp.auth.github.pool.max-per-route:50}") int maxPerRoute,
+			@Value("${rp.auth.github.cache.size:10485760}") long cacheSize,
+			@Value("${rp.auth.github.cache.expiration:86400}") long cacheExpiration,
+			@Value("${rp.auth.github.executor.threads:32}") int threads,
+			@Value("${rp.auth.github.executor.queue:1000}") int queueSize,
+			@Value("${rp.auth.github.rate-limit.reserve:500}") long reserve,
+			@Value("${rp.auth.github.rate-limit.max-wait:5000}") long maxWait,
+			@Value("${rp.auth.github.rate-limit.queue:100}") int maxWaiting) {
+		this.baseUrl = baseUrl;
+		this.connectionManager = new PoolingHttpClientConnectionManager(60, TimeUnit.SECONDS);
+		this.connectionManager.setMaxTotal(maxConnections);
+		this.connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+		/* GitHub closes idle connections on its side, check them before reuse */
+		this.connectionManager.setValidateAfterInactivity(2000);
+
+		//@formatter:off
+		RequestConfig requestConfig = RequestConfig.custom()
+				.setConnectTimeout(connectTimeout)
+				.setSocketTimeout(readTimeout)
+				.setConnectionRequestTimeout(connectTimeout)
+				.build();
+		this.httpClient = HttpClientBuilder.create()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(requestConfig)
+				.evictExpiredConnections()
+				.evictIdleConnections(30, TimeUnit.SECONDS)
+				.disableCookieManagement()
+				.useSystemProperties()
+				.build();
+		//@formatter:on
+
+		this.responseCache = new GitHubResponseCache(baseUrl, cacheSize, cacheExpiration);
+		this.rateLimiter = new GitHubRateLimiter(reserve, maxWait, maxWaiting);
+		this.restTemplate = restTemplate(true);
+		this.backgroundRestTemplate = restTemplate(false);
+
+		this.timer = new GitHubCallTimer();
+		this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueSize),
+				new ThreadFactoryBuilder().setNameFormat("github-%d").setDaemon(true).build(), new ThreadPoolExecutor.CallerRunsPolicy());
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * @param accessToken GitHub access token
+	 * @return Client making interactive requests on behalf of token owner
+	 */
+	public GitHubClient withAccessToken(String accessToken) {
+		return new GitHubClient(restTemplate, backgroundRestTemplate, baseUrl, accessToken, timer, executor);
+	}
+
+	/*
+	 * Templates share connection pool and cache and differ by priority of calls only
+	 */
+	private RestTemplate restTemplate(boolean interactive) {
+		RestTemplate template = new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+		template.setErrorHandler(new DefaultResponseErrorHandler() {
+			@Override
+			public void handleError(ClientHttpResponse response) throws IOException {
+				String remaining = response.getHeaders().getFirst("X-RateLimit-Remaining");
+				if (HttpStatus.TOO_MANY_REQUESTS.equals(response.getStatusCode()) || (HttpStatus.FORBIDDEN.equals(response.getStatusCode())
+						&& "0".equals(remaining))) {
+					long reset = Optional.ofNullable(response.getHeaders().getFirst("X-RateLimit-Reset")).map(Longs::tryParse)
+							.map(TimeUnit.SECONDS::toMillis).orElse(0L);
+					throw new GitHubRateLimitException("GitHub API rate limit is exceeded", reset);
+				}
+				throw new AuthenticationServiceException("Unable to load Github Data");
+			}
+		});
+		/* rate limiter is applied to requests sent to GitHub, including conditional ones */
+		template.setInterceptors(Arrays.asList(responseCache.interceptor(interactive), rateLimiter.interceptor(interactive)));
+		return template;
+	}
+
+	@Override
+	public void destroy() throws IOException {
+		executor.shutdownNow();
+		httpClient.close();
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		PoolStats stats = connectionManager.getTotalStats();
+		List<Metric<?>> metrics = new ArrayList<>(Arrays.asList(new Metric<>(METRIC_PREFIX + "leased", stats.getLeased()),
+				new Metric<>(METRIC_PREFIX + "available", stats.getAvailable()),
+				new Metric<>(METRIC_PREFIX + "pending", stats.getPending()),
+				new Metric<>(METRIC_PREFIX + "max", stats.getMax())));
+		metrics.add(new Metric<>("github.executor.active", executor.getActiveCount()));
+		metrics.add(new Metric<>("github.executor.queue", executor.getQueue().size()));
+		metrics.addAll(responseCache.metrics());
+		metrics.addAll(rateLimiter.metrics());
+		metrics.addAll(timer.metrics());
+		return metrics;
+	}
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.integration.github;
+
+import org.springframework.security.authentication.AuthenticationServiceException;
+
+/**
+ * GitHub API rate limit of access token is exceeded or about to be exceeded
+ */
+public class GitHubRateLimitException extends AuthenticationServiceException {
+
+	private final long resetTime;
+
+	/**
+	 * @param msg       Message
+	 * @param resetTime Time the rate limit is reset, epoch milliseconds
+	 */
+	public GitHubRateLimitException(String msg, long resetTime) {
+		super(msg);
+		this.resetTime = resetTime;
+	}
+
+	/**
+	 * @return Time the rate limit is reset, epoch milliseconds
+	 */
+	public long getResetTime() {
+		return resetTime;
+	}
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.integration.github;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.primitives.Longs;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Schedules GitHub API calls according to rate limit of access token reported by
+ * X-RateLimit-Remaining and X-RateLimit-Reset headers.
+ * Interactive calls are executed while there is any budget left. Background calls keep
+ * reserve of budget for interactive ones: once remaining budget reaches it, they wait for reset
+ * up to max wait time. Calls which cannot be executed fail with {@link GitHubRateLimitException},
+ * previously cached response is served instead if there is any
+ */
+class GitHubRateLimiter {
+
+	private static final String METRIC_PREFIX = "github.rate-limit.";
+	private static final String REMAINING = "X-RateLimit-Remaining";
+	private static final String RESET = "X-RateLimit-Reset";
+
+	private final Cache<String, Budget> budgets;
+	private final long reserve;
+	private final long maxWait;
+	private final int maxQueue;
+
+	private final AtomicInteger queue = new AtomicInteger();
+	private final AtomicLong delayed = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+
+	/**
+	 * @param reserve  Remaining budget background calls do not use
+	 * @param maxWait  Max time background call waits for budget, milliseconds
+	 * @param maxQueue Max count of background calls waiting for budget
+	 */
+	GitHubRateLimiter(long reserve, long maxWait, int maxQueue) {
+		this.reserve = reserve;
+		this.maxWait = maxWait;
+		this.maxQueue = maxQueue;
+		/* GitHub rate limit window is one hour */
+		this.budgets = CacheBuilder.newBuilder().maximumSize(100_000).expireAfterWrite(1, TimeUnit.HOURS).build();
+	}
+
+	/**
+	 * @param interactive Whether interceptor is used for interactive calls
+	 * @return Interceptor applying rate limit to requests
+	 */
+	ClientHttpRequestInterceptor interceptor(boolean interactive) {
+		return (request, body, execution) -> execute(request, body, execution, interactive);
+	}
+
+	private ClientHttpResponse execute(HttpRequest request, byte[] body, ClientHttpRequestExecution execution, boolean interactive)
+			throws IOException {
+		String key = GitHubResponseCache.tokenKey(request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION));
+		Budget budget = budgets.getIfPresent(key);
+		if (null != budget) {
+			acquire(budget, interactive);
+		}
+		ClientHttpResponse response = execution.execute(request, body);
+		Long remaining = header(response, REMAINING);
+		Long reset = header(response, RESET);
+		if (null != remaining && null != reset) {
+			if (null == budget) {
+				budget = budgets.asMap().computeIfAbsent(key, it -> new Budget());
+			}
+			budget.update(remaining, TimeUnit.SECONDS.toMillis(reset));
+		}
+		return response;
+	}
+
+	private void acquire(Budget budget, boolean interactive) {
+		long minRemaining = interactive ? 0 : reserve;
+		if (budget.tryAcquire(minRemaining, 0)) {
+			return;
+		}
+		long deadline = System.currentTimeMillis() + maxWait;
+		/* there is no point to wait if budget is not restored in time */
+		if (!interactive && budget.getResetTime() <= deadline) {
+			try {
+				if (queue.incrementAndGet() <= maxQueue) {
+					delayed.incrementAndGet();
+					if (budget.tryAcquire(minRemaining, deadline)) {
+						return;
+					}
+				}
+			} finally {
+				queue.decrementAndGet();
+			}
+		}
+		rejected.incrementAndGet();
+		throw new GitHubRateLimitException(
+				"GitHub API rate limit is exceeded. It's reset at " + Instant.ofEpochMilli(budget.getResetTime()), budget.getResetTime());
+	}
+
+	private static Long header(ClientHttpResponse response, String name) {
+		String value = response.getHeaders().getFirst(name);
+		return null == value ? null : Longs.tryParse(value);
+	}
+
+	Collection<Metric<?>> metrics() {
+		long now = System.currentTimeMillis();
+		long minRemaining = -1;
+		long exhausted = 0;
+		for (Budget budget : budgets.asMap().values()) {
+			long remaining = budget.getRemaining(now);
+			if (remaining >= 0) {
+				minRemaining = minRemaining < 0 ? remaining : Math.min(minRemaining, remaining);
+				if (remaining <= reserve) {
+					exhausted++;
+				}
+			}
+		}
+		return Arrays.asList(new Metric<>(METRIC_PREFIX + "tokens", budgets.size()),
+				new Metric<>(METRIC_PREFIX + "remaining.min", minRemaining),
+				new Metric<>(METRIC_PREFIX + "exhausted", exhausted),
+				new Metric<>(METRIC_PREFIX + "queue", queue.get()),
+				new Metric<>(METRIC_PREFIX + "delayed", delayed.get()),
+				new Metric<>(METRIC_PREFIX + "rejected", rejected.get()));
+	}
+
+	/**
+	 * Rate limit of single token. Remaining budget is decremented by each call and corrected
+	 * by rate limit headers of each response
+	 */
+	private static class Budget {
+
+		private long remaining;
+		private long resetTime;
+
+		synchronized void update(long remaining, long resetTime) {
+			if (resetTime > this.resetTime) {
+				this.resetTime = resetTime;
+				this.remaining = remaining;
+				notifyAll();
+			} else if (resetTime == this.resetTime) {
+				/* responses of concurrent calls might come in any order */
+				this.remaining = Math.min(this.remaining, remaining);
+			}
+		}
+
+		/**
+		 * @param minRemaining Remaining budget which cannot be used
+		 * @param deadline     Time to wait until, epoch milliseconds
+		 * @return TRUE if budget is acquired
+		 */
+		synchronized boolean tryAcquire(long minRemaining, long deadline) {
+			long now;
+			while ((now = System.currentTimeMillis()) < resetTime && remaining <= minRemaining) {
+				if (now >= deadline) {
+					return false;
+				}
+				try {
+					wait(Math.min(deadline, resetTime) - now);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+			/* once reset time has passed, budget is restored and actual value comes with response */
+			if (now < resetTime) {
+				remaining--;
+			}
+			return true;
+		}
+
+		synchronized long getResetTime() {
+			return resetTime;
+		}
+
+		/*
+		 * Negative if budget is already restored and not known yet
+		 */
+		synchronized long getRemaining(long now) {
+			return now >= resetTime ? -1 : remaining;
+		}
+	}
+}
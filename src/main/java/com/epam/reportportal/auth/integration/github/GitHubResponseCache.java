@@ -0,0 +1,211 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.integration.github;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.util.StreamUtils;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Conditional requests cache of GitHub API responses. Bodies of GET responses are stored with their ETags
+ * per access token and URL, so next request of the same data is sent with If-None-Match header.
+ * GitHub answers with 304 which does not count against rate limit, body is served from memory then.
+ * Cache is bounded by total size of bodies, entries expire after write. Cached body of background call is served
+ * without revalidation as well if the call is not allowed by rate limit. Interactive calls and organizations, which
+ * restrict access, are never served stale
+ */
+class GitHubResponseCache {
+
+	private static final String METRIC_PREFIX = "github.cache.";
+	private static final String RATE_LIMIT_HEADERS = "x-ratelimit-";
+	private static final String ORGANIZATIONS = "/orgs";
+
+	private final String baseUrl;
+	private final Cache<String, CachedResponse> responses;
+
+	private final AtomicLong revalidations = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong stored = new AtomicLong();
+	private final AtomicLong stale = new AtomicLong();
+
+	/**
+	 * @param baseUrl           Only responses of API under this URL are cached
+	 * @param maxSize           Max total size of cached bodies, bytes
+	 * @param expirationSeconds Expiration of cached responses
+	 */
+	GitHubResponseCache(String baseUrl, long maxSize, long expirationSeconds) {
+		this.baseUrl = baseUrl;
+		//@formatter:off
+		this.responses = CacheBuilder.newBuilder()
+				.maximumWeight(maxSize)
+				.<String, CachedResponse>weigher((key, response) -> key.length() + response.body.length)
+				.expireAfterWrite(expirationSeconds, TimeUnit.SECONDS)
+				.recordStats()
+				.build();
+		//@formatter:on
+	}
+
+	/**
+	 * @param interactive Whether calls are made by user waiting for response
+	 * @return Interceptor of calls
+	 */
+	ClientHttpRequestInterceptor interceptor(boolean interactive) {
+		return (request, body, execution) -> intercept(request, body, execution, !interactive);
+	}
+
+	private ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution, boolean serveStale)
+			throws IOException {
+		String url = request.getURI().toString();
+		if (!HttpMethod.GET.equals(request.getMethod()) || !url.startsWith(baseUrl)) {
+			return execution.execute(request, body);
+		}
+
+		String key = key(request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION), url);
+		CachedResponse cached = responses.getIfPresent(key);
+		if (null != cached) {
+			request.getHeaders().setIfNoneMatch(cached.etag);
+			revalidations.incrementAndGet();
+		}
+
+		ClientHttpResponse response;
+		try {
+			response = execution.execute(request, body);
+		} catch (GitHubRateLimitException e) {
+			if (null == cached || !serveStale || request.getURI().getPath().endsWith(ORGANIZATIONS)) {
+				throw e;
+			}
+			stale.incrementAndGet();
+			return cached;
+		}
+		if (null != cached && HttpStatus.NOT_MODIFIED.equals(response.getStatusCode())) {
+			hits.incrementAndGet();
+			HttpHeaders headers = new HttpHeaders();
+			headers.putAll(cached.headers);
+			/* rate limit headers of the actual response are more recent */
+			response.getHeaders().entrySet().stream().filter(header -> header.getKey().toLowerCase().startsWith(RATE_LIMIT_HEADERS))
+					.forEach(header -> headers.put(header.getKey(), header.getValue()));
+			response.close();
+			return new CachedResponse(cached.etag, headers, cached.body);
+		}
+
+		String etag = response.getHeaders().getETag();
+		if (HttpStatus.OK.equals(response.getStatusCode()) && null != etag) {
+			try {
+				CachedResponse fresh = new CachedResponse(etag, response.getHeaders(), StreamUtils.copyToByteArray(response.getBody()));
+				responses.put(key, fresh);
+				stored.incrementAndGet();
+				return fresh;
+			} finally {
+				response.close();
+			}
+		}
+		if (null != cached) {
+			responses.invalidate(key);
+		}
+		return response;
+	}
+
+	Collection<Metric<?>> metrics() {
+		return Arrays.asList(new Metric<>(METRIC_PREFIX + "size", responses.size()),
+				new Metric<>(METRIC_PREFIX + "stored", stored.get()),
+				new Metric<>(METRIC_PREFIX + "revalidated", revalidations.get()),
+				new Metric<>(METRIC_PREFIX + "hit", hits.get()),
+				new Metric<>(METRIC_PREFIX + "stale", stale.get()),
+				new Metric<>(METRIC_PREFIX + "eviction", responses.stats().evictionCount()));
+	}
+
+	private static String key(String authorization, String url) {
+		return tokenKey(authorization) + url;
+	}
+
+	/**
+	 * Access tokens are not kept in memory as is
+	 *
+	 * @param authorization Authorization header
+	 * @return Hash of access token
+	 */
+	static String tokenKey(@Nullable String authorization) {
+		String token = null == authorization ? "" : authorization;
+		return Hashing.sha256().hashString(token, StandardCharsets.UTF_8).toString();
+	}
+
+	private static class CachedResponse implements ClientHttpResponse {
+
+		private final String etag;
+		private final HttpHeaders headers;
+		private final byte[] body;
+
+		CachedResponse(String etag, HttpHeaders headers, byte[] body) {
+			this.etag = etag;
+			this.headers = HttpHeaders.readOnlyHttpHeaders(headers);
+			this.body = body;
+		}
+
+		@Override
+		public HttpStatus getStatusCode() {
+			return HttpStatus.OK;
+		}
+
+		@Override
+		public int getRawStatusCode() {
+			return HttpStatus.OK.value();
+		}
+
+		@Override
+		public String getStatusText() {
+			return HttpStatus.OK.getReasonPhrase();
+		}
+
+		@Override
+		public HttpHeaders getHeaders() {
+			return headers;
+		}
+
+		@Override
+		public InputStream getBody() {
+			return new ByteArrayInputStream(body);
+		}
+
+		@Override
+		public void close() {
+			//nothing to close
+		}
+	}
+}
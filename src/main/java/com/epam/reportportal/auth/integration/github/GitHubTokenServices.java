@@ -24,6 +24,7 @@ import com.epam.reportportal.auth.AuthUtils;
 import com.epam.ta.reportportal.database.entity.settings.OAuth2LoginDetails;
 import com.epam.ta.reportportal.database.entity.user.User;
 import com.google.common.base.Splitter;
+import org.springframework.security.authentication.AuthenticationServiceException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
@@ -36,6 +37,10 @@ import java.io.Serializable;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Supplier;
 
 import static java.util.Collections.emptyList;
@@ -49,32 +54,57 @@ import static java.util.Optional.ofNullable;
 public class GitHubTokenServices implements ResourceServerTokenServices {
 
 	private final GitHubUserReplicator replicator;
+	private final GitHubClientFactory clientFactory;
 	private final Supplier<OAuth2LoginDetails> loginDetails;
+	private final long timeout;
 
-	public GitHubTokenServices(GitHubUserReplicator replicatingPrincipalExtractor, Supplier<OAuth2LoginDetails> loginDetails) {
+	/**
+	 * @param replicatingPrincipalExtractor Replicator of GitHub users
+	 * @param clientFactory                 Factory of GitHub clients
+	 * @param loginDetails                  GitHub OAuth settings
+	 * @param timeout                       Max time of all GitHub calls of single login, milliseconds
+	 */
+	public GitHubTokenServices(GitHubUserReplicator replicatingPrincipalExtractor, GitHubClientFactory clientFactory,
+			Supplier<OAuth2LoginDetails> loginDetails, long timeout) {
 		this.replicator = replicatingPrincipalExtractor;
+		this.clientFactory = clientFactory;
 		this.loginDetails = loginDetails;
+		this.timeout = timeout;
 	}
 
 	@Override
 	public OAuth2Authentication loadAuthentication(String accessToken) throws AuthenticationException, InvalidTokenException {
-		GitHubClient gitHubClient = GitHubClient.withAccessToken(accessToken);
-		UserResource gitHubUser = gitHubClient.getUser();
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+		GitHubClient gitHubClient = clientFactory.withAccessToken(accessToken);
 
 		List<String> allowedOrganizations = ofNullable(loginDetails.get().getRestrictions())
 				.flatMap(restrictions -> ofNullable(restrictions.get("organizations")))
 				.map(it -> Splitter.on(",").omitEmptyStrings().splitToList(it))
 				.orElse(emptyList());
-		if (!allowedOrganizations.isEmpty()) {
-			boolean assignedToOrganization = gitHubClient.getUserOrganizations(gitHubUser).stream().map(userOrg -> userOrg.login)
-					.anyMatch(allowedOrganizations::contains);
-			if (!assignedToOrganization) {
-				throw new InsufficientOrganizationException("User '" + gitHubUser.login + "' does not belong to allowed GitHUB organization");
+
+		/* calls do not depend on each other. Emails are requested later, only if user is not replicated yet and hides email */
+		CompletableFuture<UserResource> userCall = gitHubClient.async(GitHubClient::getUser);
+		CompletableFuture<List<OrganizationResource>> organizationsCall = allowedOrganizations.isEmpty() ?
+				CompletableFuture.completedFuture(emptyList()) :
+				gitHubClient.async(GitHubClient::getUserOrganizations);
+
+		User user;
+		try {
+			UserResource gitHubUser = await(userCall, deadline);
+			if (!allowedOrganizations.isEmpty()) {
+				boolean assignedToOrganization = await(organizationsCall, deadline).stream().map(userOrg -> userOrg.login)
+						.anyMatch(allowedOrganizations::contains);
+				if (!assignedToOrganization) {
+					throw new InsufficientOrganizationException(
+							"User '" + gitHubUser.login + "' does not belong to allowed GitHUB organization");
+				}
 			}
+			user = replicator.replicateUser(gitHubUser, gitHubClient,
+					() -> await(gitHubClient.async(GitHubClient::getUserEmails), deadline));
+		} finally {
+			organizationsCall.cancel(false);
 		}
 
-		User user = replicator.replicateUser(gitHubUser, gitHubClient);
-
 		UsernamePasswordAuthenticationToken token = new UsernamePasswordAuthenticationToken(user.getId(), "N/A",
 				AuthUtils.AS_AUTHORITIES.apply(user.getRole()));
 
@@ -88,6 +118,26 @@ public class GitHubTokenServices implements ResourceServerTokenServices {
 		throw new UnsupportedOperationException("Not supported: read access token");
 	}
 
+	/*
+	 * Waits for call result until login deadline
+	 */
+	private static <T> T await(CompletableFuture<T> call, long deadline) {
+		try {
+			return call.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+		} catch (TimeoutException e) {
+			call.cancel(false);
+			throw new AuthenticationServiceException("Unable to load Github Data in time", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AuthenticationServiceException("Unable to load Github Data", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new AuthenticationServiceException("Unable to load Github Data", e.getCause());
+		}
+	}
+
 	public static class InsufficientOrganizationException extends AuthenticationException {
 
 		public InsufficientOrganizationException(String msg) {
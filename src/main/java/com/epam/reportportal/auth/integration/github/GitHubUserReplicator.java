@@ -23,8 +23,6 @@ package com.epam.reportportal.auth.integration.github;
 import com.epam.reportportal.auth.oauth.UserSynchronizationException;
 import com.epam.ta.reportportal.commons.EntityUtils;
 import com.epam.ta.reportportal.commons.validation.BusinessRule;
-import com.epam.ta.reportportal.database.BinaryData;
-import com.epam.ta.reportportal.database.DataStorage;
 import com.epam.ta.reportportal.database.dao.ProjectRepository;
 import com.epam.ta.reportportal.database.dao.UserRepository;
 import com.epam.ta.reportportal.database.entity.Project;
@@ -35,19 +33,19 @@ import com.epam.ta.reportportal.database.personal.PersonalProjectService;
 import com.epam.ta.reportportal.database.search.Filter;
 import com.epam.ta.reportportal.ws.model.ErrorType;
 import com.google.common.base.Strings;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.Resource;
-import org.springframework.http.ResponseEntity;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Component;
 
-import java.io.IOException;
-import java.io.InputStream;
 import java.time.ZonedDateTime;
 import java.util.Date;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 import static com.epam.ta.reportportal.database.search.FilterCondition.builder;
 
@@ -59,39 +57,44 @@ import static com.epam.ta.reportportal.database.search.FilterCondition.builder;
 @Component
 public class GitHubUserReplicator {
 
-	private static final Logger LOGGER = LoggerFactory.getLogger(GitHubUserReplicator.class);
+	private static final String FULL_NAME = "fullName";
+	private static final String SYNCHRONIZATION_DATE = "metaInfo.synchronizationDate";
 
 	private final UserRepository userRepository;
 	private final ProjectRepository projectRepository;
-	private final DataStorage dataStorage;
+	private final GitHubAvatarReplicator avatarReplicator;
 	private final PersonalProjectService personalProjectService;
+	private final GitHubClientFactory clientFactory;
+	private final MongoOperations mongoOperations;
 
 	@Autowired
 	public GitHubUserReplicator(UserRepository userRepository, ProjectRepository projectRepository,
-			DataStorage dataStorage,
-			PersonalProjectService personalProjectService) {
+			GitHubAvatarReplicator avatarReplicator,
+			PersonalProjectService personalProjectService, GitHubClientFactory clientFactory, MongoOperations mongoOperations) {
 		this.userRepository = userRepository;
 		this.projectRepository = projectRepository;
-		this.dataStorage = dataStorage;
+		this.avatarReplicator = avatarReplicator;
 		this.personalProjectService = personalProjectService;
+		this.clientFactory = clientFactory;
+		this.mongoOperations = mongoOperations;
 	}
 
 	public User synchronizeUser(String accessToken) {
-		GitHubClient gitHubClient = GitHubClient.withAccessToken(accessToken);
+		GitHubClient gitHubClient = clientFactory.withAccessToken(accessToken).background();
 		UserResource userInfo = gitHubClient.getUser();
 		User user = userRepository.findOne(EntityUtils.normalizeUsername(userInfo.login));
 		BusinessRule.expect(user, Objects::nonNull).verify(ErrorType.USER_NOT_FOUND, userInfo.login);
 		BusinessRule.expect(user.getType(), userType -> Objects.equals(userType, UserType.GITHUB))
 				.verify(ErrorType.INCORRECT_AUTHENTICATION_TYPE, "User '" + userInfo.login + "' is not GitHUB user");
+		Date now = Date.from(ZonedDateTime.now().toInstant());
 		user.setFullName(userInfo.name);
-		user.getMetaInfo().setSynchronizationDate(Date.from(ZonedDateTime.now().toInstant()));
+		user.getMetaInfo().setSynchronizationDate(now);
 
-		String newPhotoId = uploadAvatar(gitHubClient, userInfo.name, userInfo.avatarUrl);
-		if (!Strings.isNullOrEmpty(newPhotoId)) {
-			dataStorage.deleteData(user.getPhotoId());
-			user.setPhotoId(newPhotoId);
-		}
-		userRepository.save(user);
+		/* photo is not saved, it may be replaced by avatar replicator meanwhile */
+		mongoOperations.updateFirst(Query.query(Criteria.where("_id").is(user.getLogin())),
+				Update.update(FULL_NAME, userInfo.name).set(SYNCHRONIZATION_DATE, now), User.class);
+		/* photo is replaced in background if avatar is changed */
+		avatarReplicator.submit(user.getLogin(), userInfo.avatarUrl, gitHubClient);
 		return user;
 	}
 
@@ -102,7 +105,7 @@ public class GitHubUserReplicator {
 	 * @return Internal User representation
 	 */
 	public User replicateUser(String accessToken) {
-		GitHubClient gitHubClient = GitHubClient.withAccessToken(accessToken);
+		GitHubClient gitHubClient = clientFactory.withAccessToken(accessToken);
 		UserResource userInfo = gitHubClient.getUser();
 		return replicateUser(userInfo, gitHubClient);
 	}
@@ -115,6 +118,18 @@ public class GitHubUserReplicator {
 	 * @return Internal User representation
 	 */
 	public User replicateUser(UserResource userInfo, GitHubClient gitHubClient) {
+		return replicateUser(userInfo, gitHubClient, gitHubClient::getUserEmails);
+	}
+
+	/**
+	 * Replicates GitHub user to internal database (if does NOT exist). Creates personal project for that user
+	 *
+	 * @param userInfo     GitHub user to be replicated
+	 * @param gitHubClient Configured github client
+	 * @param emails       Emails of GitHub user, requested only if user is not replicated yet and has no public email
+	 * @return Internal User representation
+	 */
+	public User replicateUser(UserResource userInfo, GitHubClient gitHubClient, Supplier<List<EmailResource>> emails) {
 		String login = EntityUtils.normalizeUsername(userInfo.login);
 		User user = userRepository.findOne(login);
 		if (null == user) {
@@ -123,7 +138,7 @@ public class GitHubUserReplicator {
 
 			String email = userInfo.email;
 			if (Strings.isNullOrEmpty(email)) {
-				email = gitHubClient.getUserEmails().stream().filter(EmailResource::isVerified).filter(EmailResource::isPrimary).findAny()
+				email = emails.get().stream().filter(EmailResource::isVerified).filter(EmailResource::isPrimary).findAny()
 						.get().getEmail();
 			}
 			if (userRepository
@@ -144,13 +159,12 @@ public class GitHubUserReplicator {
 
 			user.setType(UserType.GITHUB);
 			user.setRole(UserRole.USER);
-			Object avatarUrl = userInfo.avatarUrl;
-			user.setPhotoId(uploadAvatar(gitHubClient, login, avatarUrl));
-
 			user.setIsExpired(false);
 
 			user.setDefaultProject(generatePersonalProject(user));
 			userRepository.save(user);
+			/* login does not wait for photo */
+			avatarReplicator.submit(login, userInfo.avatarUrl, gitHubClient.background());
 
 		} else if (!UserType.GITHUB.equals(user.getType())) {
 			//if user with such login exists, but it's not GitHub user than throw an exception
@@ -159,21 +173,6 @@ public class GitHubUserReplicator {
 		return user;
 	}
 
-	private String uploadAvatar(GitHubClient gitHubClient, String login, Object avatarUrl) {
-		String photoId = null;
-		if (null != avatarUrl) {
-			ResponseEntity<Resource> photoRs = gitHubClient.downloadResource(avatarUrl.toString());
-			try (InputStream photoStream = photoRs.getBody().getInputStream()) {
-				BinaryData photo = new BinaryData(photoRs.getHeaders().getContentType().toString(), photoRs.getBody().contentLength(),
-						photoStream);
-				photoId = dataStorage.saveData(photo, photoRs.getBody().getFilename());
-			} catch (IOException e) {
-				LOGGER.error("Unable to load photo for user {}", login);
-			}
-		}
-		return photoId;
-	}
-
 	/**
 	 * Generates personal project if does NOT exists
 	 *
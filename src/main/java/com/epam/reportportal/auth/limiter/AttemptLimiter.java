@@ -0,0 +1,51 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.limiter;
+
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.Collection;
+
+/**
+ * Counts failed attempts per source and blocks sources
+ * which have more failures than {@link AttemptPolicy} allows
+ */
+public interface AttemptLimiter {
+
+    /**
+     * Records failed attempt of source
+     *
+     * @param source Source of attempt
+     */
+    void recordFailure(String source);
+
+    /**
+     * @param source Source of attempt
+     * @return TRUE if source has more failed attempts within window than allowed
+     */
+    boolean isBlocked(String source);
+
+    /**
+     * @param prefix Prefix of metric names
+     * @return Limiter metrics
+     */
+    Collection<Metric<?>> metrics(String prefix);
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.limiter;
+
+import com.google.common.base.Preconditions;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Count of failed attempts allowed within sliding window.
+ * Source is blocked once it has more failures than allowed
+ */
+public class AttemptPolicy {
+
+    private final int maxAttempts;
+    private final long windowNanos;
+
+    /**
+     * @param maxAttempts   Allowed failures within window
+     * @param windowSeconds Window size, seconds
+     */
+    public AttemptPolicy(int maxAttempts, long windowSeconds) {
+        Preconditions.checkArgument(maxAttempts > 0, "Max attempts should be positive");
+        Preconditions.checkArgument(windowSeconds > 0, "Window should be positive");
+        this.maxAttempts = maxAttempts;
+        this.windowNanos = TimeUnit.SECONDS.toNanos(windowSeconds);
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public long getWindowNanos() {
+        return windowNanos;
+    }
+
+    @Override
+    public String toString() {
+        return maxAttempts + " attempts per " + TimeUnit.NANOSECONDS.toSeconds(windowNanos) + "s";
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.limiter;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Shares failure counters of all instances through Redis. Every source has counters of fixed windows
+ * stored with expiration, sliding window is approximated from current and previous ones the same way
+ * as {@link SlidingWindowLimiter} does. Failure is counted with single pipelined request which returns
+ * counters as well.
+ * <p>
+ * Counters read from Redis are reused for short time, so checks of the same source do not go to Redis each time.
+ * Login from source without local failures, which is the common case, does not wait for Redis: counters of such source
+ * are read in background and the source is checked against local counters meanwhile. Counters of sources with local
+ * failures are read right away.
+ * Failures are also counted by local limiter, which is used alone while Redis is not available
+ */
+public class RedisAttemptLimiter implements AttemptLimiter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RedisAttemptLimiter.class);
+
+    private static final String KEY_PREFIX = "rp:attempts:";
+
+    /*
+     * How long Redis is not requested after failure, milliseconds
+     */
+    private static final long RETRY_INTERVAL = TimeUnit.SECONDS.toMillis(5);
+
+    private static final int READ_QUEUE_CAPACITY = 1000;
+
+    private final String name;
+    private final SlidingWindowLimiter local;
+    private final RedisConnectionFactory connectionFactory;
+    private final long windowMillis;
+    private final Cache<String, Double> shared;
+    private final Set<String> pendingReads = ConcurrentHashMap.newKeySet();
+    private final ExecutorService reader;
+
+    private volatile long unavailableTill;
+
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong backgroundReads = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong blocked = new AtomicLong();
+
+    /**
+     * @param name              Name of limiter, shared by all instances
+     * @param local             Local limiter
+     * @param connectionFactory Redis connection factory
+     * @param capacity          Max count of sources whose counters read from Redis are reused
+     * @param cacheMillis       How long counters read from Redis are reused, milliseconds
+     */
+    public RedisAttemptLimiter(String name, SlidingWindowLimiter local, RedisConnectionFactory connectionFactory, int capacity,
+            long cacheMillis) {
+        this.name = name;
+        this.local = local;
+        this.connectionFactory = connectionFactory;
+        this.windowMillis = TimeUnit.NANOSECONDS.toMillis(local.getPolicy().getWindowNanos());
+        this.shared = CacheBuilder.newBuilder()
+                .maximumSize(capacity)
+                .expireAfterWrite(cacheMillis, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+        this.reader = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(READ_QUEUE_CAPACITY),
+                new ThreadFactoryBuilder().setNameFormat("attempts-reader-" + name).setDaemon(true).build());
+    }
+
+    @Override
+    public void recordFailure(String source) {
+        local.recordFailure(source);
+        if (!isAvailable()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long window = now / windowMillis;
+        byte[] current = key(source, window);
+        byte[] previous = key(source, window - 1);
+        try {
+            List<Object> results = execute(connection -> {
+                connection.openPipeline();
+                connection.incr(current);
+                connection.pExpire(current, 2 * windowMillis);
+                connection.get(previous);
+                return connection.closePipeline();
+            });
+            shared.put(source, estimate((Long) results.get(0), (byte[]) results.get(2), now, window));
+        } catch (Exception e) {
+            shared.invalidate(source);
+            onError(e);
+        }
+    }
+
+    @Override
+    public boolean isBlocked(String source) {
+        double localAttempts = local.getAttempts(source);
+        double attempts = Math.max(localAttempts, getSharedAttempts(source, localAttempts > 0));
+        if (attempts > local.getPolicy().getMaxAttempts()) {
+            blocked.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return Metrics of local limiter, count of blocked attempts, Redis reads and errors
+     * and hits of counters read from Redis
+     */
+    @Override
+    public Collection<Metric<?>> metrics(String prefix) {
+        return ImmutableList.<Metric<?>>builder().addAll(local.metrics(prefix + "local."))
+                .add(new Metric<>(prefix + "blocked", blocked.get()))
+                .add(new Metric<>(prefix + "shared.reads", reads.get()))
+                .add(new Metric<>(prefix + "shared.reads.background", backgroundReads.get()))
+                .add(new Metric<>(prefix + "shared.errors", errors.get()))
+                .add(new Metric<>(prefix + "shared.cache.hit", shared.stats().hitCount()))
+                .build();
+    }
+
+    private double getSharedAttempts(String source, boolean failedLocally) {
+        Double cached = shared.getIfPresent(source);
+        if (null != cached) {
+            return cached;
+        }
+        if (!isAvailable()) {
+            return 0;
+        }
+        if (failedLocally) {
+            return readSharedAttempts(source);
+        }
+        if (pendingReads.add(source)) {
+            try {
+                reader.execute(() -> {
+                    try {
+                        readSharedAttempts(source);
+                        backgroundReads.incrementAndGet();
+                    } finally {
+                        pendingReads.remove(source);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                pendingReads.remove(source);
+            }
+        }
+        return 0;
+    }
+
+    private double readSharedAttempts(String source) {
+        long now = System.currentTimeMillis();
+        long window = now / windowMillis;
+        try {
+            List<byte[]> counters = execute(connection -> connection.mGet(key(source, window), key(source, window - 1)));
+            reads.incrementAndGet();
+            double attempts = estimate(toLong(counters.get(0)), counters.get(1), now, window);
+            shared.put(source, attempts);
+            return attempts;
+        } catch (Exception e) {
+            onError(e);
+            return 0;
+        }
+    }
+
+    private double estimate(Long current, byte[] previous, long now, long window) {
+        double previousWeight = 1d - (double) (now - window * windowMillis) / windowMillis;
+        return (null == current ? 0 : current) + toLong(previous) * previousWeight;
+    }
+
+    private boolean isAvailable() {
+        return System.currentTimeMillis() >= unavailableTill;
+    }
+
+    private void onError(Exception e) {
+        errors.incrementAndGet();
+        if (isAvailable()) {
+            LOGGER.warn("Unable to share failed login attempts. Only failures of local instance are counted", e);
+        }
+        unavailableTill = System.currentTimeMillis() + RETRY_INTERVAL;
+    }
+
+    private byte[] key(String source, long window) {
+        return (KEY_PREFIX + name + ":" + source + ":" + window).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long toLong(byte[] value) {
+        return null == value ? 0 : Long.parseLong(new String(value, StandardCharsets.UTF_8));
+    }
+
+    private <T> T execute(Function<RedisConnection, T> callback) {
+        RedisConnection connection = connectionFactory.getConnection();
+        try {
+            return callback.apply(connection);
+        } finally {
+            connection.close();
+        }
+    }
+}
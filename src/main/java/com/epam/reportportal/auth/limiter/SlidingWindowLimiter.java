@@ -0,0 +1,220 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.limiter;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts failed attempts per source in sliding windows. Window is approximated by
+ * counters of current and previous fixed windows, where previous one is weighted by
+ * its part still covered by sliding window.
+ * <p>
+ * Sources are spread across striped maps, each guarded by its own lock and holding
+ * at most capacity / stripes sources, so memory does not grow with count of sources.
+ * Once stripe is full, expired sources are removed first. Otherwise the oldest source
+ * which is not blocked is evicted, so a flood of new sources cannot evict counters of
+ * blocked ones
+ */
+public class SlidingWindowLimiter implements AttemptLimiter {
+
+    private static final int DEFAULT_STRIPES = 64;
+
+    /*
+     * How many of the oldest sources are checked to find one which is not blocked
+     */
+    private static final int EVICTION_SCAN = 8;
+
+    private final AttemptPolicy policy;
+    private final Ticker ticker;
+    private final Stripe[] stripes;
+    private final int stripeCapacity;
+
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong blocked = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+
+    /**
+     * @param policy   Allowed attempts
+     * @param capacity Max count of tracked sources
+     */
+    public SlidingWindowLimiter(AttemptPolicy policy, int capacity) {
+        this(policy, capacity, DEFAULT_STRIPES, Ticker.systemTicker());
+    }
+
+    SlidingWindowLimiter(AttemptPolicy policy, int capacity, int stripes, Ticker ticker) {
+        Preconditions.checkArgument(Integer.bitCount(stripes) == 1, "Count of stripes should be power of two");
+        this.policy = policy;
+        this.ticker = ticker;
+        this.stripes = new Stripe[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new Stripe();
+        }
+        this.stripeCapacity = Math.max(1, capacity / stripes);
+    }
+
+    @Override
+    public void recordFailure(String source) {
+        long now = ticker.read();
+        Stripe stripe = stripe(source);
+        synchronized (stripe) {
+            Window window = stripe.windows.get(source);
+            if (null == window) {
+                if (stripe.windows.size() >= stripeCapacity) {
+                    evict(stripe, now);
+                }
+                window = new Window(now);
+                stripe.windows.put(source, window);
+            }
+            window.increment(now, policy.getWindowNanos());
+        }
+        failures.incrementAndGet();
+    }
+
+    @Override
+    public boolean isBlocked(String source) {
+        double attempts = getAttempts(source);
+        if (attempts > policy.getMaxAttempts()) {
+            blocked.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param source Source of attempt
+     * @return Estimated count of failed attempts within sliding window
+     */
+    public double getAttempts(String source) {
+        long now = ticker.read();
+        Stripe stripe = stripe(source);
+        synchronized (stripe) {
+            Window window = stripe.windows.get(source);
+            return null == window ? 0 : window.estimate(now, policy.getWindowNanos());
+        }
+    }
+
+    public AttemptPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @return Count of tracked sources
+     */
+    public long size() {
+        long size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.windows.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return Counts of tracked sources, failed and blocked attempts and evicted sources
+     */
+    @Override
+    public Collection<Metric<?>> metrics(String prefix) {
+        return Arrays.asList(new Metric<>(prefix + "sources", size()), new Metric<>(prefix + "failures", failures.get()),
+                new Metric<>(prefix + "blocked", blocked.get()), new Metric<>(prefix + "evicted", evicted.get()));
+    }
+
+    private void evict(Stripe stripe, long now) {
+        long windowNanos = policy.getWindowNanos();
+        Iterator<Window> oldest = stripe.windows.values().iterator();
+        while (oldest.hasNext()) {
+            if (oldest.next().estimate(now, windowNanos) > 0) {
+                break;
+            }
+            oldest.remove();
+        }
+        if (stripe.windows.size() < stripeCapacity) {
+            return;
+        }
+
+        Iterator<Window> candidates = stripe.windows.values().iterator();
+        for (int scanned = 0; candidates.hasNext() && scanned < EVICTION_SCAN; scanned++) {
+            if (candidates.next().estimate(now, windowNanos) <= policy.getMaxAttempts()) {
+                candidates.remove();
+                evicted.incrementAndGet();
+                return;
+            }
+        }
+        /* all scanned sources are blocked, the oldest one goes */
+        Iterator<Window> eldest = stripe.windows.values().iterator();
+        eldest.next();
+        eldest.remove();
+        evicted.incrementAndGet();
+    }
+
+    private Stripe stripe(String source) {
+        int hash = source.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+    }
+
+    private static final class Stripe {
+        /* insertion order, the oldest sources go first */
+        private final Map<String, Window> windows = new LinkedHashMap<>();
+    }
+
+    /**
+     * Counters of current and previous fixed windows
+     */
+    private static final class Window {
+        private long start;
+        private int current;
+        private int previous;
+
+        private Window(long now) {
+            this.start = now;
+        }
+
+        private void increment(long now, long size) {
+            roll(now, size);
+            current++;
+        }
+
+        private double estimate(long now, long size) {
+            roll(now, size);
+            double previousWeight = 1d - (double) (now - start) / size;
+            return current + previous * previousWeight;
+        }
+
+        private void roll(long now, long size) {
+            long elapsed = now - start;
+            if (elapsed >= size) {
+                long windows = elapsed / size;
+                previous = windows == 1 ? current : 0;
+                current = 0;
+                start += windows * size;
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.store;
+
+import com.epam.reportportal.auth.store.codec.TokenCodec;
+import com.epam.reportportal.auth.store.entity.OAuth2AccessTokenEntity;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes repaired authentications of access tokens back to the DB in background.
+ * Repairs are coalesced per token, so token used by concurrent requests is written once.
+ * Queue is bounded: repairs which do not fit are dropped, token will be repaired
+ * again next time it's read
+ */
+public class AuthenticationRepairWriter implements PublicMetrics, DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AuthenticationRepairWriter.class);
+
+    private static final String METRIC_PREFIX = "token.repair.";
+    private static final int BATCH_SIZE = 500;
+
+    private final MongoOperations mongoOperations;
+    private final TokenCodec tokenCodec;
+    private final int capacity;
+
+    private final ConcurrentMap<String, OAuth2Authentication> queue = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executor;
+
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * @param mongoOperations Mongo operations
+     * @param tokenCodec      Codec to encode repaired authentications
+     * @param capacity        Max count of pending repairs
+     * @param flushInterval   Interval between writes, milliseconds
+     */
+    public AuthenticationRepairWriter(MongoOperations mongoOperations, TokenCodec tokenCodec, int capacity, long flushInterval) {
+        this.mongoOperations = mongoOperations;
+        this.tokenCodec = tokenCodec;
+        this.capacity = capacity;
+        this.executor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("token-repair-writer").setDaemon(true).build());
+        this.executor.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues repaired authentication of token to be written
+     *
+     * @param tokenId        Token ID
+     * @param authentication Repaired authentication
+     */
+    public void repair(String tokenId, OAuth2Authentication authentication) {
+        if (queue.containsKey(tokenId)) {
+            coalesced.incrementAndGet();
+            return;
+        }
+        if (queue.size() >= capacity) {
+            dropped.incrementAndGet();
+            return;
+        }
+        if (null == queue.putIfAbsent(tokenId, authentication)) {
+            queued.incrementAndGet();
+        } else {
+            coalesced.incrementAndGet();
+        }
+    }
+
+    /**
+     * Writes all pending repairs
+     */
+    public void flush() {
+        Iterator<Map.Entry<String, OAuth2Authentication>> pending = queue.entrySet().iterator();
+        while (pending.hasNext()) {
+            BulkOperations operations = mongoOperations.bulkOps(BulkOperations.BulkMode.UNORDERED, OAuth2AccessTokenEntity.class);
+            int batch = 0;
+            while (pending.hasNext() && batch < BATCH_SIZE) {
+                Map.Entry<String, OAuth2Authentication> entry = pending.next();
+                operations.updateOne(Query.query(Criteria.where("_id").is(entry.getKey())),
+                        Update.update("authentication", tokenCodec.encodeAuthentication(entry.getValue())));
+                pending.remove();
+                batch++;
+            }
+            try {
+                operations.execute();
+                written.addAndGet(batch);
+            } catch (Exception e) {
+                failed.addAndGet(batch);
+                LOGGER.warn("Unable to write {} repaired token authentications", batch, e);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        return Arrays.asList(new Metric<>(METRIC_PREFIX + "queue.depth", queue.size()),
+                new Metric<>(METRIC_PREFIX + "queued", queued.get()),
+                new Metric<>(METRIC_PREFIX + "coalesced", coalesced.get()),
+                new Metric<>(METRIC_PREFIX + "dropped", dropped.get()),
+                new Metric<>(METRIC_PREFIX + "written", written.get()),
+                new Metric<>(METRIC_PREFIX + "failed", failed.get()));
+    }
+}
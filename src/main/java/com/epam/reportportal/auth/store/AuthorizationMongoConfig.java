@@ -20,7 +20,13 @@
  */
 package com.epam.reportportal.auth.store;
 
+import com.epam.reportportal.auth.store.codec.TokenCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
 import org.springframework.data.mongodb.repository.config.EnableMongoRepositories;
 
 /**
@@ -31,4 +37,32 @@ import org.springframework.data.mongodb.repository.config.EnableMongoRepositorie
         basePackageClasses = OAuth2AccessTokenRepository.class)
 public class AuthorizationMongoConfig {
 
+    @Bean
+    @ConditionalOnExpression("${rp.auth.token-sweeper.enabled:true} and '${rp.auth.token-store:mongo}' == 'mongo'")
+    public ExpiredTokensSweeper expiredTokensSweeper(MongoOperations mongoOperations, TokenCodec tokenCodec,
+            @Value("${rp.auth.token-sweeper.batch-size:500}") int batchSize, @Value("${rp.auth.token-sweeper.pause:100}") long pause) {
+        return new ExpiredTokensSweeper(mongoOperations, tokenCodec, batchSize, pause);
+    }
+
+    @Bean
+    @ConditionalOnExpression("'${rp.auth.token-store:mongo}' == 'mongo'")
+    public TokenIndexVerifier tokenIndexVerifier(MongoOperations mongoOperations, MongoMappingContext mappingContext,
+            @Value("${rp.auth.token-index.heal:true}") boolean heal) {
+        return new TokenIndexVerifier(mongoOperations, mappingContext, heal);
+    }
+
+    @Bean
+    @ConditionalOnExpression("'${rp.auth.token-store:mongo}' == 'mongo'")
+    public AuthenticationRepairWriter authenticationRepairWriter(MongoOperations mongoOperations, TokenCodec tokenCodec,
+            @Value("${rp.auth.token-repair.capacity:10000}") int capacity, @Value("${rp.auth.token-repair.interval:1000}") long interval) {
+        return new AuthenticationRepairWriter(mongoOperations, tokenCodec, capacity, interval);
+    }
+
+    @Bean
+    @ConditionalOnExpression("'${rp.auth.token-store:mongo}' == 'mongo'")
+    public StaleTokensMigration staleTokensMigration(MongoOperations mongoOperations, TokenCodec tokenCodec,
+            @Value("${rp.auth.token-repair.batch-size:500}") int batchSize,
+            @Value("${rp.auth.token-repair.parallelism:4}") int parallelism) {
+        return new StaleTokensMigration(mongoOperations, tokenCodec, batchSize, parallelism);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.store;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.DefaultAuthenticationKeyGenerator;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * {@link DefaultAuthenticationKeyGenerator} which memoizes computed keys.
+ * Key depends on user name, client ID and scope only, so these values are used as a cache key
+ */
+public class CachingAuthenticationKeyGenerator extends DefaultAuthenticationKeyGenerator {
+
+    private static final long DEFAULT_SIZE = 10000;
+
+    private final Cache<List<Object>, String> keys;
+
+    public CachingAuthenticationKeyGenerator() {
+        this(DEFAULT_SIZE);
+    }
+
+    public CachingAuthenticationKeyGenerator(long maximumSize) {
+        this.keys = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+    }
+
+    @Override
+    public String extractKey(OAuth2Authentication authentication) {
+        OAuth2Request request = authentication.getOAuth2Request();
+        List<Object> cacheKey = Arrays.asList(authentication.isClientOnly() ? null : authentication.getName(), request.getClientId(),
+                null == request.getScope() ? null : new TreeSet<>(request.getScope()));
+        try {
+            return keys.get(cacheKey, () -> super.extractKey(authentication));
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Unable to generate authentication key", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.store;
+
+import com.epam.reportportal.auth.store.codec.TokenCodec;
+import com.epam.reportportal.auth.store.entity.OAuth2AccessTokenEntity;
+import com.epam.reportportal.auth.store.entity.OAuth2RefreshTokenEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.oauth2.common.ExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Handles token documents stored before expiration field has been introduced.
+ * Such documents are not covered by TTL index, so sweeper removes expired ones and
+ * backfills expiration of the rest. Non-expiring tokens get explicit null expiration, so they are not processed again.
+ * Documents which cannot be decoded are skipped and counted, they are never removed.
+ * Documents are processed in small batches ordered by ID with a pause between batches to keep foreground queries fast
+ */
+public class ExpiredTokensSweeper implements PublicMetrics {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExpiredTokensSweeper.class);
+
+    private static final String METRIC_PREFIX = "token.sweeper.";
+    private static final String ID = "_id";
+    private static final String EXPIRES_AT = "expiresAt";
+
+    private final MongoOperations mongoOperations;
+    private final TokenCodec tokenCodec;
+    private final int batchSize;
+    private final long pause;
+
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong lastPurged = new AtomicLong();
+    private final AtomicLong lastBackfilled = new AtomicLong();
+    private final AtomicLong lastSkipped = new AtomicLong();
+    private final AtomicLong lastDuration = new AtomicLong();
+    private final AtomicLong purged = new AtomicLong();
+    private final AtomicLong backfilled = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+
+    /**
+     * @param mongoOperations Mongo operations
+     * @param tokenCodec      Codec to read expiration from stored tokens
+     * @param batchSize       Count of documents processed at once
+     * @param pause           Pause between batches, milliseconds
+     */
+    public ExpiredTokensSweeper(MongoOperations mongoOperations, TokenCodec tokenCodec, int batchSize, long pause) {
+        this.mongoOperations = mongoOperations;
+        this.tokenCodec = tokenCodec;
+        this.batchSize = batchSize;
+        this.pause = pause;
+    }
+
+    @Scheduled(fixedDelayString = "${rp.auth.token-sweeper.delay:300000}")
+    public void sweep() {
+        long started = System.currentTimeMillis();
+        Counts counts = new Counts();
+        try {
+            sweep(OAuth2AccessTokenEntity.class, "token", OAuth2AccessTokenEntity::getTokenId,
+                    entity -> tokenCodec.decodeAccessToken(entity.getToken()).getExpiration(), counts);
+            sweep(OAuth2RefreshTokenEntity.class, "oAuth2RefreshToken", OAuth2RefreshTokenEntity::getTokenId,
+                    entity -> expiration(tokenCodec.decodeRefreshToken(entity.getoAuth2RefreshToken())), counts);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            LOGGER.error("Unable to sweep expired tokens", e);
+        } finally {
+            runs.incrementAndGet();
+            lastPurged.set(counts.purged);
+            lastBackfilled.set(counts.backfilled);
+            lastSkipped.set(counts.skipped);
+            lastDuration.set(System.currentTimeMillis() - started);
+            purged.addAndGet(counts.purged);
+            backfilled.addAndGet(counts.backfilled);
+            skipped.addAndGet(counts.skipped);
+        }
+        if (counts.purged > 0 || counts.backfilled > 0) {
+            LOGGER.info("Token sweeper purged {} and backfilled {} documents in {} ms", counts.purged, counts.backfilled,
+                    lastDuration.get());
+        }
+        if (counts.skipped > 0) {
+            LOGGER.warn("Token sweeper skipped {} documents which cannot be read", counts.skipped);
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        return Arrays.asList(new Metric<>(METRIC_PREFIX + "runs", runs.get()),
+                new Metric<>(METRIC_PREFIX + "purged", lastPurged.get()),
+                new Metric<>(METRIC_PREFIX + "backfilled", lastBackfilled.get()),
+                new Metric<>(METRIC_PREFIX + "skipped", lastSkipped.get()),
+                new Metric<>(METRIC_PREFIX + "duration", lastDuration.get()),
+                new Metric<>(METRIC_PREFIX + "purged.total", purged.get()),
+                new Metric<>(METRIC_PREFIX + "backfilled.total", backfilled.get()),
+                new Metric<>(METRIC_PREFIX + "skipped.total", skipped.get()));
+    }
+
+    private <T> void sweep(Class<T> type, String tokenField, Function<T, String> id, Function<T, Date> expiration, Counts counts)
+            throws InterruptedException {
+        String lastId = null;
+        List<T> batch;
+        do {
+            Criteria criteria = Criteria.where(EXPIRES_AT).exists(false);
+            if (null != lastId) {
+                criteria = criteria.and(ID).gt(lastId);
+            }
+            Query query = Query.query(criteria).with(new Sort(Sort.Direction.ASC, ID)).limit(batchSize);
+            query.fields().include(tokenField);
+            batch = mongoOperations.find(query, type);
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            long now = System.currentTimeMillis();
+            BulkOperations operations = mongoOperations.bulkOps(BulkOperations.BulkMode.UNORDERED, type);
+            int skipped = 0;
+            for (T entity : batch) {
+                Query byId = Query.query(Criteria.where(ID).is(id.apply(entity)));
+                Date expiresAt;
+                try {
+                    expiresAt = expiration.apply(entity);
+                } catch (Exception e) {
+                    LOGGER.debug("Unable to read token '{}'. It is skipped", id.apply(entity), e);
+                    skipped++;
+                    continue;
+                }
+                if (null != expiresAt && expiresAt.getTime() <= now) {
+                    operations.remove(byId);
+                    counts.purged++;
+                } else {
+                    // null marks non-expiring tokens as processed
+                    operations.updateOne(byId, Update.update(EXPIRES_AT, expiresAt));
+                    counts.backfilled++;
+                }
+            }
+            counts.skipped += skipped;
+            if (batch.size() > skipped) {
+                operations.execute();
+            }
+            lastId = id.apply(batch.get(batch.size() - 1));
+
+            if (pause > 0) {
+                TimeUnit.MILLISECONDS.sleep(pause);
+            }
+        } while (batch.size() == batchSize);
+    }
+
+    private static Date expiration(OAuth2RefreshToken refreshToken) {
+        return refreshToken instanceof ExpiringOAuth2RefreshToken ? ((ExpiringOAuth2RefreshToken) refreshToken).getExpiration() : null;
+    }
+
+    private static class Counts {
+        private long purged;
+        private long backfilled;
+        private long skipped;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.store;
+
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+
+/**
+ * {@link TokenStore} able to issue token in one step: look up existing token
+ * of the same authentication and store new one only if there is no valid existing token
+ */
+public interface IssuingTokenStore extends TokenStore {
+
+    /**
+     * Stores candidate access token together with its refresh token
+     * unless there is valid access token for the same authentication already
+     *
+     * @param candidate      New access token
+     * @param authentication Authentication
+     * @return Existing valid access token or stored candidate
+     */
+    OAuth2AccessToken issueAccessToken(OAuth2AccessToken candidate, OAuth2Authentication authentication);
+
+    /**
+     * Removes access token of the same authentication together with its refresh token and stores candidate
+     * instead, so there is at most one token for the authentication at any moment
+     *
+     * @param candidate      New access token
+     * @param authentication Authentication
+     * @return Stored candidate or token stored by concurrent replacement
+     */
+    OAuth2AccessToken replaceAccessToken(OAuth2AccessToken candidate, OAuth2Authentication authentication);
+
+    /**
+     * Reads refresh token and its authentication in one lookup
+     *
+     * @param refreshTokenValue Refresh token value
+     * @return Refresh token with authentication or null if there is no such token
+     */
+    RefreshTokenAuthentication readRefreshTokenAuthentication(String refreshTokenValue);
+
+    /**
+     * Removes access token issued with the refresh token and stores candidate instead.
+     * Refresh token of candidate is stored if it's not the used one
+     *
+     * @param candidate      New access token
+     * @param refreshToken   Used refresh token
+     * @param authentication Refreshed authentication
+     * @return Stored candidate or existing valid token of the same authentication
+     */
+    OAuth2AccessToken refreshAccessToken(OAuth2AccessToken candidate, OAuth2RefreshToken refreshToken, OAuth2Authentication authentication);
+}
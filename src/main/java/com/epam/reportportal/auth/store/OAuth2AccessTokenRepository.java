@@ -22,8 +22,10 @@ package com.epam.reportportal.auth.store;
 
 import com.epam.reportportal.auth.store.entity.OAuth2AccessTokenEntity;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.stream.Stream;
 
@@ -45,4 +47,37 @@ public interface OAuth2AccessTokenRepository extends MongoRepository<OAuth2Acces
 
     Stream<OAuth2AccessTokenEntity> findByClientId(String clientId);
 
+    /*
+     * Projections below load only fields required by particular operation
+     * and skip the rest of document, the authentication blob first of all
+     */
+
+    @Query(value = "{ '_id' : ?0 }", fields = "{ 'token' : 1 }")
+    OAuth2AccessTokenEntity findTokenByTokenId(String tokenId);
+
+    @Query(value = "{ '_id' : ?0 }", fields = "{ 'authentication' : 1 }")
+    OAuth2AccessTokenEntity findAuthenticationByTokenId(String tokenId);
+
+    @Query(value = "{ 'authenticationId' : ?0 }", fields = "{ 'token' : 1 }")
+    OAuth2AccessTokenEntity findTokenByAuthenticationId(String authenticationId);
+
+    @Query(value = "{ 'clientId' : ?0 }", fields = "{ 'token' : 1 }")
+    Stream<OAuth2AccessTokenEntity> findTokensByClientId(String clientId);
+
+    @Query(value = "{ 'clientId' : ?0, 'userName' : ?1 }", fields = "{ 'token' : 1 }")
+    Stream<OAuth2AccessTokenEntity> findTokensByClientIdAndUserName(String clientId, String userName);
+
+    /**
+     * Finds tokens of user issued for any of provided clients.
+     * Only token ID and refresh token value are loaded
+     *
+     * @param userName  User name
+     * @param clientIds Client IDs
+     * @return Tokens with token ID and refresh token value
+     */
+    @Query(value = "{ 'userName' : ?0, 'clientId' : { $in : ?1 } }", fields = "{ 'refreshToken' : 1 }")
+    List<OAuth2AccessTokenEntity> findTokenKeysByUserName(String userName, Collection<String> clientIds);
+
+    Long deleteByTokenIdIn(Collection<String> tokenIds);
+
 }
\ No newline at end of file
@@ -20,27 +20,41 @@
  */
 package com.epam.reportportal.auth.store;
 
+import com.epam.reportportal.auth.store.codec.TokenCodec;
 import com.epam.reportportal.auth.store.entity.OAuth2AccessTokenEntity;
 import com.epam.reportportal.auth.store.entity.OAuth2RefreshTokenEntity;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.security.oauth2.common.ExpiringOAuth2RefreshToken;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.security.oauth2.common.OAuth2RefreshToken;
-import org.springframework.security.oauth2.common.util.SerializationUtils;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.security.oauth2.provider.token.AuthenticationKeyGenerator;
-import org.springframework.security.oauth2.provider.token.DefaultAuthenticationKeyGenerator;
-import org.springframework.security.oauth2.provider.token.TokenStore;
-
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
-import static com.epam.reportportal.auth.AuthUtils.deserializeSafely;
-
 /**
  * @author Andrei Varabyeu
  */
-public class OAuth2MongoTokenStore implements TokenStore {
+public class OAuth2MongoTokenStore implements RevocableTokenStore, IssuingTokenStore {
+
+    /*
+     * Concurrent issuance for the same authentication fails on unique index, retried to return the winner
+     */
+    private static final int ISSUE_ATTEMPTS = 3;
+
+    private static final String EXPIRES_AT = "expiresAt";
 
     @Autowired
     private OAuth2AccessTokenRepository oAuth2AccessTokenRepository;
@@ -48,7 +62,19 @@ public class OAuth2MongoTokenStore implements TokenStore {
     @Autowired
     private OAuth2RefreshTokenRepository oAuth2RefreshTokenRepository;
 
-    private AuthenticationKeyGenerator authenticationKeyGenerator = new DefaultAuthenticationKeyGenerator();
+    @Autowired
+    private OAuth2TokenCache tokenCache;
+
+    @Autowired
+    private TokenCodec tokenCodec;
+
+    @Autowired
+    private AuthenticationRepairWriter repairWriter;
+
+    @Autowired
+    private MongoOperations mongoOperations;
+
+    private AuthenticationKeyGenerator authenticationKeyGenerator = new CachingAuthenticationKeyGenerator();
 
     @Override
     public OAuth2Authentication readAuthentication(OAuth2AccessToken token) {
@@ -57,69 +83,221 @@ public class OAuth2MongoTokenStore implements TokenStore {
 
     @Override
     public OAuth2Authentication readAuthentication(String tokenId) {
-        final OAuth2AccessTokenEntity entity = oAuth2AccessTokenRepository.findByTokenId(tokenId);
-        return deserializeSafely(entity.getAuthentication(),
-                auth -> {
+        return tokenCache.getAuthentication(tokenId, id -> {
+            final OAuth2AccessTokenEntity entity = oAuth2AccessTokenRepository.findAuthenticationByTokenId(id);
+            if (entity == null) {
+                return null;
+            }
+            return tokenCodec.decodeAuthentication(entity.getAuthentication(),
                     // if we are at the place, there was InvalidClassException,
                     // and we successfully recovered auth object
-                    // let's save it back to DB then, since now it has correct version UUID
-                    entity.setAuthentication(SerializationUtils.serialize(auth));
-                    oAuth2AccessTokenRepository.save(entity);
-                });
+                    // let's save it back to DB then, since now it has correct version UUID.
+                    // it's written in background to keep read path fast
+                    auth -> repairWriter.repair(id, auth));
+        });
     }
 
     @Override
     public void storeAccessToken(OAuth2AccessToken token, OAuth2Authentication authentication) {
         OAuth2AccessTokenEntity tokenEntity = new OAuth2AccessTokenEntity();
         tokenEntity.setTokenId(token.getValue());
-        tokenEntity.setToken(SerializationUtils.serialize(token));
-        tokenEntity.setAuthentication(SerializationUtils.serialize(authentication));
+        tokenEntity.setToken(tokenCodec.encodeAccessToken(token));
+        tokenEntity.setAuthentication(tokenCodec.encodeAuthentication(authentication));
         tokenEntity.setAuthenticationId(authenticationKeyGenerator.extractKey(authentication));
         tokenEntity.setUserName(authentication.isClientOnly() ? null : authentication.getName());
         tokenEntity.setRefreshToken(null == token.getRefreshToken() ? null : token.getRefreshToken().getValue());
         tokenEntity.setClientId(authentication.getOAuth2Request().getClientId());
+        tokenEntity.setExpiresAt(token.getExpiration());
 
-        oAuth2AccessTokenRepository.save(tokenEntity);
+        save(tokenEntity);
+        tokenCache.evict(token.getValue());
+        tokenCache.evictAuthenticationKey(tokenEntity.getAuthenticationId());
     }
 
+    /**
+     * Finds token of the same authentication and inserts candidate if there is none in one findAndModify.
+     * Authentication of existing token is updated in the same operation. Expired existing token is removed and
+     * issuance is repeated. Refresh token is stored separately once candidate is inserted
+     */
     @Override
-    public OAuth2AccessToken readAccessToken(String tokenValue) {
-        OAuth2AccessTokenEntity token = oAuth2AccessTokenRepository.findByTokenId(tokenValue);
-        if (token == null) {
-            return null; //let spring security handle the invalid token
+    public OAuth2AccessToken issueAccessToken(OAuth2AccessToken candidate, OAuth2Authentication authentication) {
+        return issueAccessToken(candidate, candidate.getRefreshToken(), authentication);
+    }
+
+    /**
+     * Reads whole refresh token document, which consists of token and authentication only
+     */
+    @Override
+    public RefreshTokenAuthentication readRefreshTokenAuthentication(String refreshTokenValue) {
+        OAuth2RefreshTokenEntity entity = oAuth2RefreshTokenRepository.findByTokenId(refreshTokenValue);
+        if (null == entity) {
+            return null;
         }
-        return SerializationUtils.deserialize(token.getToken());
+        return new RefreshTokenAuthentication(tokenCodec.decodeRefreshToken(entity.getoAuth2RefreshToken()),
+                tokenCodec.decodeAuthentication(entity.getAuthentication(), null));
     }
 
+    /**
+     * Removes access token of the refresh token with findAndRemove and issues candidate with conditional upsert.
+     * Reused refresh token is not written again
+     */
     @Override
-    public void removeAccessToken(OAuth2AccessToken token) {
-        OAuth2AccessTokenEntity accessToken = oAuth2AccessTokenRepository.findByTokenId(token.getValue());
-        if (accessToken != null) {
-            oAuth2AccessTokenRepository.delete(accessToken);
+    public OAuth2AccessToken refreshAccessToken(OAuth2AccessToken candidate, OAuth2RefreshToken refreshToken,
+            OAuth2Authentication authentication) {
+        OAuth2AccessTokenEntity removed = removeAccessTokenByRefreshToken(refreshToken.getValue());
+        if (null != removed) {
+            tokenCache.evict(removed.getTokenId());
+        }
+        OAuth2RefreshToken newRefreshToken = candidate.getRefreshToken();
+        boolean reused = null != newRefreshToken && newRefreshToken.getValue().equals(refreshToken.getValue());
+        return issueAccessToken(candidate, reused ? null : newRefreshToken, authentication);
+    }
+
+    private OAuth2AccessTokenEntity removeAccessTokenByRefreshToken(String refreshToken) {
+        Query query = Query.query(Criteria.where("refreshToken").is(refreshToken));
+        query.fields().include("_id");
+        return mongoOperations.findAndRemove(query, OAuth2AccessTokenEntity.class);
+    }
+
+    private OAuth2AccessToken issueAccessToken(OAuth2AccessToken candidate, OAuth2RefreshToken newRefreshToken,
+            OAuth2Authentication authentication) {
+        String authenticationId = authenticationKeyGenerator.extractKey(authentication);
+        OAuth2RefreshToken refreshToken = candidate.getRefreshToken();
+
+        Query query = Query.query(Criteria.where("authenticationId").is(authenticationId));
+        query.fields().include("token").include("refreshToken");
+        Update update = Update.update("authentication", tokenCodec.encodeAuthentication(authentication))
+                .setOnInsert("_id", candidate.getValue())
+                .setOnInsert("token", tokenCodec.encodeAccessToken(candidate))
+                .setOnInsert("userName", authentication.isClientOnly() ? null : authentication.getName())
+                .setOnInsert("clientId", authentication.getOAuth2Request().getClientId())
+                .setOnInsert("refreshToken", null == refreshToken ? null : refreshToken.getValue())
+                .setOnInsert(EXPIRES_AT, candidate.getExpiration());
+
+        for (int attempt = 0; attempt < ISSUE_ATTEMPTS; attempt++) {
+            OAuth2AccessTokenEntity stored;
+            try {
+                stored = mongoOperations.findAndModify(query, update, FindAndModifyOptions.options().upsert(true).returnNew(true),
+                        OAuth2AccessTokenEntity.class);
+            } catch (DuplicateKeyException e) {
+                continue;
+            }
+            tokenCache.evict(stored.getTokenId());
+            if (candidate.getValue().equals(stored.getTokenId())) {
+                tokenCache.evictAuthenticationKey(authenticationId);
+                if (null != newRefreshToken) {
+                    storeRefreshToken(newRefreshToken, authentication);
+                }
+                return candidate;
+            }
+
+            OAuth2AccessToken existing = tokenCodec.decodeAccessToken(stored.getToken());
+            if (!existing.isExpired()) {
+                return existing;
+            }
+            oAuth2AccessTokenRepository.delete(stored.getTokenId());
+            if (null != stored.getRefreshToken()) {
+                oAuth2RefreshTokenRepository.delete(stored.getRefreshToken());
+            }
+            tokenCache.evict(stored.getTokenId());
+        }
+        throw new IllegalStateException("Unable to issue access token for authentication " + authenticationId);
+    }
+
+    /**
+     * Removes token of the same authentication with findAndRemove on unique authentication key together with
+     * the rest of user's tokens of the client and issues candidate right after. Token ID cannot be changed in place,
+     * so removal and issuance are separate operations: concurrent replacement may remove the token issued here.
+     * Issued token is checked after that, and the token of concurrent replacement is returned if it's removed
+     */
+    @Override
+    public OAuth2AccessToken replaceAccessToken(OAuth2AccessToken candidate, OAuth2Authentication authentication) {
+        String authenticationId = authenticationKeyGenerator.extractKey(authentication);
+        Query query = Query.query(Criteria.where("authenticationId").is(authenticationId));
+        query.fields().include("refreshToken");
+
+        OAuth2AccessTokenEntity replaced = mongoOperations.findAndRemove(query, OAuth2AccessTokenEntity.class);
+        if (null != replaced) {
+            tokenCache.evict(replaced.getTokenId());
+            if (null != replaced.getRefreshToken()) {
+                oAuth2RefreshTokenRepository.delete(replaced.getRefreshToken());
+            }
+        }
+        if (!authentication.isClientOnly()) {
+            // tokens of the user issued with other authentication keys
+            removeUserTokens(authentication.getName(), Collections.singleton(authentication.getOAuth2Request().getClientId()));
+        }
+        tokenCache.evictAuthenticationKey(authenticationId);
+
+        for (int attempt = 0; attempt < ISSUE_ATTEMPTS; attempt++) {
+            OAuth2AccessToken issued = issueAccessToken(candidate, authentication);
+            if (oAuth2AccessTokenRepository.exists(issued.getValue())) {
+                return issued;
+            }
+            /* removed by concurrent replacement, which has issued its own token */
+            OAuth2AccessTokenEntity current = oAuth2AccessTokenRepository.findTokenByAuthenticationId(authenticationId);
+            if (null != current) {
+                return tokenCodec.decodeAccessToken(current.getToken());
+            }
         }
+        throw new IllegalStateException("Unable to replace access token of authentication " + authenticationId);
+    }
+
+    @Override
+    public OAuth2AccessToken readAccessToken(String tokenValue) {
+        return tokenCache.getAccessToken(tokenValue, id -> {
+            OAuth2AccessTokenEntity token = oAuth2AccessTokenRepository.findTokenByTokenId(id);
+            if (token == null) {
+                return null; //let spring security handle the invalid token
+            }
+            return tokenCodec.decodeAccessToken(token.getToken());
+        });
+    }
+
+    @Override
+    public void removeAccessToken(OAuth2AccessToken token) {
+        oAuth2AccessTokenRepository.delete(token.getValue());
+        // evict after removal, so concurrent reads cannot put removed token back to the cache
+        tokenCache.evict(token.getValue());
     }
 
     @Override
     public void storeRefreshToken(OAuth2RefreshToken refreshToken, OAuth2Authentication authentication) {
         OAuth2RefreshTokenEntity refreshEntity = new OAuth2RefreshTokenEntity();
-        refreshEntity.setAuthentication(SerializationUtils.serialize(authentication));
+        refreshEntity.setAuthentication(tokenCodec.encodeAuthentication(authentication));
         refreshEntity.setTokenId(refreshToken.getValue());
-        refreshEntity.setoAuth2RefreshToken(SerializationUtils.serialize(refreshToken));
-        oAuth2RefreshTokenRepository.save(refreshEntity);
+        refreshEntity.setoAuth2RefreshToken(tokenCodec.encodeRefreshToken(refreshToken));
+        if (refreshToken instanceof ExpiringOAuth2RefreshToken) {
+            refreshEntity.setExpiresAt(((ExpiringOAuth2RefreshToken) refreshToken).getExpiration());
+        }
+        save(refreshEntity);
+    }
+
+    /*
+     * Mapping skips null properties, so expiration of non-expiring token is written explicitly.
+     * Otherwise the token looks like one stored before expiration was introduced, see ExpiredTokensSweeper
+     */
+    private void save(Object entity) {
+        DBObject document = new BasicDBObject();
+        mongoOperations.getConverter().write(entity, document);
+        if (!document.containsField(EXPIRES_AT)) {
+            document.put(EXPIRES_AT, null);
+        }
+        mongoOperations.save(document, mongoOperations.getCollectionName(entity.getClass()));
     }
 
     @Override
     public OAuth2RefreshToken readRefreshToken(String tokenValue) {
-        return Optional.ofNullable(oAuth2RefreshTokenRepository.findByTokenId(tokenValue)).map(
+        return Optional.ofNullable(oAuth2RefreshTokenRepository.findTokenByTokenId(tokenValue)).map(
                 OAuth2RefreshTokenEntity::getoAuth2RefreshToken)
-                .map(SerializationUtils::<OAuth2RefreshToken>deserialize).orElse(null);
+                .map(tokenCodec::decodeRefreshToken).orElse(null);
     }
 
     @Override
     public OAuth2Authentication readAuthenticationForRefreshToken(OAuth2RefreshToken token) {
-        return Optional.ofNullable(oAuth2RefreshTokenRepository.findByTokenId(token.getValue()))
-                .map(OAuth2RefreshTokenEntity::getoAuth2RefreshToken)
-                .map(SerializationUtils::<OAuth2Authentication>deserialize).orElse(null);
+        return Optional.ofNullable(oAuth2RefreshTokenRepository.findAuthenticationByTokenId(token.getValue()))
+                .map(OAuth2RefreshTokenEntity::getAuthentication)
+                .map(authentication -> tokenCodec.decodeAuthentication(authentication, null)).orElse(null);
     }
 
     @Override
@@ -131,20 +309,44 @@ public class OAuth2MongoTokenStore implements TokenStore {
 
     @Override
     public void removeAccessTokenUsingRefreshToken(OAuth2RefreshToken refreshToken) {
-        oAuth2AccessTokenRepository.delete(oAuth2AccessTokenRepository.findByRefreshToken(refreshToken.getValue()));
+        OAuth2AccessTokenEntity accessToken = removeAccessTokenByRefreshToken(refreshToken.getValue());
+        if (accessToken != null) {
+            tokenCache.evict(accessToken.getTokenId());
+        }
     }
 
     @Override
     public OAuth2AccessToken getAccessToken(OAuth2Authentication authentication) {
-        OAuth2AccessTokenEntity token = oAuth2AccessTokenRepository
-                .findByAuthenticationId(authenticationKeyGenerator.extractKey(authentication));
-        return token == null ? null : SerializationUtils.deserialize(token.getToken());
+        String authenticationId = authenticationKeyGenerator.extractKey(authentication);
+        OAuth2AccessToken token = getAccessToken(authenticationId);
+        if (null == token) {
+            /* cached token ID might belong to a token removed since then */
+            tokenCache.evictAuthenticationKey(authenticationId);
+            token = getAccessToken(authenticationId);
+        }
+        return token;
+    }
+
+    /**
+     * Resolves token ID by authentication key over unique index and reads token through the cache.
+     * Token loaded together with its ID is put to the cache right away
+     */
+    private OAuth2AccessToken getAccessToken(String authenticationId) {
+        String tokenId = tokenCache.getTokenId(authenticationId, key -> {
+            OAuth2AccessTokenEntity token = oAuth2AccessTokenRepository.findTokenByAuthenticationId(key);
+            if (null == token) {
+                return null;
+            }
+            tokenCache.getAccessToken(token.getTokenId(), id -> tokenCodec.decodeAccessToken(token.getToken()));
+            return token.getTokenId();
+        });
+        return null == tokenId ? null : readAccessToken(tokenId);
     }
 
     @Override
     public Collection<OAuth2AccessToken> findTokensByClientId(String clientId) {
         return oAuth2AccessTokenRepository
-                .findByClientId(clientId)
+                .findTokensByClientId(clientId)
                 .map(this::extractAccessToken)
                 .collect(Collectors.toList());
     }
@@ -152,11 +354,32 @@ public class OAuth2MongoTokenStore implements TokenStore {
     @Override
     public Collection<OAuth2AccessToken> findTokensByClientIdAndUserName(String clientId, String userName) {
         return oAuth2AccessTokenRepository
-                .findByClientIdAndUserName(clientId, userName)
+                .findTokensByClientIdAndUserName(clientId, userName)
                 .map(this::extractAccessToken).collect(Collectors.toList());
     }
 
+    @Override
+    public int removeUserTokens(String userName, Collection<String> clientIds) {
+        List<OAuth2AccessTokenEntity> tokens = oAuth2AccessTokenRepository.findTokenKeysByUserName(userName, clientIds);
+        if (tokens.isEmpty()) {
+            return 0;
+        }
+        List<String> tokenIds = tokens.stream().map(OAuth2AccessTokenEntity::getTokenId).collect(Collectors.toList());
+        List<String> refreshTokens = tokens.stream()
+                .map(OAuth2AccessTokenEntity::getRefreshToken)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+
+        Long removed = oAuth2AccessTokenRepository.deleteByTokenIdIn(tokenIds);
+        if (!refreshTokens.isEmpty()) {
+            oAuth2RefreshTokenRepository.deleteByTokenIdIn(refreshTokens);
+        }
+        // evict after removal, so concurrent reads cannot put removed tokens back to the cache
+        tokenCache.evict(tokenIds);
+        return null == removed ? 0 : removed.intValue();
+    }
+
     private OAuth2AccessToken extractAccessToken(OAuth2AccessTokenEntity token) {
-        return (OAuth2AccessToken) SerializationUtils.deserialize(token.getToken());
+        return tokenCodec.decodeAccessToken(token.getToken());
     }
 }
@@ -0,0 +1,406 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.store;
+
+import com.epam.reportportal.auth.store.codec.TokenCodec;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.security.oauth2.common.ExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.AuthenticationKeyGenerator;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Redis-based {@link TokenStore}. Token keys expire natively together with tokens.
+ * Client and user lookups are served by secondary sets of token values. Sets expire together with
+ * the latest token added, sets containing non-expiring tokens are persistent. Set members of
+ * expired tokens are removed lazily once they are found missing during lookup
+ */
+public class OAuth2RedisTokenStore implements RevocableTokenStore {
+
+    private static final String PREFIX = "rp:oauth:";
+
+    private static final String ACCESS = "access:";
+    private static final String AUTH = "auth:";
+    private static final String AUTH_TO_ACCESS = "auth_to_access:";
+    private static final String ACCESS_TO_REFRESH = "access_to_refresh:";
+    private static final String REFRESH = "refresh:";
+    private static final String REFRESH_AUTH = "refresh_auth:";
+    private static final String REFRESH_TO_ACCESS = "refresh_to_access:";
+    private static final String CLIENT_ID_TO_ACCESS = "client_id_to_access:";
+    private static final String UNAME_TO_ACCESS = "uname_to_access:";
+
+    private final RedisConnectionFactory connectionFactory;
+    private final TokenCodec tokenCodec;
+
+    private AuthenticationKeyGenerator authenticationKeyGenerator = new CachingAuthenticationKeyGenerator();
+
+    public OAuth2RedisTokenStore(RedisConnectionFactory connectionFactory, TokenCodec tokenCodec) {
+        this.connectionFactory = connectionFactory;
+        this.tokenCodec = tokenCodec;
+    }
+
+    public void setAuthenticationKeyGenerator(AuthenticationKeyGenerator authenticationKeyGenerator) {
+        this.authenticationKeyGenerator = authenticationKeyGenerator;
+    }
+
+    @Override
+    public OAuth2Authentication readAuthentication(OAuth2AccessToken token) {
+        return readAuthentication(token.getValue());
+    }
+
+    @Override
+    public OAuth2Authentication readAuthentication(String tokenId) {
+        byte[] auth = execute(connection -> connection.get(key(AUTH, tokenId)));
+        return null == auth ? null : tokenCodec.decodeAuthentication(auth, null);
+    }
+
+    @Override
+    public void storeAccessToken(OAuth2AccessToken token, OAuth2Authentication authentication) {
+        byte[] tokenValue = bytes(token.getValue());
+        byte[] serializedToken = tokenCodec.encodeAccessToken(token);
+        byte[] accessKey = key(ACCESS, token.getValue());
+        byte[] authKey = key(AUTH, token.getValue());
+        byte[] authToAccessKey = key(AUTH_TO_ACCESS, authenticationKeyGenerator.extractKey(authentication));
+        byte[] clientKey = key(CLIENT_ID_TO_ACCESS, authentication.getOAuth2Request().getClientId());
+        byte[] userKey = authentication.isClientOnly() ?
+                null :
+                userKey(authentication.getOAuth2Request().getClientId(), authentication.getName());
+
+        execute(connection -> {
+            connection.openPipeline();
+            connection.set(accessKey, serializedToken);
+            connection.set(authKey, tokenCodec.encodeAuthentication(authentication));
+            connection.set(authToAccessKey, serializedToken);
+            if (null != userKey) {
+                connection.sAdd(userKey, tokenValue);
+            }
+            connection.sAdd(clientKey, tokenValue);
+
+            if (null != token.getExpiration()) {
+                long seconds = secondsTill(token.getExpiration());
+                connection.expire(accessKey, seconds);
+                connection.expire(authKey, seconds);
+                connection.expire(authToAccessKey, seconds);
+                // tokens of the same client share validity, so the latest token expires last
+                connection.expire(clientKey, seconds);
+                if (null != userKey) {
+                    connection.expire(userKey, seconds);
+                }
+            } else {
+                connection.persist(clientKey);
+                if (null != userKey) {
+                    connection.persist(userKey);
+                }
+            }
+
+            OAuth2RefreshToken refreshToken = token.getRefreshToken();
+            if (null != refreshToken && null != refreshToken.getValue()) {
+                byte[] refreshToAccessKey = key(REFRESH_TO_ACCESS, refreshToken.getValue());
+                byte[] accessToRefreshKey = key(ACCESS_TO_REFRESH, token.getValue());
+                connection.set(refreshToAccessKey, tokenValue);
+                connection.set(accessToRefreshKey, bytes(refreshToken.getValue()));
+                if (refreshToken instanceof ExpiringOAuth2RefreshToken) {
+                    Date expiration = ((ExpiringOAuth2RefreshToken) refreshToken).getExpiration();
+                    if (null != expiration) {
+                        long seconds = secondsTill(expiration);
+                        connection.expire(refreshToAccessKey, seconds);
+                        connection.expire(accessToRefreshKey, seconds);
+                    }
+                }
+            }
+            connection.closePipeline();
+            return null;
+        });
+    }
+
+    @Override
+    public OAuth2AccessToken readAccessToken(String tokenValue) {
+        byte[] token = execute(connection -> connection.get(key(ACCESS, tokenValue)));
+        return null == token ? null : tokenCodec.decodeAccessToken(token);
+    }
+
+    @Override
+    public void removeAccessToken(OAuth2AccessToken token) {
+        removeAccessToken(token.getValue());
+    }
+
+    private void removeAccessToken(String tokenValue) {
+        byte[] accessKey = key(ACCESS, tokenValue);
+        byte[] authKey = key(AUTH, tokenValue);
+        byte[] accessToRefreshKey = key(ACCESS_TO_REFRESH, tokenValue);
+
+        byte[] auth = execute(connection -> {
+            connection.openPipeline();
+            connection.get(authKey);
+            connection.del(accessKey, authKey, accessToRefreshKey);
+            return (byte[]) connection.closePipeline().get(0);
+        });
+
+        if (null != auth) {
+            OAuth2Authentication authentication = tokenCodec.decodeAuthentication(auth, null);
+            String clientId = authentication.getOAuth2Request().getClientId();
+            execute(connection -> {
+                connection.openPipeline();
+                connection.del(key(AUTH_TO_ACCESS, authenticationKeyGenerator.extractKey(authentication)));
+                if (!authentication.isClientOnly()) {
+                    connection.sRem(userKey(clientId, authentication.getName()), bytes(tokenValue));
+                }
+                connection.sRem(key(CLIENT_ID_TO_ACCESS, clientId), bytes(tokenValue));
+                connection.closePipeline();
+                return null;
+            });
+        }
+    }
+
+    @Override
+    public void storeRefreshToken(OAuth2RefreshToken refreshToken, OAuth2Authentication authentication) {
+        byte[] refreshKey = key(REFRESH, refreshToken.getValue());
+        byte[] refreshAuthKey = key(REFRESH_AUTH, refreshToken.getValue());
+        execute(connection -> {
+            connection.openPipeline();
+            connection.set(refreshKey, tokenCodec.encodeRefreshToken(refreshToken));
+            connection.set(refreshAuthKey, tokenCodec.encodeAuthentication(authentication));
+            if (refreshToken instanceof ExpiringOAuth2RefreshToken) {
+                Date expiration = ((ExpiringOAuth2RefreshToken) refreshToken).getExpiration();
+                if (null != expiration) {
+                    long seconds = secondsTill(expiration);
+                    connection.expire(refreshKey, seconds);
+                    connection.expire(refreshAuthKey, seconds);
+                }
+            }
+            connection.closePipeline();
+            return null;
+        });
+    }
+
+    @Override
+    public OAuth2RefreshToken readRefreshToken(String tokenValue) {
+        byte[] token = execute(connection -> connection.get(key(REFRESH, tokenValue)));
+        return null == token ? null : tokenCodec.decodeRefreshToken(token);
+    }
+
+    @Override
+    public OAuth2Authentication readAuthenticationForRefreshToken(OAuth2RefreshToken token) {
+        byte[] auth = execute(connection -> connection.get(key(REFRESH_AUTH, token.getValue())));
+        return null == auth ? null : tokenCodec.decodeAuthentication(auth, null);
+    }
+
+    @Override
+    public void removeRefreshToken(OAuth2RefreshToken token) {
+        if (null != token && null != token.getValue()) {
+            execute(connection -> connection.del(key(REFRESH, token.getValue()), key(REFRESH_AUTH, token.getValue()),
+                    key(REFRESH_TO_ACCESS, token.getValue())));
+        }
+    }
+
+    @Override
+    public void removeAccessTokenUsingRefreshToken(OAuth2RefreshToken refreshToken) {
+        byte[] refreshToAccessKey = key(REFRESH_TO_ACCESS, refreshToken.getValue());
+        byte[] accessToken = execute(connection -> {
+            connection.openPipeline();
+            connection.get(refreshToAccessKey);
+            connection.del(refreshToAccessKey);
+            return (byte[]) connection.closePipeline().get(0);
+        });
+        if (null != accessToken) {
+            removeAccessToken(new String(accessToken, StandardCharsets.UTF_8));
+        }
+    }
+
+    @Override
+    public OAuth2AccessToken getAccessToken(OAuth2Authentication authentication) {
+        byte[] token = execute(connection -> connection.get(key(AUTH_TO_ACCESS, authenticationKeyGenerator.extractKey(authentication))));
+        return null == token ? null : tokenCodec.decodeAccessToken(token);
+    }
+
+    @Override
+    public Collection<OAuth2AccessToken> findTokensByClientId(String clientId) {
+        return findTokens(key(CLIENT_ID_TO_ACCESS, clientId));
+    }
+
+    @Override
+    public Collection<OAuth2AccessToken> findTokensByClientIdAndUserName(String clientId, String userName) {
+        return findTokens(userKey(clientId, userName));
+    }
+
+    /**
+     * Removes tokens of user in three pipelined round trips: lookup sets are read first,
+     * then authentications and refresh token references, and finally everything is removed at once.
+     * Only read members are removed from lookup sets, so tokens stored concurrently stay there
+     */
+    @Override
+    public int removeUserTokens(String userName, Collection<String> clientIds) {
+        List<byte[]> userKeys = clientIds.stream().map(clientId -> userKey(clientId, userName)).collect(Collectors.toList());
+        List<byte[][]> userMembers = execute(connection -> {
+            connection.openPipeline();
+            userKeys.forEach(connection::sMembers);
+            List<byte[][]> members = new ArrayList<>(userKeys.size());
+            for (Object values : connection.closePipeline()) {
+                //noinspection unchecked
+                Set<byte[]> set = (Set<byte[]>) values;
+                members.add(set.toArray(new byte[set.size()][]));
+            }
+            return members;
+        });
+        List<byte[]> tokenValues = new ArrayList<>();
+        userMembers.forEach(members -> tokenValues.addAll(Arrays.asList(members)));
+        if (tokenValues.isEmpty()) {
+            return 0;
+        }
+
+        byte[][] authKeys = new byte[tokenValues.size()][];
+        byte[][] accessToRefreshKeys = new byte[tokenValues.size()][];
+        for (int i = 0; i < tokenValues.size(); i++) {
+            String tokenValue = new String(tokenValues.get(i), StandardCharsets.UTF_8);
+            authKeys[i] = key(AUTH, tokenValue);
+            accessToRefreshKeys[i] = key(ACCESS_TO_REFRESH, tokenValue);
+        }
+        List<Object> references = execute(connection -> {
+            connection.openPipeline();
+            connection.mGet(authKeys);
+            connection.mGet(accessToRefreshKeys);
+            return connection.closePipeline();
+        });
+        //noinspection unchecked
+        List<byte[]> auths = (List<byte[]>) references.get(0);
+        //noinspection unchecked
+        List<byte[]> refreshTokens = (List<byte[]>) references.get(1);
+
+        List<byte[]> keys = new ArrayList<>();
+        byte[][] clientKeys = new byte[tokenValues.size()][];
+        int removed = 0;
+        for (int i = 0; i < tokenValues.size(); i++) {
+            String tokenValue = new String(tokenValues.get(i), StandardCharsets.UTF_8);
+            keys.add(key(ACCESS, tokenValue));
+            keys.add(authKeys[i]);
+            keys.add(accessToRefreshKeys[i]);
+
+            byte[] auth = auths.get(i);
+            if (null != auth) {
+                removed++;
+                OAuth2Authentication authentication = tokenCodec.decodeAuthentication(auth, null);
+                keys.add(key(AUTH_TO_ACCESS, authenticationKeyGenerator.extractKey(authentication)));
+                clientKeys[i] = key(CLIENT_ID_TO_ACCESS, authentication.getOAuth2Request().getClientId());
+            }
+            byte[] refreshToken = refreshTokens.get(i);
+            if (null != refreshToken) {
+                String refreshValue = new String(refreshToken, StandardCharsets.UTF_8);
+                keys.add(key(REFRESH, refreshValue));
+                keys.add(key(REFRESH_AUTH, refreshValue));
+                keys.add(key(REFRESH_TO_ACCESS, refreshValue));
+            }
+        }
+
+        execute(connection -> {
+            connection.openPipeline();
+            connection.del(keys.toArray(new byte[keys.size()][]));
+            for (int i = 0; i < userKeys.size(); i++) {
+                if (userMembers.get(i).length > 0) {
+                    connection.sRem(userKeys.get(i), userMembers.get(i));
+                }
+            }
+            for (int i = 0; i < clientKeys.length; i++) {
+                if (null != clientKeys[i]) {
+                    connection.sRem(clientKeys[i], tokenValues.get(i));
+                }
+            }
+            connection.closePipeline();
+            return null;
+        });
+        return removed;
+    }
+
+    /**
+     * Loads tokens referenced by lookup set. Removes references to expired tokens
+     *
+     * @param setKey Key of lookup set
+     * @return Found tokens
+     */
+    private Collection<OAuth2AccessToken> findTokens(byte[] setKey) {
+        return execute(connection -> {
+            Set<byte[]> tokenValues = connection.sMembers(setKey);
+            if (null == tokenValues || tokenValues.isEmpty()) {
+                return Collections.<OAuth2AccessToken>emptyList();
+            }
+            byte[][] members = tokenValues.toArray(new byte[tokenValues.size()][]);
+            byte[][] accessKeys = new byte[members.length][];
+            for (int i = 0; i < members.length; i++) {
+                accessKeys[i] = key(ACCESS, new String(members[i], StandardCharsets.UTF_8));
+            }
+
+            List<byte[]> tokens = connection.mGet(accessKeys);
+            List<OAuth2AccessToken> found = new ArrayList<>(members.length);
+            List<byte[]> expired = new ArrayList<>();
+            for (int i = 0; i < members.length; i++) {
+                byte[] token = tokens.get(i);
+                if (null == token) {
+                    expired.add(members[i]);
+                } else {
+                    found.add(tokenCodec.decodeAccessToken(token));
+                }
+            }
+            if (!expired.isEmpty()) {
+                connection.sRem(setKey, expired.toArray(new byte[expired.size()][]));
+            }
+            return found;
+        });
+    }
+
+    private <T> T execute(Function<RedisConnection, T> callback) {
+        RedisConnection connection = connectionFactory.getConnection();
+        try {
+            return callback.apply(connection);
+        } finally {
+            connection.close();
+        }
+    }
+
+    private static byte[] userKey(String clientId, String userName) {
+        return key(UNAME_TO_ACCESS, clientId + ":" + userName);
+    }
+
+    private static byte[] key(String type, String value) {
+        return bytes(PREFIX + type + value);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long secondsTill(Date expiration) {
+        return Math.max(1L, TimeUnit.MILLISECONDS.toSeconds(expiration.getTime() - System.currentTimeMillis()));
+    }
+}
@@ -22,8 +22,11 @@ package com.epam.reportportal.auth.store;
 
 import com.epam.reportportal.auth.store.entity.OAuth2RefreshTokenEntity;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+
 /**
  * @author Andrei Varabyeu
  */
@@ -31,4 +34,12 @@ import org.springframework.stereotype.Repository;
 interface OAuth2RefreshTokenRepository extends MongoRepository<OAuth2RefreshTokenEntity, String> {
 
     OAuth2RefreshTokenEntity findByTokenId(String tokenId);
+
+    @Query(value = "{ '_id' : ?0 }", fields = "{ 'oAuth2RefreshToken' : 1 }")
+    OAuth2RefreshTokenEntity findTokenByTokenId(String tokenId);
+
+    @Query(value = "{ '_id' : ?0 }", fields = "{ 'authentication' : 1 }")
+    OAuth2RefreshTokenEntity findAuthenticationByTokenId(String tokenId);
+
+    Long deleteByTokenIdIn(Collection<String> tokenIds);
 }
\ No newline at end of file
@@ -0,0 +1,376 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.store;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalListener;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * In-process near-cache of already de-serialized access tokens and authentications.
+ * Both caches are bounded and entries expire after write. If Redis connection factory is provided, evictions are
+ * broadcasted to other instances through {@link #TOPIC} in background, so tokens removed on another instance
+ * are evicted here as well. Broadcasts which do not fit into the publisher queue or fail are dropped:
+ * tokens removed on another instance live here not longer than configured expiration then.
+ * Token IDs which are not found are remembered for a short time as well, so floods
+ * of invalid tokens do not reach the storage. Tokens and authentications are remembered as missing
+ * separately, so lookup of one does not hide the other. Token values are random, so a token cannot
+ * be looked up before it's issued, and stored tokens are evicted from negative caches anyway.
+ * Token IDs are also cached by authentication key, so "the token of this authentication"
+ * is resolved without storage lookup as well.
+ * Concurrent misses of the same key share one load, hits do not take any locks
+ */
+public class OAuth2TokenCache implements PublicMetrics, MessageListener, DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OAuth2TokenCache.class);
+
+    public static final ChannelTopic TOPIC = new ChannelTopic("rp:oauth:evict");
+
+    private static final String METRIC_PREFIX = "cache.oauth.";
+    private static final String TOKEN = "token";
+    private static final String KEY = "key";
+    private static final String ALL = "all";
+    private static final char SEPARATOR = '|';
+    private static final int PUBLISH_QUEUE_CAPACITY = 10000;
+    private static final long WARNING_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    private final Cache<String, OAuth2AccessToken> tokens;
+    private final Cache<String, OAuth2Authentication> authentications;
+    private final Cache<String, Boolean> missingTokens;
+    private final Cache<String, Boolean> missingAuthentications;
+    private final Cache<String, String> tokenIds;
+
+    private final AtomicLong tokenEvictions = new AtomicLong();
+    private final AtomicLong authenticationEvictions = new AtomicLong();
+    private final AtomicLong keyEvictions = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong unshared = new AtomicLong();
+    private final AtomicLong lastWarning = new AtomicLong();
+
+    /*
+     * Evictions made by this instance are not applied twice
+     */
+    private final String instanceId = UUID.randomUUID().toString();
+    private final RedisConnectionFactory connectionFactory;
+    private final ExecutorService publisher;
+
+    public OAuth2TokenCache(long maximumSize, long expirationSeconds) {
+        this(maximumSize, expirationSeconds, 0);
+    }
+
+    public OAuth2TokenCache(long maximumSize, long expirationSeconds, long negativeExpirationSeconds) {
+        this(maximumSize, expirationSeconds, negativeExpirationSeconds, null);
+    }
+
+    /**
+     * @param maximumSize               Max count of cached tokens
+     * @param expirationSeconds         Expiration of cached tokens
+     * @param negativeExpirationSeconds Expiration of not found token IDs. Zero disables negative caching
+     * @param connectionFactory         Redis connection factory evictions are broadcasted through. Evictions are local if null
+     */
+    public OAuth2TokenCache(long maximumSize, long expirationSeconds, long negativeExpirationSeconds,
+            @Nullable RedisConnectionFactory connectionFactory) {
+        this.connectionFactory = connectionFactory;
+        this.publisher = null == connectionFactory ?
+                null :
+                new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(PUBLISH_QUEUE_CAPACITY),
+                        new ThreadFactoryBuilder().setNameFormat("token-cache-publisher").setDaemon(true).build(),
+                        (task, executor) -> unshared.incrementAndGet());
+        this.tokens = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expirationSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .removalListener(countEvictions(tokenEvictions))
+                .build();
+        this.authentications = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expirationSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .removalListener(countEvictions(authenticationEvictions))
+                .build();
+        this.missingTokens = negativeCache(maximumSize, negativeExpirationSeconds);
+        this.missingAuthentications = negativeCache(maximumSize, negativeExpirationSeconds);
+        this.tokenIds = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expirationSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .removalListener(countEvictions(keyEvictions))
+                .build();
+    }
+
+    /**
+     * Returns cached access token or loads it with provided loader.
+     * Returns null without loading if token has been recently not found
+     *
+     * @param tokenId Token ID
+     * @param loader  Loads token if there is no cached one
+     * @return Access Token or null
+     */
+    public OAuth2AccessToken getAccessToken(String tokenId, Function<String, OAuth2AccessToken> loader) {
+        return get(tokens, missingTokens, tokenId, loader);
+    }
+
+    /**
+     * Returns cached authentication or loads it with provided loader.
+     * Returns null without loading if token has been recently not found
+     *
+     * @param tokenId Token ID
+     * @param loader  Loads authentication if there is no cached one
+     * @return Authentication or null
+     */
+    public OAuth2Authentication getAuthentication(String tokenId, Function<String, OAuth2Authentication> loader) {
+        return get(authentications, missingAuthentications, tokenId, loader);
+    }
+
+    /**
+     * Returns cached ID of token issued for the authentication or loads it with provided loader.
+     * Not found IDs are not cached since token might be issued at any moment
+     *
+     * @param authenticationId Authentication key
+     * @param loader           Loads token ID if there is no cached one
+     * @return Token ID or null
+     */
+    public String getTokenId(String authenticationId, Function<String, String> loader) {
+        return load(tokenIds, authenticationId, loader);
+    }
+
+    /**
+     * Evicts token ID cached for the authentication
+     *
+     * @param authenticationId Authentication key
+     */
+    public void evictAuthenticationKey(String authenticationId) {
+        tokenIds.invalidate(authenticationId);
+        share(KEY, Collections.singleton(authenticationId));
+    }
+
+    /**
+     * Evicts token and authentication from the cache
+     *
+     * @param tokenId Token ID
+     */
+    public void evict(String tokenId) {
+        evict(Collections.singleton(tokenId));
+    }
+
+    /**
+     * Evicts tokens and authentications from the cache
+     *
+     * @param tokenIds Token IDs
+     */
+    public void evict(Collection<String> tokenIds) {
+        if (tokenIds.isEmpty()) {
+            return;
+        }
+        evictTokens(tokenIds);
+        share(TOKEN, tokenIds);
+    }
+
+    public void evictAll() {
+        evictAllLocally();
+        share(ALL, Collections.emptyList());
+    }
+
+    /**
+     * Applies eviction broadcasted by another instance. Format is 'instance|type|key1|key2...'
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        List<String> parts = Splitter.on(SEPARATOR).splitToList(new String(message.getBody(), StandardCharsets.UTF_8));
+        if (parts.size() < 2 || instanceId.equals(parts.get(0))) {
+            return;
+        }
+        received.incrementAndGet();
+        List<String> keys = parts.subList(2, parts.size());
+        switch (parts.get(1)) {
+            case TOKEN:
+                evictTokens(keys);
+                break;
+            case KEY:
+                tokenIds.invalidateAll(keys);
+                break;
+            case ALL:
+                evictAllLocally();
+                break;
+            default:
+                LOGGER.warn("Unknown token cache eviction '{}'", parts.get(1));
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (null != publisher) {
+            publisher.shutdown();
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        addMetrics(metrics, "token.", tokens, tokenEvictions);
+        addMetrics(metrics, "authentication.", authentications, authenticationEvictions);
+        addMetrics(metrics, "key.", tokenIds, keyEvictions);
+        metrics.add(new Metric<>(METRIC_PREFIX + "negative.size", missingTokens.size() + missingAuthentications.size()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "negative.rejected",
+                missingTokens.stats().hitCount() + missingAuthentications.stats().hitCount()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "eviction.received", received.get()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "eviction.unshared", unshared.get()));
+        return metrics;
+    }
+
+    private void evictTokens(Collection<String> ids) {
+        tokens.invalidateAll(ids);
+        authentications.invalidateAll(ids);
+        missingTokens.invalidateAll(ids);
+        missingAuthentications.invalidateAll(ids);
+    }
+
+    private void evictAllLocally() {
+        tokens.invalidateAll();
+        authentications.invalidateAll();
+        missingTokens.invalidateAll();
+        missingAuthentications.invalidateAll();
+        tokenIds.invalidateAll();
+    }
+
+    /**
+     * Notifies other instances in background. Entries stay there till expiration if Redis is not available
+     */
+    private void share(String type, Collection<String> keys) {
+        if (null == publisher || publisher.isShutdown()) {
+            return;
+        }
+        StringBuilder message = new StringBuilder(instanceId).append(SEPARATOR).append(type);
+        if (!keys.isEmpty()) {
+            Joiner.on(SEPARATOR).appendTo(message.append(SEPARATOR), keys);
+        }
+        publisher.execute(() -> publish(message.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private void publish(byte[] message) {
+        RedisConnection connection = null;
+        try {
+            connection = connectionFactory.getConnection();
+            connection.publish(TOPIC.getTopic().getBytes(StandardCharsets.UTF_8), message);
+        } catch (Exception e) {
+            unshared.incrementAndGet();
+            long now = System.currentTimeMillis();
+            long last = lastWarning.get();
+            if (now - last >= WARNING_INTERVAL && lastWarning.compareAndSet(last, now)) {
+                LOGGER.warn("Unable to share token cache evictions, {} are not shared so far. Other instances keep entries till expiration: {}",
+                        unshared.get(), e.toString());
+            }
+            LOGGER.debug("Unable to share token cache eviction", e);
+        } finally {
+            if (null != connection) {
+                connection.close();
+            }
+        }
+    }
+
+    /*
+     * Concurrent misses of the same key wait for single load started by first of them.
+     * Loader returning null is reported by guava as invalid load to all waiting threads
+     */
+    private static <T> T get(Cache<String, T> cache, Cache<String, Boolean> missing, String tokenId, Function<String, T> loader) {
+        if (null != missing.getIfPresent(tokenId)) {
+            return null;
+        }
+        return load(cache, tokenId, id -> {
+            T loaded = loader.apply(id);
+            if (null == loaded) {
+                missing.put(id, Boolean.TRUE);
+            }
+            return loaded;
+        });
+    }
+
+    private static <T> T load(Cache<String, T> cache, String key, Function<String, T> loader) {
+        try {
+            return cache.get(key, () -> loader.apply(key));
+        } catch (CacheLoader.InvalidCacheLoadException e) {
+            return null;
+        } catch (ExecutionException | UncheckedExecutionException | ExecutionError e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static Cache<String, Boolean> negativeCache(long maximumSize, long expirationSeconds) {
+        return CacheBuilder.newBuilder()
+                .maximumSize(expirationSeconds > 0 ? maximumSize : 0)
+                .expireAfterWrite(expirationSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    private static void addMetrics(List<Metric<?>> metrics, String name, Cache<String, ?> cache, AtomicLong evictions) {
+        CacheStats stats = cache.stats();
+        metrics.add(new Metric<>(METRIC_PREFIX + name + "size", cache.size()));
+        metrics.add(new Metric<>(METRIC_PREFIX + name + "hit", stats.hitCount()));
+        metrics.add(new Metric<>(METRIC_PREFIX + name + "miss", stats.missCount()));
+        metrics.add(new Metric<>(METRIC_PREFIX + name + "hit.ratio", stats.hitRate()));
+        metrics.add(new Metric<>(METRIC_PREFIX + name + "eviction", evictions.get()));
+    }
+
+    private static <V> RemovalListener<String, V> countEvictions(AtomicLong counter) {
+        return notification -> {
+            if (notification.wasEvicted()) {
+                counter.incrementAndGet();
+            }
+        };
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.store;
+
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+/**
+ * Refresh token together with authentication it's been issued for
+ */
+public class RefreshTokenAuthentication {
+
+    private final OAuth2RefreshToken refreshToken;
+    private final OAuth2Authentication authentication;
+
+    public RefreshTokenAuthentication(OAuth2RefreshToken refreshToken, OAuth2Authentication authentication) {
+        this.refreshToken = refreshToken;
+        this.authentication = authentication;
+    }
+
+    public OAuth2RefreshToken getRefreshToken() {
+        return refreshToken;
+    }
+
+    public OAuth2Authentication getAuthentication() {
+        return authentication;
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.store;
+
+import org.springframework.security.oauth2.provider.token.TokenStore;
+
+import java.util.Collection;
+
+/**
+ * {@link TokenStore} able to remove all tokens of user in bulk,
+ * without loading and removing them one by one
+ */
+public interface RevocableTokenStore extends TokenStore {
+
+    /**
+     * Removes all access tokens of user issued for provided clients
+     * together with linked refresh tokens
+     *
+     * @param userName  User name
+     * @param clientIds Client IDs
+     * @return Count of removed access tokens
+     */
+    int removeUserTokens(String userName, Collection<String> clientIds);
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.store;
+
+import com.epam.reportportal.auth.store.codec.JavaSerializationTokenCodec;
+import com.epam.reportportal.auth.store.codec.TokenCodec;
+import com.epam.reportportal.auth.store.entity.OAuth2AccessTokenEntity;
+import com.epam.reportportal.auth.store.entity.OAuth2RefreshTokenEntity;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Rewrites authentications of all stored tokens which are stale: serialized with
+ * outdated serialVersionUID or stored in format different from the one of configured codec.
+ * Documents are read page by page, pages are decoded and written in parallel
+ */
+public class StaleTokensMigration implements PublicMetrics {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StaleTokensMigration.class);
+
+    private static final String METRIC_PREFIX = "token.migration.";
+    private static final String ID = "_id";
+    private static final String AUTHENTICATION = "authentication";
+
+    private final MongoOperations mongoOperations;
+    private final TokenCodec tokenCodec;
+    private final int batchSize;
+    private final int parallelism;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong scanned = new AtomicLong();
+    private final AtomicLong migrated = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * @param mongoOperations Mongo operations
+     * @param tokenCodec      Codec to re-encode authentications
+     * @param batchSize       Count of documents in one page
+     * @param parallelism     Count of pages processed in parallel
+     */
+    public StaleTokensMigration(MongoOperations mongoOperations, TokenCodec tokenCodec, int batchSize, int parallelism) {
+        this.mongoOperations = mongoOperations;
+        this.tokenCodec = tokenCodec;
+        this.batchSize = batchSize;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Starts migration in background
+     *
+     * @return FALSE if migration is already running
+     */
+    public boolean start() {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                migrate();
+            } finally {
+                running.set(false);
+            }
+        }, "token-migration");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    /**
+     * Migrates stale tokens of both access and refresh tokens collections
+     */
+    void migrate() {
+        scanned.set(0);
+        migrated.set(0);
+        failed.set(0);
+        long started = System.currentTimeMillis();
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism,
+                new ThreadFactoryBuilder().setNameFormat("token-migration-%d").setDaemon(true).build());
+        try {
+            migrate(OAuth2AccessTokenEntity.class, OAuth2AccessTokenEntity::getTokenId, OAuth2AccessTokenEntity::getAuthentication,
+                    executor);
+            migrate(OAuth2RefreshTokenEntity.class, OAuth2RefreshTokenEntity::getTokenId, OAuth2RefreshTokenEntity::getAuthentication,
+                    executor);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            LOGGER.error("Token migration has failed", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        LOGGER.info("Token migration has scanned {}, migrated {}, failed {} documents in {} ms", scanned.get(), migrated.get(),
+                failed.get(), System.currentTimeMillis() - started);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        return Arrays.asList(new Metric<>(METRIC_PREFIX + "running", running.get() ? 1 : 0),
+                new Metric<>(METRIC_PREFIX + "scanned", scanned.get()),
+                new Metric<>(METRIC_PREFIX + "migrated", migrated.get()),
+                new Metric<>(METRIC_PREFIX + "failed", failed.get()));
+    }
+
+    private <T> void migrate(Class<T> type, Function<T, String> id, Function<T, byte[]> authentication, ExecutorService executor)
+            throws Exception {
+        List<Future<?>> pages = new ArrayList<>();
+        String lastId = null;
+        List<T> page;
+        do {
+            Query query = null == lastId ? new Query() : Query.query(Criteria.where(ID).gt(lastId));
+            query.with(new Sort(Sort.Direction.ASC, ID)).limit(batchSize).fields().include(AUTHENTICATION);
+            page = mongoOperations.find(query, type);
+            if (page.isEmpty()) {
+                break;
+            }
+            lastId = id.apply(page.get(page.size() - 1));
+
+            List<T> documents = page;
+            pages.add(executor.submit(() -> migratePage(type, documents, id, authentication)));
+            // do not read ahead more pages than can be processed
+            if (pages.size() >= parallelism) {
+                pages.remove(0).get();
+            }
+        } while (page.size() == batchSize);
+
+        for (Future<?> pending : pages) {
+            pending.get();
+        }
+    }
+
+    private <T> void migratePage(Class<T> type, List<T> page, Function<T, String> id, Function<T, byte[]> authentication) {
+        BulkOperations operations = mongoOperations.bulkOps(BulkOperations.BulkMode.UNORDERED, type);
+        int stale = 0;
+        for (T document : page) {
+            byte[] stored = authentication.apply(document);
+            if (null == stored) {
+                continue;
+            }
+            try {
+                AtomicBoolean recovered = new AtomicBoolean();
+                byte[] encoded = tokenCodec.encodeAuthentication(tokenCodec.decodeAuthentication(stored, auth -> recovered.set(true)));
+                if (recovered.get() || JavaSerializationTokenCodec.isSerialized(stored) != JavaSerializationTokenCodec.isSerialized(encoded)) {
+                    operations.updateOne(Query.query(Criteria.where(ID).is(id.apply(document))), Update.update(AUTHENTICATION, encoded));
+                    stale++;
+                }
+            } catch (Exception e) {
+                failed.incrementAndGet();
+                LOGGER.debug("Unable to migrate token '{}'", id.apply(document), e);
+            }
+        }
+        if (stale > 0) {
+            operations.execute();
+            migrated.addAndGet(stale);
+        }
+        scanned.addAndGet(page.size());
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.store;
+
+import com.epam.reportportal.auth.store.entity.OAuth2AccessTokenEntity;
+import com.epam.reportportal.auth.store.entity.OAuth2RefreshTokenEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.mongodb.DBObject;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.IndexOperations;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver.IndexDefinitionHolder;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Verifies on startup that all indexes declared by token entities exist.
+ * Indexes may be missing if automatic creation has failed or has been disabled.
+ * Missing indexes are either created or startup is failed, depending on configuration
+ */
+public class TokenIndexVerifier implements InitializingBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TokenIndexVerifier.class);
+
+    private static final String AUTHENTICATION_ID = "authenticationId";
+
+    /*
+     * Rank of tokens without expiration
+     */
+    private static final Date NEVER = new Date(Long.MAX_VALUE);
+
+    private static final List<Class<?>> ENTITIES = Arrays.asList(OAuth2AccessTokenEntity.class, OAuth2RefreshTokenEntity.class);
+
+    private final MongoOperations mongoOperations;
+    private final MongoMappingContext mappingContext;
+    private final boolean heal;
+
+    /**
+     * @param mongoOperations Mongo operations
+     * @param mappingContext  Mapping context
+     * @param heal            Whether missing indexes should be created. Startup is failed otherwise
+     */
+    public TokenIndexVerifier(MongoOperations mongoOperations, MongoMappingContext mappingContext, boolean heal) {
+        this.mongoOperations = mongoOperations;
+        this.mappingContext = mappingContext;
+        this.heal = heal;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        MongoPersistentEntityIndexResolver resolver = new MongoPersistentEntityIndexResolver(mappingContext);
+        List<String> missing = new ArrayList<>();
+        for (Class<?> entity : ENTITIES) {
+            IndexOperations indexOperations = mongoOperations.indexOps(entity);
+            List<IndexInfo> existing = indexOperations.getIndexInfo();
+            for (IndexDefinitionHolder index : resolver.resolveIndexForEntity(mappingContext.getPersistentEntity(entity))) {
+                if (existing.stream().anyMatch(info -> info.isIndexForFields(index.getIndexKeys().keySet()))) {
+                    continue;
+                }
+                if (heal) {
+                    LOGGER.warn("Index {} of collection {} is missing and will be created", index.getIndexKeys(), index.getCollection());
+                    indexOperations.ensureIndex(index);
+                } else {
+                    missing.add(index.getCollection() + index.getIndexKeys());
+                }
+            }
+        }
+        verifyUniqueAuthenticationId(missing);
+        if (!missing.isEmpty()) {
+            throw new IllegalStateException("Token collections are missing indexes: " + missing);
+        }
+    }
+
+    /*
+     * Unique index prevents concurrent issuance of several tokens for the same authentication.
+     * Existing duplicates are removed before index is created, the token which expires last is kept.
+     * Token without expiration is considered as the one which expires last
+     */
+    private void verifyUniqueAuthenticationId(List<String> missing) {
+        IndexOperations indexOperations = mongoOperations.indexOps(OAuth2AccessTokenEntity.class);
+        Optional<IndexInfo> existing = indexOperations.getIndexInfo()
+                .stream()
+                .filter(info -> info.isIndexForFields(Collections.singletonList(AUTHENTICATION_ID)))
+                .findFirst();
+        if (existing.map(IndexInfo::isUnique).orElse(false)) {
+            return;
+        }
+        if (!heal) {
+            missing.add("unique " + AUTHENTICATION_ID);
+            return;
+        }
+        try {
+            LOGGER.warn("Unique index of {} is missing and will be created", AUTHENTICATION_ID);
+            removeDuplicates();
+            existing.ifPresent(info -> indexOperations.dropIndex(info.getName()));
+            indexOperations.ensureIndex(new Index().on(AUTHENTICATION_ID, Sort.Direction.ASC).unique().background());
+        } catch (Exception e) {
+            // e.g. duplicates inserted concurrently by instance of previous version. Issuance works anyway
+            LOGGER.error("Unable to create unique index of {}", AUTHENTICATION_ID, e);
+        }
+    }
+
+    private void removeDuplicates() {
+        Aggregation aggregation = Aggregation.newAggregation(Aggregation.match(Criteria.where(AUTHENTICATION_ID).ne(null)),
+                Aggregation.project("tokenId", AUTHENTICATION_ID).and(ConditionalOperators.ifNull("expiresAt").then(NEVER)).as("rank"),
+                Aggregation.group(AUTHENTICATION_ID).push("tokenId").as("ids").push("rank").as("ranks").count().as("count"),
+                Aggregation.match(Criteria.where("count").gt(1))
+        ).withOptions(Aggregation.newAggregationOptions().allowDiskUse(true).build());
+
+        List<Object> duplicates = new ArrayList<>();
+        for (DBObject group : mongoOperations.aggregate(aggregation, OAuth2AccessTokenEntity.class, DBObject.class)) {
+            List<?> ids = (List<?>) group.get("ids");
+            List<?> ranks = (List<?>) group.get("ranks");
+            int kept = 0;
+            for (int i = 1; i < ids.size(); i++) {
+                if (((Date) ranks.get(i)).after((Date) ranks.get(kept))) {
+                    kept = i;
+                }
+            }
+            for (int i = 0; i < ids.size(); i++) {
+                if (i != kept) {
+                    duplicates.add(ids.get(i));
+                }
+            }
+        }
+        if (!duplicates.isEmpty()) {
+            mongoOperations.remove(Query.query(Criteria.where("_id").in(duplicates)), OAuth2AccessTokenEntity.class);
+            LOGGER.warn("{} duplicated access tokens have been removed", duplicates.size());
+        }
+    }
+}
@@ -0,0 +1,457 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.store.codec;
+
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.ExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.TokenRequest;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UTFDataFormatException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Compact schema-versioned binary {@link TokenCodec}. Each record starts with
+ * two magic bytes, format version and record type followed by fields written with {@link DataOutputStream}.
+ * <p>
+ * Objects which cannot be represented by the format (custom authentication or principal types,
+ * non-string extensions, strings longer than {@link DataOutputStream#writeUTF(String)} supports, etc)
+ * are written with {@link JavaSerializationTokenCodec}. Data written
+ * with java serialization (including all legacy documents) is recognized by stream header
+ * and decoded transparently
+ */
+public class BinaryTokenCodec implements TokenCodec {
+
+    private static final byte MAGIC_0 = 'R';
+    private static final byte MAGIC_1 = 'P';
+
+    static final byte VERSION = 1;
+
+    private static final byte ACCESS_TOKEN = 1;
+    private static final byte REFRESH_TOKEN = 2;
+    private static final byte AUTHENTICATION = 3;
+
+    private static final byte NO_USER = 0;
+    private static final byte STRING_PRINCIPAL = 1;
+    private static final byte USER_DETAILS_PRINCIPAL = 2;
+
+    private final JavaSerializationTokenCodec legacyCodec = new JavaSerializationTokenCodec();
+
+    @Override
+    public byte[] encodeAccessToken(OAuth2AccessToken token) {
+        try {
+            return encode(ACCESS_TOKEN, out -> writeAccessToken(out, token));
+        } catch (UnsupportedContentException e) {
+            return legacyCodec.encodeAccessToken(token);
+        }
+    }
+
+    @Override
+    public OAuth2AccessToken decodeAccessToken(byte[] data) {
+        if (JavaSerializationTokenCodec.isSerialized(data)) {
+            return legacyCodec.decodeAccessToken(data);
+        }
+        return decode(data, ACCESS_TOKEN, BinaryTokenCodec::readAccessToken);
+    }
+
+    @Override
+    public byte[] encodeRefreshToken(OAuth2RefreshToken token) {
+        try {
+            return encode(REFRESH_TOKEN, out -> writeRefreshToken(out, token));
+        } catch (UnsupportedContentException e) {
+            return legacyCodec.encodeRefreshToken(token);
+        }
+    }
+
+    @Override
+    public OAuth2RefreshToken decodeRefreshToken(byte[] data) {
+        if (JavaSerializationTokenCodec.isSerialized(data)) {
+            return legacyCodec.decodeRefreshToken(data);
+        }
+        return decode(data, REFRESH_TOKEN, BinaryTokenCodec::readRefreshToken);
+    }
+
+    @Override
+    public byte[] encodeAuthentication(OAuth2Authentication authentication) {
+        try {
+            return encode(AUTHENTICATION, out -> writeAuthentication(out, authentication));
+        } catch (UnsupportedContentException e) {
+            return legacyCodec.encodeAuthentication(authentication);
+        }
+    }
+
+    @Override
+    public OAuth2Authentication decodeAuthentication(byte[] data, @Nullable Consumer<OAuth2Authentication> recoveryCallback) {
+        if (JavaSerializationTokenCodec.isSerialized(data)) {
+            return legacyCodec.decodeAuthentication(data, recoveryCallback);
+        }
+        return decode(data, AUTHENTICATION, BinaryTokenCodec::readAuthentication);
+    }
+
+    private static byte[] encode(byte type, Writer writer) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(MAGIC_0);
+            out.writeByte(MAGIC_1);
+            out.writeByte(VERSION);
+            out.writeByte(type);
+            writer.write(out);
+        } catch (UTFDataFormatException e) {
+            /* string does not fit into 64KB of modified UTF-8 */
+            throw new UnsupportedContentException();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to encode token data", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static <T> T decode(byte[] data, byte type, Reader<T> reader) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            if (in.readByte() != MAGIC_0 || in.readByte() != MAGIC_1) {
+                throw new IllegalArgumentException("Unknown token data format");
+            }
+            byte version = in.readByte();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported token data version: " + version);
+            }
+            byte recordType = in.readByte();
+            if (recordType != type) {
+                throw new IllegalArgumentException("Unexpected token record type: " + recordType);
+            }
+            return reader.read(in);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to decode token data", e);
+        }
+    }
+
+    private static void writeAccessToken(DataOutputStream out, OAuth2AccessToken token) throws IOException {
+        if (!DefaultOAuth2AccessToken.class.equals(token.getClass())) {
+            throw new UnsupportedContentException();
+        }
+        out.writeUTF(token.getValue());
+        writeNullableString(out, token.getTokenType());
+        writeNullableDate(out, token.getExpiration());
+        writeStrings(out, token.getScope());
+        writeNullableString(out, null == token.getRefreshToken() ? null : token.getRefreshToken().getValue());
+        writeNullableDate(out, token.getRefreshToken() instanceof ExpiringOAuth2RefreshToken ?
+                ((ExpiringOAuth2RefreshToken) token.getRefreshToken()).getExpiration() :
+                null);
+        writeStringMap(out, token.getAdditionalInformation());
+    }
+
+    private static OAuth2AccessToken readAccessToken(DataInputStream in) throws IOException {
+        DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(in.readUTF());
+        token.setTokenType(readNullableString(in));
+        token.setExpiration(readNullableDate(in));
+        token.setScope(readStrings(in));
+        String refreshToken = readNullableString(in);
+        Date refreshTokenExpiration = readNullableDate(in);
+        if (null != refreshToken) {
+            token.setRefreshToken(null == refreshTokenExpiration ?
+                    new DefaultOAuth2RefreshToken(refreshToken) :
+                    new DefaultExpiringOAuth2RefreshToken(refreshToken, refreshTokenExpiration));
+        }
+        token.setAdditionalInformation(new LinkedHashMap<>(readStringMap(in)));
+        return token;
+    }
+
+    private static void writeRefreshToken(DataOutputStream out, OAuth2RefreshToken token) throws IOException {
+        if (DefaultExpiringOAuth2RefreshToken.class.equals(token.getClass())) {
+            out.writeUTF(token.getValue());
+            writeNullableDate(out, ((ExpiringOAuth2RefreshToken) token).getExpiration());
+        } else if (DefaultOAuth2RefreshToken.class.equals(token.getClass())) {
+            out.writeUTF(token.getValue());
+            writeNullableDate(out, null);
+        } else {
+            throw new UnsupportedContentException();
+        }
+    }
+
+    private static OAuth2RefreshToken readRefreshToken(DataInputStream in) throws IOException {
+        String value = in.readUTF();
+        Date expiration = readNullableDate(in);
+        return null == expiration ? new DefaultOAuth2RefreshToken(value) : new DefaultExpiringOAuth2RefreshToken(value, expiration);
+    }
+
+    private static void writeAuthentication(DataOutputStream out, OAuth2Authentication authentication) throws IOException {
+        if (!OAuth2Authentication.class.equals(authentication.getClass()) || null != authentication.getDetails()) {
+            throw new UnsupportedContentException();
+        }
+        OAuth2Request request = authentication.getOAuth2Request();
+        writeNullableString(out, request.getClientId());
+        writeStrings(out, request.getScope());
+        writeStringMap(out, request.getRequestParameters());
+        writeAuthorities(out, request.getAuthorities());
+        out.writeBoolean(request.isApproved());
+        writeStrings(out, request.getResourceIds());
+        writeNullableString(out, request.getRedirectUri());
+        writeStrings(out, request.getResponseTypes());
+        writeStringMap(out, request.getExtensions());
+
+        TokenRequest refresh = request.getRefreshTokenRequest();
+        out.writeBoolean(null != refresh);
+        if (null != refresh) {
+            writeStringMap(out, refresh.getRequestParameters());
+            writeNullableString(out, refresh.getClientId());
+            writeStrings(out, refresh.getScope());
+            writeNullableString(out, refresh.getGrantType());
+        }
+
+        writeUserAuthentication(out, authentication.getUserAuthentication());
+    }
+
+    private static OAuth2Authentication readAuthentication(DataInputStream in) throws IOException {
+        String clientId = readNullableString(in);
+        Set<String> scope = readStrings(in);
+        Map<String, String> requestParameters = readStringMap(in);
+        List<GrantedAuthority> authorities = readAuthorities(in);
+        boolean approved = in.readBoolean();
+        Set<String> resourceIds = readStrings(in);
+        String redirectUri = readNullableString(in);
+        Set<String> responseTypes = readStrings(in);
+        Map<String, Serializable> extensions = new LinkedHashMap<>(readStringMap(in));
+
+        OAuth2Request request = new OAuth2Request(requestParameters, clientId, authorities, approved, scope, resourceIds, redirectUri,
+                responseTypes, extensions);
+        if (in.readBoolean()) {
+            Map<String, String> refreshParameters = readStringMap(in);
+            String refreshClientId = readNullableString(in);
+            Set<String> refreshScope = readStrings(in);
+            String grantType = readNullableString(in);
+            request = request.refresh(new TokenRequest(refreshParameters, refreshClientId, refreshScope, grantType));
+        }
+
+        return new OAuth2Authentication(request, readUserAuthentication(in));
+    }
+
+    private static void writeUserAuthentication(DataOutputStream out, Authentication user) throws IOException {
+        if (null == user) {
+            out.writeByte(NO_USER);
+            return;
+        }
+        if (!UsernamePasswordAuthenticationToken.class.equals(user.getClass())) {
+            throw new UnsupportedContentException();
+        }
+        Object principal = user.getPrincipal();
+        if (principal instanceof String) {
+            out.writeByte(STRING_PRINCIPAL);
+            out.writeUTF((String) principal);
+        } else if (null != principal && User.class.equals(principal.getClass())) {
+            User details = (User) principal;
+            out.writeByte(USER_DETAILS_PRINCIPAL);
+            out.writeUTF(details.getUsername());
+            writeNullableString(out, details.getPassword());
+            out.writeBoolean(details.isEnabled());
+            out.writeBoolean(details.isAccountNonExpired());
+            out.writeBoolean(details.isCredentialsNonExpired());
+            out.writeBoolean(details.isAccountNonLocked());
+            writeAuthorities(out, details.getAuthorities());
+        } else {
+            throw new UnsupportedContentException();
+        }
+
+        Object credentials = user.getCredentials();
+        if (null != credentials && !(credentials instanceof String)) {
+            throw new UnsupportedContentException();
+        }
+        writeNullableString(out, (String) credentials);
+
+        Object details = user.getDetails();
+        out.writeBoolean(null != details);
+        if (null != details) {
+            if (!(details instanceof Map)) {
+                throw new UnsupportedContentException();
+            }
+            writeStringMap(out, (Map<?, ?>) details);
+        }
+
+        out.writeBoolean(user.isAuthenticated());
+        writeAuthorities(out, user.getAuthorities());
+    }
+
+    private static Authentication readUserAuthentication(DataInputStream in) throws IOException {
+        byte principalType = in.readByte();
+        Object principal;
+        switch (principalType) {
+        case NO_USER:
+            return null;
+        case STRING_PRINCIPAL:
+            principal = in.readUTF();
+            break;
+        case USER_DETAILS_PRINCIPAL:
+            String username = in.readUTF();
+            String password = readNullableString(in);
+            User user = new User(username, null == password ? "" : password, in.readBoolean(), in.readBoolean(), in.readBoolean(),
+                    in.readBoolean(), readAuthorities(in));
+            if (null == password) {
+                user.eraseCredentials();
+            }
+            principal = user;
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown principal type: " + principalType);
+        }
+
+        String credentials = readNullableString(in);
+        Map<String, String> details = in.readBoolean() ? readStringMap(in) : null;
+        boolean authenticated = in.readBoolean();
+        List<GrantedAuthority> authorities = readAuthorities(in);
+
+        UsernamePasswordAuthenticationToken authentication = authenticated ?
+                new UsernamePasswordAuthenticationToken(principal, credentials, authorities) :
+                new UsernamePasswordAuthenticationToken(principal, credentials);
+        authentication.setDetails(details);
+        return authentication;
+    }
+
+    private static void writeAuthorities(DataOutputStream out, Collection<? extends GrantedAuthority> authorities) throws IOException {
+        if (null == authorities) {
+            out.writeInt(0);
+            return;
+        }
+        out.writeInt(authorities.size());
+        for (GrantedAuthority authority : authorities) {
+            if (!SimpleGrantedAuthority.class.equals(authority.getClass())) {
+                throw new UnsupportedContentException();
+            }
+            out.writeUTF(authority.getAuthority());
+        }
+    }
+
+    private static List<GrantedAuthority> readAuthorities(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        List<GrantedAuthority> authorities = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            authorities.add(new SimpleGrantedAuthority(in.readUTF()));
+        }
+        return authorities;
+    }
+
+    private static void writeStrings(DataOutputStream out, Collection<String> strings) throws IOException {
+        if (null == strings) {
+            out.writeInt(0);
+            return;
+        }
+        out.writeInt(strings.size());
+        for (String string : strings) {
+            out.writeUTF(string);
+        }
+    }
+
+    private static Set<String> readStrings(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        Set<String> strings = new LinkedHashSet<>(size);
+        for (int i = 0; i < size; i++) {
+            strings.add(in.readUTF());
+        }
+        return strings;
+    }
+
+    private static void writeStringMap(DataOutputStream out, Map<?, ?> map) throws IOException {
+        if (null == map) {
+            out.writeInt(0);
+            return;
+        }
+        out.writeInt(map.size());
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if (!(entry.getKey() instanceof String) || !(null == entry.getValue() || entry.getValue() instanceof String)) {
+                throw new UnsupportedContentException();
+            }
+            out.writeUTF((String) entry.getKey());
+            writeNullableString(out, (String) entry.getValue());
+        }
+    }
+
+    private static Map<String, String> readStringMap(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        Map<String, String> map = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            map.put(in.readUTF(), readNullableString(in));
+        }
+        return map;
+    }
+
+    private static void writeNullableString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(null != value);
+        if (null != value) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullableString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeNullableDate(DataOutputStream out, Date value) throws IOException {
+        out.writeBoolean(null != value);
+        if (null != value) {
+            out.writeLong(value.getTime());
+        }
+    }
+
+    private static Date readNullableDate(DataInputStream in) throws IOException {
+        return in.readBoolean() ? new Date(in.readLong()) : null;
+    }
+
+    @FunctionalInterface
+    private interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface Reader<T> {
+        T read(DataInputStream in) throws IOException;
+    }
+
+    /**
+     * Object contains data which cannot be represented by binary format
+     */
+    private static class UnsupportedContentException extends RuntimeException {
+        UnsupportedContentException() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.store.codec;
+
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.common.util.SerializationUtils;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+import javax.annotation.Nullable;
+import java.util.function.Consumer;
+
+import static com.epam.reportportal.auth.AuthUtils.deserializeSafely;
+
+/**
+ * {@link TokenCodec} based on standard java serialization. Legacy format of token documents
+ */
+public class JavaSerializationTokenCodec implements TokenCodec {
+
+    /**
+     * First bytes of java serialization stream. See {@link java.io.ObjectStreamConstants#STREAM_MAGIC}
+     */
+    private static final byte[] STREAM_MAGIC = { (byte) 0xAC, (byte) 0xED };
+
+    /**
+     * Checks whether data is written with java serialization
+     *
+     * @param data Data to check
+     * @return TRUE if data starts with java serialization header
+     */
+    public static boolean isSerialized(byte[] data) {
+        return null != data && data.length > 1 && data[0] == STREAM_MAGIC[0] && data[1] == STREAM_MAGIC[1];
+    }
+
+    @Override
+    public byte[] encodeAccessToken(OAuth2AccessToken token) {
+        return SerializationUtils.serialize(token);
+    }
+
+    @Override
+    public OAuth2AccessToken decodeAccessToken(byte[] data) {
+        return deserializeSafely(data, null);
+    }
+
+    @Override
+    public byte[] encodeRefreshToken(OAuth2RefreshToken token) {
+        return SerializationUtils.serialize(token);
+    }
+
+    @Override
+    public OAuth2RefreshToken decodeRefreshToken(byte[] data) {
+        return deserializeSafely(data, null);
+    }
+
+    @Override
+    public byte[] encodeAuthentication(OAuth2Authentication authentication) {
+        return SerializationUtils.serialize(authentication);
+    }
+
+    @Override
+    public OAuth2Authentication decodeAuthentication(byte[] data, @Nullable Consumer<OAuth2Authentication> recoveryCallback) {
+        return deserializeSafely(data, recoveryCallback);
+    }
+}
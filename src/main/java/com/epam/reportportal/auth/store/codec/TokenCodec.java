@@ -0,0 +1,55 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.store.codec;
+
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+import javax.annotation.Nullable;
+import java.util.function.Consumer;
+
+/**
+ * Converts OAuth objects to binary representation stored in token documents and back
+ */
+public interface TokenCodec {
+
+    byte[] encodeAccessToken(OAuth2AccessToken token);
+
+    OAuth2AccessToken decodeAccessToken(byte[] data);
+
+    byte[] encodeRefreshToken(OAuth2RefreshToken token);
+
+    OAuth2RefreshToken decodeRefreshToken(byte[] data);
+
+    byte[] encodeAuthentication(OAuth2Authentication authentication);
+
+    /**
+     * De-serializes authentication
+     *
+     * @param data             Encoded authentication
+     * @param recoveryCallback Executed if data is stored in outdated format and has been recovered.
+     *                         Might be used to re-save recovered object
+     * @return De-serialized authentication
+     */
+    OAuth2Authentication decodeAuthentication(byte[] data, @Nullable Consumer<OAuth2Authentication> recoveryCallback);
+
+}
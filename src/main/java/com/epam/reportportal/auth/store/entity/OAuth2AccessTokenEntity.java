@@ -21,25 +21,40 @@
 package com.epam.reportportal.auth.store.entity;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
+import java.util.Date;
+
 /**
  * @author Andrei Varabyeu
  */
 @Document(collection = "oauth_access_token")
+@CompoundIndex(name = "client_user", def = "{'clientId': 1, 'userName': 1}", background = true)
 public class OAuth2AccessTokenEntity {
 
     @Id
     private String tokenId;
     private byte[] token;
+    /*
+     * Unique index is maintained by TokenIndexVerifier since duplicates
+     * have to be removed before it's created
+     */
     private String authenticationId;
     @Indexed
     private String userName;
     @Indexed
     private String clientId;
     private byte[] authentication;
+    @Indexed(background = true)
     private String refreshToken;
+    /*
+     * Expiration time of token. Documents are removed by TTL index once it's passed.
+     * Null for non-expiring tokens
+     */
+    @Indexed(expireAfterSeconds = 0, background = true)
+    private Date expiresAt;
 
     public String getTokenId() {
         return tokenId;
@@ -96,4 +111,12 @@ public class OAuth2AccessTokenEntity {
     public void setRefreshToken(String refreshToken) {
         this.refreshToken = refreshToken;
     }
-}
\ No newline at end of file
+
+    public Date getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(Date expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
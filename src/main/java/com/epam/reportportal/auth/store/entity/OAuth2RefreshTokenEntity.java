@@ -21,8 +21,11 @@
 package com.epam.reportportal.auth.store.entity;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
+import java.util.Date;
+
 /**
  * @author Andrei Varabyeu
  */
@@ -34,6 +37,12 @@ public class OAuth2RefreshTokenEntity {
 
     private byte[] oAuth2RefreshToken;
     private byte[] authentication;
+    /*
+     * Expiration time of token. Documents are removed by TTL index once it's passed.
+     * Null for non-expiring tokens
+     */
+    @Indexed(expireAfterSeconds = 0, background = true)
+    private Date expiresAt;
 
     public String getTokenId() {
         return tokenId;
@@ -58,4 +67,12 @@ public class OAuth2RefreshTokenEntity {
     public void setAuthentication(byte[] authentication) {
         this.authentication = authentication;
     }
-}
\ No newline at end of file
+
+    public Date getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(Date expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.store.jwt;
+
+import com.google.common.collect.ImmutableSet;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.AccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.UserAuthenticationConverter;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Issues signed self-contained tokens for all clients except opaque ones.
+ * Adds {@link #ISSUED_AT} claim to be able to revoke tokens issued before some moment
+ */
+public class SignedTokenConverter extends JwtAccessTokenConverter {
+
+    /**
+     * Milliseconds since epoch when token has been issued
+     */
+    public static final String ISSUED_AT = "issued";
+
+    private final Set<String> opaqueClients;
+
+    public SignedTokenConverter(Collection<String> opaqueClients) {
+        this.opaqueClients = ImmutableSet.copyOf(opaqueClients);
+    }
+
+    /**
+     * @param clientId ID of client
+     * @return TRUE if tokens of client are stored in token store rather than signed
+     */
+    public boolean isOpaque(String clientId) {
+        return opaqueClients.contains(clientId);
+    }
+
+    /**
+     * Checks whether value looks like signed token. Opaque tokens are UUIDs and never contain dots
+     *
+     * @param tokenValue Token value
+     * @return TRUE if token is signed one
+     */
+    public static boolean isSigned(String tokenValue) {
+        int first = tokenValue.indexOf('.');
+        return first > 0 && tokenValue.indexOf('.', first + 1) > first;
+    }
+
+    @Override
+    public OAuth2AccessToken enhance(OAuth2AccessToken accessToken, OAuth2Authentication authentication) {
+        if (isOpaque(authentication.getOAuth2Request().getClientId())) {
+            return accessToken;
+        }
+        DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(accessToken);
+        Map<String, Object> info = new LinkedHashMap<>(accessToken.getAdditionalInformation());
+        info.put(ISSUED_AT, System.currentTimeMillis());
+        token.setAdditionalInformation(info);
+        return super.enhance(token, authentication);
+    }
+
+    /**
+     * Verifies signature and extracts claims of token
+     *
+     * @param tokenValue Signed token
+     * @return Token claims
+     */
+    public Map<String, Object> readClaims(String tokenValue) {
+        return decode(tokenValue);
+    }
+
+    /**
+     * @param claims Token claims
+     * @return Name of user or null if token is issued for client only
+     */
+    public static String getUserName(Map<String, Object> claims) {
+        Object user = claims.get(UserAuthenticationConverter.USERNAME);
+        return null == user ? null : user.toString();
+    }
+
+    /**
+     * @param claims Token claims
+     * @return Client ID
+     */
+    public static String getClientId(Map<String, Object> claims) {
+        Object client = claims.get(AccessTokenConverter.CLIENT_ID);
+        return null == client ? null : client.toString();
+    }
+
+    /**
+     * @param claims Token claims
+     * @return Issue time in millis or 0 if token has no such claim
+     */
+    public static long getIssuedAt(Map<String, Object> claims) {
+        Object issued = claims.get(ISSUED_AT);
+        return issued instanceof Number ? ((Number) issued).longValue() : 0L;
+    }
+}
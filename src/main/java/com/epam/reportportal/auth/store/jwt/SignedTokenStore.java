@@ -0,0 +1,307 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.store.jwt;
+
+import com.epam.reportportal.auth.store.IssuingTokenStore;
+import com.epam.reportportal.auth.store.RefreshTokenAuthentication;
+import com.epam.reportportal.auth.store.RevocableTokenStore;
+import org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.ExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+
+import java.util.Collection;
+import java.util.Map;
+
+import static com.epam.reportportal.auth.store.jwt.SignedTokenConverter.isSigned;
+
+/**
+ * {@link TokenStore} which validates signed tokens without any storage lookup.
+ * Tokens of opaque clients are handled by delegate store.
+ * Revoked signed tokens are rejected by {@link TokenDenyList}. Signed token is decoded and its signature
+ * is verified once per read, revocation is checked against the same claims
+ */
+public class SignedTokenStore implements RevocableTokenStore, IssuingTokenStore {
+
+    private final TokenStore delegate;
+    private final SignedTokenConverter converter;
+    private final TokenDenyList denyList;
+
+    public SignedTokenStore(TokenStore delegate, SignedTokenConverter converter, TokenDenyList denyList) {
+        this.delegate = delegate;
+        this.converter = converter;
+        this.denyList = denyList;
+    }
+
+    /**
+     * Revokes all signed tokens of user issued for provided clients before now
+     * and removes stored tokens of opaque clients. Signed tokens are not counted since they are not stored
+     */
+    @Override
+    public int removeUserTokens(String userName, Collection<String> clientIds) {
+        clientIds.stream().filter(clientId -> !converter.isOpaque(clientId)).forEach(clientId -> denyList.revokeUser(userName, clientId));
+        if (delegate instanceof RevocableTokenStore) {
+            return ((RevocableTokenStore) delegate).removeUserTokens(userName, clientIds);
+        }
+        int removed = 0;
+        for (String clientId : clientIds) {
+            for (OAuth2AccessToken token : delegate.findTokensByClientIdAndUserName(clientId, userName)) {
+                if (null != token.getRefreshToken()) {
+                    delegate.removeRefreshToken(token.getRefreshToken());
+                }
+                delegate.removeAccessToken(token);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Signed tokens are not stored, so they are just returned.
+     * Tokens of opaque clients are issued by delegate in the same way as default token services do
+     */
+    @Override
+    public OAuth2AccessToken issueAccessToken(OAuth2AccessToken candidate, OAuth2Authentication authentication) {
+        if (isSigned(candidate.getValue())) {
+            return candidate;
+        }
+        if (delegate instanceof IssuingTokenStore) {
+            return ((IssuingTokenStore) delegate).issueAccessToken(candidate, authentication);
+        }
+        OAuth2AccessToken existing = delegate.getAccessToken(authentication);
+        if (null != existing) {
+            if (!existing.isExpired()) {
+                delegate.storeAccessToken(existing, authentication);
+                return existing;
+            }
+            if (null != existing.getRefreshToken()) {
+                delegate.removeRefreshToken(existing.getRefreshToken());
+            }
+            delegate.removeAccessToken(existing);
+        }
+        delegate.storeAccessToken(candidate, authentication);
+        if (null != candidate.getRefreshToken()) {
+            delegate.storeRefreshToken(candidate.getRefreshToken(), authentication);
+        }
+        return candidate;
+    }
+
+    /**
+     * Signed tokens of the same user and client issued before candidate are revoked.
+     * Tokens of opaque clients are replaced by delegate
+     */
+    @Override
+    public OAuth2AccessToken replaceAccessToken(OAuth2AccessToken candidate, OAuth2Authentication authentication) {
+        if (isSigned(candidate.getValue())) {
+            long issuedAt = SignedTokenConverter.getIssuedAt(candidate.getAdditionalInformation());
+            denyList.revokeUser(authentication.getName(), authentication.getOAuth2Request().getClientId(), issuedAt - 1);
+            return candidate;
+        }
+        if (delegate instanceof IssuingTokenStore) {
+            return ((IssuingTokenStore) delegate).replaceAccessToken(candidate, authentication);
+        }
+        OAuth2AccessToken existing = delegate.getAccessToken(authentication);
+        if (null != existing) {
+            if (null != existing.getRefreshToken()) {
+                delegate.removeRefreshToken(existing.getRefreshToken());
+            }
+            delegate.removeAccessToken(existing);
+        }
+        delegate.storeAccessToken(candidate, authentication);
+        if (null != candidate.getRefreshToken()) {
+            delegate.storeRefreshToken(candidate.getRefreshToken(), authentication);
+        }
+        return candidate;
+    }
+
+    /**
+     * Signed refresh tokens carry authentication, so nothing is read from delegate
+     */
+    @Override
+    public RefreshTokenAuthentication readRefreshTokenAuthentication(String refreshTokenValue) {
+        if (isSigned(refreshTokenValue)) {
+            Map<String, Object> claims = converter.readClaims(refreshTokenValue);
+            return isRevoked(refreshTokenValue, claims) ?
+                    null :
+                    new RefreshTokenAuthentication(toRefreshToken(refreshTokenValue, claims), converter.extractAuthentication(claims));
+        }
+        if (delegate instanceof IssuingTokenStore) {
+            return ((IssuingTokenStore) delegate).readRefreshTokenAuthentication(refreshTokenValue);
+        }
+        OAuth2RefreshToken refreshToken = delegate.readRefreshToken(refreshTokenValue);
+        return null == refreshToken ?
+                null :
+                new RefreshTokenAuthentication(refreshToken, delegate.readAuthenticationForRefreshToken(refreshToken));
+    }
+
+    @Override
+    public OAuth2AccessToken refreshAccessToken(OAuth2AccessToken candidate, OAuth2RefreshToken refreshToken,
+            OAuth2Authentication authentication) {
+        if (isSigned(candidate.getValue())) {
+            return candidate;
+        }
+        if (delegate instanceof IssuingTokenStore) {
+            return ((IssuingTokenStore) delegate).refreshAccessToken(candidate, refreshToken, authentication);
+        }
+        delegate.removeAccessTokenUsingRefreshToken(refreshToken);
+        delegate.storeAccessToken(candidate, authentication);
+        OAuth2RefreshToken newRefreshToken = candidate.getRefreshToken();
+        if (null != newRefreshToken && !newRefreshToken.getValue().equals(refreshToken.getValue())) {
+            delegate.storeRefreshToken(newRefreshToken, authentication);
+        }
+        return candidate;
+    }
+
+    @Override
+    public OAuth2Authentication readAuthentication(OAuth2AccessToken token) {
+        return readAuthentication(token.getValue());
+    }
+
+    @Override
+    public OAuth2Authentication readAuthentication(String token) {
+        if (isSigned(token)) {
+            Map<String, Object> claims = converter.readClaims(token);
+            return isRevoked(token, claims) ? null : converter.extractAuthentication(claims);
+        }
+        return delegate.readAuthentication(token);
+    }
+
+    @Override
+    public void storeAccessToken(OAuth2AccessToken token, OAuth2Authentication authentication) {
+        if (!isSigned(token.getValue())) {
+            delegate.storeAccessToken(token, authentication);
+        }
+    }
+
+    @Override
+    public OAuth2AccessToken readAccessToken(String tokenValue) {
+        if (isSigned(tokenValue)) {
+            Map<String, Object> claims = converter.readClaims(tokenValue);
+            if (isRevoked(tokenValue, claims)) {
+                return null;
+            }
+            OAuth2AccessToken token = converter.extractAccessToken(tokenValue, claims);
+            if (converter.isRefreshToken(token)) {
+                throw new InvalidTokenException("Encoded token is a refresh token");
+            }
+            return token;
+        }
+        return delegate.readAccessToken(tokenValue);
+    }
+
+    @Override
+    public void removeAccessToken(OAuth2AccessToken token) {
+        if (isSigned(token.getValue())) {
+            denyList.denyToken(token.getValue(), token.getExpiration());
+        } else {
+            delegate.removeAccessToken(token);
+        }
+    }
+
+    @Override
+    public void storeRefreshToken(OAuth2RefreshToken refreshToken, OAuth2Authentication authentication) {
+        if (!isSigned(refreshToken.getValue())) {
+            delegate.storeRefreshToken(refreshToken, authentication);
+        }
+    }
+
+    @Override
+    public OAuth2RefreshToken readRefreshToken(String tokenValue) {
+        if (isSigned(tokenValue)) {
+            Map<String, Object> claims = converter.readClaims(tokenValue);
+            return isRevoked(tokenValue, claims) ? null : toRefreshToken(tokenValue, claims);
+        }
+        return delegate.readRefreshToken(tokenValue);
+    }
+
+    @Override
+    public OAuth2Authentication readAuthenticationForRefreshToken(OAuth2RefreshToken token) {
+        if (isSigned(token.getValue())) {
+            return converter.extractAuthentication(converter.readClaims(token.getValue()));
+        }
+        return delegate.readAuthenticationForRefreshToken(token);
+    }
+
+    /**
+     * Signed refresh token is denied till its own expiration. Refresh tokens without expiration
+     * are denied as long as user revocations are kept
+     */
+    @Override
+    public void removeRefreshToken(OAuth2RefreshToken token) {
+        if (isSigned(token.getValue())) {
+            denyList.denyToken(token.getValue(),
+                    token instanceof ExpiringOAuth2RefreshToken ? ((ExpiringOAuth2RefreshToken) token).getExpiration() : null);
+        } else {
+            delegate.removeRefreshToken(token);
+        }
+    }
+
+    @Override
+    public void removeAccessTokenUsingRefreshToken(OAuth2RefreshToken refreshToken) {
+        if (!isSigned(refreshToken.getValue())) {
+            delegate.removeAccessTokenUsingRefreshToken(refreshToken);
+        }
+    }
+
+    @Override
+    public OAuth2AccessToken getAccessToken(OAuth2Authentication authentication) {
+        if (converter.isOpaque(authentication.getOAuth2Request().getClientId())) {
+            return delegate.getAccessToken(authentication);
+        }
+        // signed tokens are not stored, so new one is issued each time
+        return null;
+    }
+
+    @Override
+    public Collection<OAuth2AccessToken> findTokensByClientIdAndUserName(String clientId, String userName) {
+        return delegate.findTokensByClientIdAndUserName(clientId, userName);
+    }
+
+    @Override
+    public Collection<OAuth2AccessToken> findTokensByClientId(String clientId) {
+        return delegate.findTokensByClientId(clientId);
+    }
+
+    private OAuth2RefreshToken toRefreshToken(String tokenValue, Map<String, Object> claims) {
+        OAuth2AccessToken token = converter.extractAccessToken(tokenValue, claims);
+        if (!converter.isRefreshToken(token)) {
+            throw new InvalidTokenException("Encoded token is not a refresh token");
+        }
+        return null == token.getExpiration() ?
+                new DefaultOAuth2RefreshToken(tokenValue) :
+                new DefaultExpiringOAuth2RefreshToken(tokenValue, token.getExpiration());
+    }
+
+    private boolean isRevoked(String tokenValue, Map<String, Object> claims) {
+        if (denyList.isDenied(tokenValue)) {
+            return true;
+        }
+        if (!denyList.hasRevokedUsers()) {
+            return false;
+        }
+        String user = SignedTokenConverter.getUserName(claims);
+        return null != user && denyList.isRevoked(user, SignedTokenConverter.getClientId(claims), SignedTokenConverter.getIssuedAt(claims));
+    }
+}
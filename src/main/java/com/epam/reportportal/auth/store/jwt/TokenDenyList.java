@@ -0,0 +1,250 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.store.jwt;
+
+import com.google.common.base.Splitter;
+import com.google.common.hash.Hashing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.listener.ChannelTopic;
+
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory list of revoked signed tokens. Contains revoked tokens (till they expire) and
+ * (user, client) pairs whose tokens issued before revocation moment are not valid anymore.
+ * <p>
+ * Revocations are stored in Redis with expiration and broadcasted to other instances
+ * through {@link #TOPIC}. Every instance loads stored revocations on startup. If Redis is not available,
+ * revocation is applied to local instance only
+ */
+public class TokenDenyList implements MessageListener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TokenDenyList.class);
+
+    public static final ChannelTopic TOPIC = new ChannelTopic("rp:oauth:deny");
+
+    private static final String TOKEN = "token";
+    private static final String USER = "user";
+    private static final String KEY_PREFIX = "rp:oauth:deny:";
+    private static final char SEPARATOR = '|';
+    private static final long PURGE_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    /*
+     * Token hash -> time till entry is actual
+     */
+    private final ConcurrentMap<String, Long> deniedTokens = new ConcurrentHashMap<>();
+
+    /*
+     * user|client -> revocation time
+     */
+    private final ConcurrentMap<String, Long> revokedUsers = new ConcurrentHashMap<>();
+
+    private final RedisConnectionFactory connectionFactory;
+    private final long revocationTtl;
+    private final AtomicLong lastPurge = new AtomicLong();
+
+    /**
+     * @param connectionFactory Redis connection factory
+     * @param revocationTtl     How long user revocation is kept, seconds. Should not be less than the longest
+     *                          validity of signed tokens
+     */
+    public TokenDenyList(RedisConnectionFactory connectionFactory, long revocationTtl) {
+        this.connectionFactory = connectionFactory;
+        this.revocationTtl = TimeUnit.SECONDS.toMillis(revocationTtl);
+    }
+
+    /**
+     * @return How long user revocations are kept, seconds
+     */
+    public long getRevocationTtl() {
+        return TimeUnit.MILLISECONDS.toSeconds(revocationTtl);
+    }
+
+    /**
+     * Loads revocations stored by other instances
+     */
+    public void load() {
+        try {
+            execute(connection -> {
+                try (Cursor<byte[]> keys = connection.scan(ScanOptions.scanOptions().match(KEY_PREFIX + "*").count(1000).build())) {
+                    while (keys.hasNext()) {
+                        byte[] key = keys.next();
+                        byte[] value = connection.get(key);
+                        if (null != value) {
+                            apply(new String(key, StandardCharsets.UTF_8).substring(KEY_PREFIX.length()) + SEPARATOR + new String(value,
+                                    StandardCharsets.UTF_8));
+                        }
+                    }
+                }
+            });
+        } catch (Exception e) {
+            LOGGER.warn("Unable to load revoked tokens. Only revocations made after startup will be applied", e);
+        }
+    }
+
+    /**
+     * Denies token till its expiration
+     *
+     * @param tokenValue Token value
+     * @param expiration Token expiration. If null, entry is kept as long as user revocations
+     */
+    public void denyToken(String tokenValue, @Nullable Date expiration) {
+        long now = System.currentTimeMillis();
+        long till = null == expiration ? now + revocationTtl : expiration.getTime();
+        if (till <= now) {
+            return;
+        }
+        String hash = hash(tokenValue);
+        deniedTokens.put(hash, till);
+        share(TOKEN + SEPARATOR + hash, till, till - now);
+        purge(now);
+    }
+
+    /**
+     * Denies all tokens of user for provided client issued before now
+     *
+     * @param user     User name
+     * @param clientId Client ID
+     */
+    public void revokeUser(String user, String clientId) {
+        revokeUser(user, clientId, System.currentTimeMillis());
+    }
+
+    /**
+     * Denies all tokens of user for provided client issued at provided moment or before
+     *
+     * @param user     User name
+     * @param clientId Client ID
+     * @param issuedAt Latest issue time of revoked tokens, millis
+     */
+    public void revokeUser(String user, String clientId, long issuedAt) {
+        revokedUsers.merge(user + SEPARATOR + clientId, issuedAt, Math::max);
+        share(USER + SEPARATOR + user + SEPARATOR + clientId, issuedAt, revocationTtl);
+        purge(System.currentTimeMillis());
+    }
+
+    public boolean isDenied(String tokenValue) {
+        if (deniedTokens.isEmpty()) {
+            return false;
+        }
+        Long till = deniedTokens.get(hash(tokenValue));
+        return null != till && till > System.currentTimeMillis();
+    }
+
+    public boolean hasRevokedUsers() {
+        return !revokedUsers.isEmpty();
+    }
+
+    /**
+     * @param user     User name
+     * @param clientId Client ID
+     * @param issuedAt Token issue time, millis
+     * @return TRUE if tokens of user issued at provided moment are revoked
+     */
+    public boolean isRevoked(String user, String clientId, long issuedAt) {
+        Long revokedAt = revokedUsers.get(user + SEPARATOR + clientId);
+        return null != revokedAt && issuedAt <= revokedAt;
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        apply(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Applies revocation record. Format is either 'token|hash|till' or 'user|name|client|revokedAt'
+     *
+     * @param record Revocation record
+     */
+    private void apply(String record) {
+        List<String> parts = Splitter.on(SEPARATOR).splitToList(record);
+        try {
+            if (TOKEN.equals(parts.get(0)) && parts.size() == 3) {
+                deniedTokens.merge(parts.get(1), Long.parseLong(parts.get(2)), Math::max);
+            } else if (USER.equals(parts.get(0)) && parts.size() == 4) {
+                revokedUsers.merge(parts.get(1) + SEPARATOR + parts.get(2), Long.parseLong(parts.get(3)), Math::max);
+            } else {
+                LOGGER.warn("Unknown revocation record '{}'", record);
+            }
+        } catch (NumberFormatException e) {
+            LOGGER.warn("Unknown revocation record '{}'", record);
+        }
+    }
+
+    /**
+     * Stores revocation in Redis and notifies other instances
+     */
+    private void share(String entry, long value, long ttl) {
+        byte[] key = (KEY_PREFIX + entry).getBytes(StandardCharsets.UTF_8);
+        byte[] message = (entry + SEPARATOR + value).getBytes(StandardCharsets.UTF_8);
+        try {
+            execute(connection -> {
+                connection.openPipeline();
+                connection.pSetEx(key, ttl, String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+                connection.publish(TOPIC.getTopic().getBytes(StandardCharsets.UTF_8), message);
+                connection.closePipeline();
+            });
+        } catch (Exception e) {
+            LOGGER.error("Unable to share token revocation. It is applied to local instance only", e);
+        }
+    }
+
+    private void purge(long now) {
+        long last = lastPurge.get();
+        if (now - last < PURGE_INTERVAL || !lastPurge.compareAndSet(last, now)) {
+            return;
+        }
+        deniedTokens.entrySet().removeIf(e -> e.getValue() <= now);
+        revokedUsers.entrySet().removeIf(e -> e.getValue() + revocationTtl <= now);
+    }
+
+    private void execute(RedisCallback callback) throws Exception {
+        RedisConnection connection = connectionFactory.getConnection();
+        try {
+            callback.doInRedis(connection);
+        } finally {
+            connection.close();
+        }
+    }
+
+    private static String hash(String tokenValue) {
+        return Hashing.sha256().hashString(tokenValue, StandardCharsets.UTF_8).toString();
+    }
+
+    @FunctionalInterface
+    private interface RedisCallback {
+        void doInRedis(RedisConnection connection) throws Exception;
+    }
+}
@@ -31,6 +31,7 @@ import org.springframework.security.oauth2.provider.OAuth2Authentication;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
@@ -65,4 +66,22 @@ public class AuthUtilsTest {
             }
         });
     }
+
+    @Test
+    public void testMismatchCallbackIsCalledEachTime() {
+        AtomicInteger recovered = new AtomicInteger();
+        for (int i = 0; i < 2; i++) {
+            OAuth2Authentication oauth = AuthUtils.deserializeSafely(BaseEncoding.base64().decode(OAUTH_OBJECT),
+                    (Consumer<OAuth2Authentication>) auth -> recovered.incrementAndGet());
+            Assert.assertEquals("lead-1", oauth.getName());
+        }
+        Assert.assertThat(recovered.get(), Matchers.is(2));
+    }
+
+    @Test
+    public void testNoCallbackWithoutMismatch() {
+        byte[] data = SerializationUtils.serialize(Collections.singletonList("value"));
+        Object deserialized = AuthUtils.deserializeSafely(data, o -> Assert.fail("Callback should not be called"));
+        Assert.assertEquals(Collections.singletonList("value"), deserialized);
+    }
 }
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth;
+
+import com.epam.ta.reportportal.database.dao.UserRepository;
+import com.epam.ta.reportportal.database.entity.user.User;
+import com.epam.ta.reportportal.database.entity.user.UserRole;
+import org.hamcrest.Matchers;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.core.CredentialsContainer;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DatabaseUserDetailsServiceTest {
+
+	private final AtomicInteger lookups = new AtomicInteger();
+	private DatabaseUserDetailsService userDetailsService;
+
+	@Before
+	public void setUp() {
+		UserRepository userRepository = (UserRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class[] { UserRepository.class }, (proxy, method, args) -> {
+					if ("toString".equals(method.getName())) {
+						return UserRepository.class.getSimpleName();
+					}
+					if (!"findOne".equals(method.getName())) {
+						throw new UnsupportedOperationException(method.getName());
+					}
+					lookups.incrementAndGet();
+					if (!"default".equals(args[0])) {
+						return null;
+					}
+					User user = new User();
+					user.setLogin("default");
+					user.setPassword("hash");
+					user.setRole(UserRole.USER);
+					return user;
+				});
+		userDetailsService = new DatabaseUserDetailsService(10, 60);
+		ReflectionTestUtils.setField(userDetailsService, "userRepository", userRepository);
+	}
+
+	@Test
+	public void testUserIsCached() {
+		UserDetails user = userDetailsService.loadUserByUsername("Default");
+		((CredentialsContainer) user).eraseCredentials();
+
+		UserDetails cached = userDetailsService.loadUserByUsername("default");
+		Assert.assertEquals("Erased credentials should not affect cached user", "hash", cached.getPassword());
+		Assert.assertEquals(UserRole.USER.getAuthority(), cached.getAuthorities().iterator().next().getAuthority());
+		Assert.assertThat(lookups.get(), Matchers.is(1));
+	}
+
+	@Test
+	public void testEvict() {
+		userDetailsService.loadUserByUsername("default");
+		Assert.assertTrue(userDetailsService.evict("DEFAULT"));
+		Assert.assertFalse("Not cached user should not be reported as evicted", userDetailsService.evict("default"));
+		userDetailsService.loadUserByUsername("default");
+		Assert.assertThat(lookups.get(), Matchers.is(2));
+	}
+
+	@Test(expected = UsernameNotFoundException.class)
+	public void testNotFound() {
+		userDetailsService.loadUserByUsername("unknown");
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth;
+
+import com.google.common.collect.ImmutableMap;
+import org.hamcrest.Matchers;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.client.BaseClientDetails;
+import org.springframework.security.oauth2.provider.client.InMemoryClientDetailsService;
+import org.springframework.security.oauth2.provider.token.store.InMemoryTokenStore;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+public class TokenServicesFacadeTest {
+
+	private InMemoryTokenStore tokenStore;
+	private ReportPortalTokenServices tokenServices;
+	private TokenServicesFacade facade;
+
+	@Before
+	public void setUp() {
+		BaseClientDetails ui = new BaseClientDetails("ui", null, "ui", "refresh_token,password", null);
+		ui.setAccessTokenValiditySeconds(3600);
+		BaseClientDetails api = new BaseClientDetails("api", null, "api", "password", null);
+		InMemoryClientDetailsService clientDetailsService = new InMemoryClientDetailsService();
+		clientDetailsService.setClientDetailsStore(ImmutableMap.of("ui", ui, "api", api,
+				"internal", new BaseClientDetails("internal", null, "internal", "client_credentials", "ROLE_INTERNAL")));
+
+		tokenStore = new InMemoryTokenStore();
+		tokenServices = new ReportPortalTokenServices();
+		tokenServices.setTokenStore(tokenStore);
+		tokenServices.setClientDetailsService(clientDetailsService);
+		facade = new TokenServicesFacade(tokenServices, tokenStore, clientDetailsService);
+		facade.afterSingletonsInstantiated();
+	}
+
+	@Test
+	public void testRequestBuiltFromTemplate() {
+		OAuth2AccessToken token = facade.createToken(ReportPortalClient.api, "default", userAuthentication("default"));
+		OAuth2Request request = tokenStore.readAuthentication(token).getOAuth2Request();
+		Assert.assertThat(request.getClientId(), Matchers.is("api"));
+		Assert.assertThat(request.getScope(), Matchers.contains("api"));
+		Assert.assertTrue(request.isApproved());
+		Assert.assertThat(request.getRequestParameters(),
+				Matchers.is(ImmutableMap.of("client_id", "api", "username", "default", "grant", "password")));
+		Assert.assertThat(facade.getToken(ReportPortalClient.api, "default", userAuthentication("default")).get(),
+				Matchers.is(token));
+	}
+
+	@Test
+	public void testExtensionsAreNotShared() {
+		Map<String, Serializable> extensions = new HashMap<>();
+		extensions.put("upstream_token", "value");
+		OAuth2AccessToken withExtensions = facade.createToken(ReportPortalClient.ui, "first", userAuthentication("first"),
+				extensions);
+		OAuth2AccessToken withoutExtensions = facade.createToken(ReportPortalClient.ui, "second", userAuthentication("second"));
+
+		OAuth2Authentication first = tokenStore.readAuthentication(withExtensions);
+		Assert.assertThat(first.getOAuth2Request().getExtensions(), Matchers.hasEntry("upstream_token", (Serializable) "value"));
+		Assert.assertThat(first.getOAuth2Request().getExtensions(), Matchers.not(Matchers.sameInstance(extensions)));
+		Assert.assertThat(tokenStore.readAuthentication(withoutExtensions).getOAuth2Request().getExtensions(),
+				Matchers.is(Collections.emptyMap()));
+	}
+
+	@Test
+	public void testReplaceRevokesAllTokensOfClient() {
+		OAuth2AccessToken token = facade.createToken(ReportPortalClient.api, "default", userAuthentication("default"));
+		OAuth2AccessToken otherKey = createTokenWithOtherKey("default");
+		OAuth2AccessToken otherUser = facade.createToken(ReportPortalClient.api, "other", userAuthentication("other"));
+		OAuth2AccessToken otherClient = facade.createToken(ReportPortalClient.ui, "default", userAuthentication("default"));
+
+		OAuth2AccessToken replaced = facade.replaceToken(ReportPortalClient.api, "default", userAuthentication("default"));
+		Assert.assertNull(tokenStore.readAccessToken(token.getValue()));
+		Assert.assertNull(tokenStore.readAccessToken(otherKey.getValue()));
+		Assert.assertThat(facade.getTokens("default", ReportPortalClient.api).collect(Collectors.toList()), Matchers.contains(replaced));
+		Assert.assertNotNull(tokenStore.readAccessToken(otherUser.getValue()));
+		Assert.assertNotNull(tokenStore.readAccessToken(otherClient.getValue()));
+	}
+
+	/*
+	 * Token of the same user and client, but with another authentication key, e.g. issued before
+	 * scopes of the client were changed
+	 */
+	private OAuth2AccessToken createTokenWithOtherKey(String username) {
+		OAuth2Request request = new OAuth2Request(ImmutableMap.of("username", username), "api", Collections.emptyList(), true,
+				Collections.singleton("legacy"), Collections.emptySet(), null, Collections.emptySet(), Collections.emptyMap());
+		return tokenServices.createAccessToken(new OAuth2Authentication(request, userAuthentication(username)));
+	}
+
+	private static UsernamePasswordAuthenticationToken userAuthentication(String username) {
+		User user = new User(username, "", Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER")));
+		return new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities());
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.event;
+
+import com.mongodb.DBObject;
+import org.hamcrest.Matchers;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.lang.reflect.Proxy;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class LastLoginWriterTest {
+
+	private final Map<Object, Object> written = new ConcurrentHashMap<>();
+	private final List<Integer> batches = new CopyOnWriteArrayList<>();
+	private final CountDownLatch executed = new CountDownLatch(1);
+
+	private LastLoginWriter writer;
+
+	@After
+	public void tearDown() {
+		writer.destroy();
+	}
+
+	@Test
+	public void testLoginsOfUserAreCoalesced() {
+		writer = writer(10);
+		Date first = new Date(1000);
+		Date latest = new Date(3000);
+		writer.update("user", first);
+		writer.update("user", latest);
+		writer.update("user", new Date(2000));
+		writer.flush();
+
+		Assert.assertThat(written, Matchers.hasEntry("user", latest));
+		Assert.assertThat("Logins of the same user should be written in one update", batches, Matchers.contains(1));
+		Assert.assertThat(metric("coalesced"), Matchers.is(2L));
+		Assert.assertThat(metric("written"), Matchers.is(1L));
+	}
+
+	@Test
+	public void testBufferIsEmptiedOnFlush() {
+		writer = writer(10);
+		writer.update("first", new Date());
+		writer.update("second", new Date());
+		writer.flush();
+		writer.flush();
+
+		Assert.assertThat(written.keySet(), Matchers.containsInAnyOrder("first", "second"));
+		Assert.assertThat("Empty buffer should not be written", batches, Matchers.contains(2));
+		Assert.assertThat(metric("buffer.size"), Matchers.is(0));
+	}
+
+	@Test
+	public void testLoginIsDroppedIfBufferIsFull() throws InterruptedException {
+		writer = writer(1);
+		writer.update("first", new Date());
+		writer.update("first", new Date());
+		writer.update("second", new Date());
+
+		Assert.assertThat(metric("dropped"), Matchers.is(1L));
+		Assert.assertTrue("Full buffer should be flushed in background", executed.await(5, TimeUnit.SECONDS));
+		Assert.assertThat(written.keySet(), Matchers.contains("first"));
+	}
+
+	private LastLoginWriter writer(int capacity) {
+		MongoOperations mongoOperations = proxy(MongoOperations.class, (method, args) -> {
+			if (!"bulkOps".equals(method)) {
+				throw new UnsupportedOperationException(method);
+			}
+			Map<Object, Object> batch = new ConcurrentHashMap<>();
+			return proxy(BulkOperations.class, (bulkMethod, bulkArgs) -> {
+				switch (bulkMethod) {
+					case "updateOne":
+						batch.put(((Query) bulkArgs[0]).getQueryObject().get("_id"),
+								((DBObject) ((Update) bulkArgs[1]).getUpdateObject().get("$set")).get("metaInfo.lastLogin"));
+						return null;
+					case "execute":
+						written.putAll(batch);
+						batches.add(batch.size());
+						executed.countDown();
+						return null;
+					default:
+						throw new UnsupportedOperationException(bulkMethod);
+				}
+			});
+		});
+		/* scheduled flush does not interfere with tests */
+		return new LastLoginWriter(mongoOperations, capacity, TimeUnit.HOURS.toMillis(1));
+	}
+
+	private Object metric(String name) {
+		return writer.metrics().stream().filter(m -> ("user.last-login." + name).equals(m.getName())).findFirst().get().getValue();
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T proxy(Class<T> type, Handler handler) {
+		return (T) Proxy.newProxyInstance(LastLoginWriterTest.class.getClassLoader(), new Class[] { type },
+				(proxy, method, args) -> "toString".equals(method.getName()) ? type.getSimpleName() : handler.handle(method.getName(), args));
+	}
+
+	private interface Handler {
+		Object handle(String method, Object[] args) throws Exception;
+	}
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.integration.github;
+
+import com.epam.ta.reportportal.database.BinaryData;
+import com.epam.ta.reportportal.database.DataStorage;
+import com.epam.ta.reportportal.database.entity.user.User;
+import com.google.common.io.ByteStreams;
+import com.mongodb.DBObject;
+import com.mongodb.WriteResult;
+import org.hamcrest.Matchers;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+public class GitHubAvatarReplicatorTest {
+
+	private final Map<String, byte[]> photos = new ConcurrentHashMap<>();
+	private final List<String> deleted = new CopyOnWriteArrayList<>();
+	private final AtomicReference<String> userPhoto = new AtomicReference<>();
+	private final AtomicInteger ids = new AtomicInteger();
+	private final AtomicBoolean failUpdate = new AtomicBoolean();
+
+	private GitHubStandIn gitHub;
+	private GitHubClientFactory clientFactory;
+	private GitHubAvatarReplicator avatarReplicator;
+	private String avatarUrl;
+
+	@Before
+	public void setUp() throws IOException {
+		gitHub = new GitHubStandIn();
+		clientFactory = new GitHubClientFactory(gitHub.getUrl(), 1000, 5000, 10, 10, 1024 * 1024, 60, 4, 10, 10, 200, 10);
+		/* avatars are served by another host */
+		avatarUrl = gitHub.getUrl().replace("127.0.0.1", "localhost") + "/avatar";
+
+		DataStorage dataStorage = proxy(DataStorage.class, (method, args) -> {
+			if ("saveData".equals(method)) {
+				String id = "photo" + ids.incrementAndGet();
+				photos.put(id, ByteStreams.toByteArray(((BinaryData) args[0]).getInputStream()));
+				return id;
+			}
+			deleted.add((String) args[0]);
+			return null;
+		});
+		MongoOperations mongoOperations = proxy(MongoOperations.class, (method, args) -> {
+			if ("findOne".equals(method)) {
+				User user = new User();
+				user.setPhotoId(userPhoto.get());
+				return user;
+			}
+			if (failUpdate.getAndSet(false)) {
+				throw new IllegalStateException("Database is not available");
+			}
+			Object expected = ((Query) args[0]).getQueryObject().get("photoId");
+			String photoId = (String) ((DBObject) ((Update) args[1]).getUpdateObject().get("$set")).get("photoId");
+			boolean updated = Objects.equals(expected, userPhoto.get()) && userPhoto.compareAndSet((String) expected, photoId);
+			return new WriteResult(updated ? 1 : 0, updated, null);
+		});
+		avatarReplicator = new GitHubAvatarReplicator(dataStorage, mongoOperations, 10, 1, 3, 50);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		avatarReplicator.destroy();
+		clientFactory.destroy();
+		gitHub.close();
+	}
+
+	@Test
+	public void testAvatarIsReplaced() {
+		userPhoto.set("old");
+		gitHub.respond("/avatar", new GitHubStandIn.Response(200, "image/png", new byte[] { 1, 2, 3 }));
+		Assert.assertTrue(avatarReplicator.submit("octocat", avatarUrl, clientFactory.withAccessToken("token")));
+		await(() -> 1L == (long) metric("stored"));
+
+		Assert.assertThat(photos.get(userPhoto.get()), Matchers.is(new byte[] { 1, 2, 3 }));
+		Assert.assertThat(deleted, Matchers.contains("old"));
+		Assert.assertThat(metric("queue"), Matchers.is(0));
+	}
+
+	@Test
+	public void testNotModifiedAvatarIsSkipped() {
+		gitHub.respond("/avatar", new GitHubStandIn.Response(200, "image/png", new byte[] { 1, 2, 3 }).header("ETag", "\"v1\""));
+		avatarReplicator.submit("octocat", avatarUrl, clientFactory.withAccessToken("token"));
+		await(() -> 1L == (long) metric("stored"));
+
+		avatarReplicator.submit("octocat", avatarUrl, clientFactory.withAccessToken("token"));
+		await(() -> 1L == (long) metric("unchanged"));
+		Assert.assertThat(gitHub.getRequests().get(1).headers.getFirst("If-None-Match"), Matchers.is("\"v1\""));
+		Assert.assertThat(photos.size(), Matchers.is(1));
+	}
+
+	@Test
+	public void testSameImageIsSkipped() {
+		gitHub.respond("/avatar", new GitHubStandIn.Response(200, "image/png", new byte[] { 1, 2, 3 }));
+		avatarReplicator.submit("octocat", avatarUrl, clientFactory.withAccessToken("token"));
+		await(() -> 1L == (long) metric("stored"));
+		String photo = userPhoto.get();
+
+		avatarReplicator.submit("octocat", avatarUrl, clientFactory.withAccessToken("token"));
+		await(() -> 1L == (long) metric("unchanged"));
+		Assert.assertThat("Photo of user should stay the same", userPhoto.get(), Matchers.is(photo));
+		Assert.assertThat(deleted, Matchers.not(Matchers.hasItem(photo)));
+	}
+
+	@Test
+	public void testFailedReplicationIsRetried() {
+		gitHub.respond("/avatar", new GitHubStandIn.Response(500, "text/plain", new byte[0]));
+		avatarReplicator.submit("octocat", avatarUrl, clientFactory.withAccessToken("token"));
+		await(() -> 1L == gitHub.count("/avatar"));
+		gitHub.respond("/avatar", new GitHubStandIn.Response(200, "image/png", new byte[] { 1 }));
+
+		await(() -> 1L == (long) metric("stored"));
+		Assert.assertThat((long) metric("retried"), Matchers.greaterThanOrEqualTo(1L));
+		Assert.assertThat(metric("failed"), Matchers.is(0L));
+	}
+
+	@Test
+	public void testPhotoIsDeletedIfUserIsNotUpdated() {
+		failUpdate.set(true);
+		gitHub.respond("/avatar", new GitHubStandIn.Response(200, "image/png", new byte[] { 1 }));
+		avatarReplicator.submit("octocat", avatarUrl, clientFactory.withAccessToken("token"));
+
+		await(() -> 1L == (long) metric("stored"));
+		Assert.assertThat(userPhoto.get(), Matchers.is("photo2"));
+		Assert.assertThat("Photo of failed attempt should be deleted", deleted, Matchers.contains("photo1"));
+	}
+
+	@Test
+	public void testPendingAvatarsAreCoalesced() {
+		gitHub.respond("/avatar", new GitHubStandIn.Response(200, "image/png", new byte[] { 1 }).delay(200));
+		for (int i = 0; i < 5; i++) {
+			avatarReplicator.submit("octocat", avatarUrl, clientFactory.withAccessToken("token"));
+		}
+		await(() -> 1L == (long) metric("stored"));
+		Assert.assertThat(metric("submitted"), Matchers.is(1L));
+		Assert.assertThat(metric("coalesced"), Matchers.is(4L));
+	}
+
+	private Object metric(String name) {
+		return avatarReplicator.metrics().stream().filter(m -> ("github.avatar." + name).equals(m.getName())).findFirst().get()
+				.getValue();
+	}
+
+	private static void await(BooleanSupplier condition) {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (!condition.getAsBoolean()) {
+			Assert.assertTrue("Condition is not met in time", System.nanoTime() < deadline);
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T proxy(Class<T> type, Handler handler) {
+		return (T) Proxy.newProxyInstance(GitHubAvatarReplicatorTest.class.getClassLoader(), new Class[] { type },
+				(proxy, method, args) -> "toString".equals(method.getName()) ? type.getSimpleName() : handler.handle(method.getName(), args));
+	}
+
+	private interface Handler {
+		Object handle(String method, Object[] args) throws Exception;
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.integration.github;
+
+import org.hamcrest.Matchers;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class GitHubClientTest {
+
+	private GitHubStandIn gitHub;
+	private GitHubClientFactory clientFactory;
+
+	@Before
+	public void setUp() throws IOException {
+		gitHub = new GitHubStandIn();
+		gitHub.respond("/user", "{\"login\":\"octocat\",\"name\":\"The Octocat\",\"organizations_url\":\"" + gitHub.getUrl()
+				+ "/users/octocat/orgs\"}");
+		gitHub.respond("/users/octocat/orgs", "[{\"login\":\"github\"}]");
+		gitHub.respond("/user/emails", "[{\"email\":\"octocat@github.com\",\"verified\":true,\"primary\":true}]");
+		clientFactory = new GitHubClientFactory(gitHub.getUrl(), 1000, 500, 10, 10, 1024 * 1024, 60, 4, 10, 10, 200, 10);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		clientFactory.destroy();
+		gitHub.close();
+	}
+
+	@Test
+	public void testTokenIsAppliedPerRequest() {
+		Assert.assertThat(clientFactory.withAccessToken("first").getUser().login, Matchers.is("octocat"));
+		Assert.assertThat(clientFactory.withAccessToken("second").getUserEmails().get(0).getEmail(), Matchers.is("octocat@github.com"));
+
+		List<String> authorizations = gitHub.getRequests().stream().map(rq -> rq.headers.getFirst("Authorization"))
+				.collect(Collectors.toList());
+		Assert.assertThat(authorizations, Matchers.contains("bearer first", "bearer second"));
+	}
+
+	@Test
+	public void testConnectionIsReused() {
+		for (int i = 0; i < 5; i++) {
+			GitHubClient client = clientFactory.withAccessToken("token" + i);
+			UserResource user = client.getUser();
+			client.getUserOrganizations(user);
+		}
+		Assert.assertThat(gitHub.getRequests(), Matchers.hasSize(10));
+		Assert.assertThat("All requests should go through single keep-alive connection",
+				gitHub.getRequests().stream().map(rq -> rq.port).distinct().count(), Matchers.is(1L));
+		Assert.assertThat(metric("leased"), Matchers.is(0));
+		Assert.assertThat(metric("available"), Matchers.is(1));
+	}
+
+	@Test(expected = AuthenticationServiceException.class)
+	public void testErrorResponse() {
+		gitHub.respond("/user", new GitHubStandIn.Response(403, "application/json", "{}".getBytes()));
+		clientFactory.withAccessToken("token").getUser();
+	}
+
+	@Test(expected = ResourceAccessException.class)
+	public void testReadTimeout() {
+		gitHub.respond("/user", new GitHubStandIn.Response(200, "application/json", "{}".getBytes()).delay(2000));
+		clientFactory.withAccessToken("token").getUser();
+	}
+
+	@Test
+	public void testNotModifiedResponseIsServedFromCache() {
+		gitHub.respond("/user", GitHubStandIn.json("{\"login\":\"octocat\"}").header("ETag", "\"v1\"")
+				.header("X-RateLimit-Remaining", "4999"));
+		Assert.assertThat(clientFactory.withAccessToken("token").getUser().login, Matchers.is("octocat"));
+
+		gitHub.respond("/user", GitHubStandIn.json("{\"login\":\"octocat\"}").header("ETag", "\"v1\"")
+				.header("X-RateLimit-Remaining", "4998"));
+		Assert.assertThat(clientFactory.withAccessToken("token").getUser().login, Matchers.is("octocat"));
+		Assert.assertThat(gitHub.getRequests().get(1).headers.getFirst("If-None-Match"), Matchers.is("\"v1\""));
+		Assert.assertThat(metric("github.cache.revalidated"), Matchers.is(1L));
+		Assert.assertThat(metric("github.cache.hit"), Matchers.is(1L));
+		Assert.assertThat(metric("github.pool.leased"), Matchers.is(0));
+
+		Assert.assertThat(clientFactory.withAccessToken("other").getUser().login, Matchers.is("octocat"));
+		Assert.assertNull("Responses of other tokens should not be used", gitHub.getRequests().get(2).headers.getFirst("If-None-Match"));
+	}
+
+	@Test
+	public void testChangedResponseReplacesCached() {
+		gitHub.respond("/user", GitHubStandIn.json("{\"login\":\"octocat\",\"name\":\"Old\"}").header("ETag", "\"v1\""));
+		Assert.assertThat(clientFactory.withAccessToken("token").getUser().name, Matchers.is("Old"));
+		gitHub.respond("/user", GitHubStandIn.json("{\"login\":\"octocat\",\"name\":\"New\"}").header("ETag", "\"v2\""));
+		Assert.assertThat(clientFactory.withAccessToken("token").getUser().name, Matchers.is("New"));
+		Assert.assertThat(clientFactory.withAccessToken("token").getUser().name, Matchers.is("New"));
+		Assert.assertThat(metric("github.cache.stored"), Matchers.is(2L));
+		Assert.assertThat(metric("github.cache.hit"), Matchers.is(1L));
+	}
+
+	private Object metric(String name) {
+		String fullName = name.startsWith("github.") ? name : "github.pool." + name;
+		return clientFactory.metrics().stream().filter(m -> fullName.equals(m.getName())).findFirst().get().getValue();
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.integration.github;
+
+import org.hamcrest.Matchers;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+public class GitHubRateLimiterTest {
+
+	private GitHubStandIn gitHub;
+	private GitHubClientFactory clientFactory;
+
+	@Before
+	public void setUp() throws IOException {
+		gitHub = new GitHubStandIn();
+		clientFactory = new GitHubClientFactory(gitHub.getUrl(), 1000, 5000, 10, 10, 1024 * 1024, 60, 4, 10, 10, 3000, 10);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		clientFactory.destroy();
+		gitHub.close();
+	}
+
+	@Test
+	public void testReserveIsKeptForInteractiveCalls() {
+		gitHub.respond("/user", user().header("X-RateLimit-Remaining", "5").header("X-RateLimit-Reset", reset(3600)));
+		GitHubClient client = clientFactory.withAccessToken("token");
+		client.getUser();
+		client.getUser();
+		try {
+			client.background().getUser();
+			Assert.fail("Background call should not use reserved budget");
+		} catch (GitHubRateLimitException e) {
+			Assert.assertThat(gitHub.count("/user"), Matchers.is(2L));
+			Assert.assertThat(metric("github.rate-limit.rejected"), Matchers.is(1L));
+			/* budget is decremented by each call, server reports the same value here */
+			Assert.assertThat(metric("github.rate-limit.remaining.min"), Matchers.is(4L));
+		}
+		clientFactory.withAccessToken("other").background().getUser();
+		Assert.assertThat("Budgets of tokens are independent", gitHub.count("/user"), Matchers.is(3L));
+	}
+
+	@Test
+	public void testCachedResponseIsServedWhenBudgetIsExhausted() {
+		gitHub.respond("/user", user().header("ETag", "\"v1\"").header("X-RateLimit-Remaining", "0").header("X-RateLimit-Reset", reset(3600)));
+		GitHubClient client = clientFactory.withAccessToken("token");
+		client.getUser();
+		Assert.assertThat(client.background().getUser().login, Matchers.is("octocat"));
+		Assert.assertThat(gitHub.count("/user"), Matchers.is(1L));
+		Assert.assertThat(metric("github.cache.stale"), Matchers.is(1L));
+	}
+
+	@Test
+	public void testCachedResponseIsNotServedToInteractiveCall() {
+		gitHub.respond("/user", user().header("ETag", "\"v1\"").header("X-RateLimit-Remaining", "0").header("X-RateLimit-Reset", reset(3600)));
+		GitHubClient client = clientFactory.withAccessToken("token");
+		client.getUser();
+		try {
+			client.getUser();
+			Assert.fail("Login should not be based on stale data");
+		} catch (GitHubRateLimitException e) {
+			Assert.assertThat(metric("github.cache.stale"), Matchers.is(0L));
+		}
+	}
+
+	@Test(expected = GitHubRateLimitException.class)
+	public void testCachedOrganizationsAreNotServed() {
+		gitHub.respond("/user/orgs", GitHubStandIn.json("[{\"login\":\"github\"}]").header("ETag", "\"v1\"")
+				.header("X-RateLimit-Remaining", "0").header("X-RateLimit-Reset", reset(3600)));
+		GitHubClient client = clientFactory.withAccessToken("token");
+		client.getUserOrganizations();
+		client.background().getUserOrganizations();
+	}
+
+	@Test(expected = GitHubRateLimitException.class)
+	public void testInteractiveCallIsRejectedWhenBudgetIsExhausted() {
+		gitHub.respond("/user", user().header("X-RateLimit-Remaining", "0").header("X-RateLimit-Reset", reset(3600)));
+		GitHubClient client = clientFactory.withAccessToken("token");
+		client.getUser();
+		client.getUser();
+	}
+
+	@Test
+	public void testBackgroundCallWaitsForReset() {
+		gitHub.respond("/user", user().header("X-RateLimit-Remaining", "0").header("X-RateLimit-Reset", reset(1)));
+		GitHubClient client = clientFactory.withAccessToken("token");
+		client.getUser();
+		client.background().getUser();
+		Assert.assertThat(gitHub.count("/user"), Matchers.is(2L));
+		Assert.assertThat(metric("github.rate-limit.delayed"), Matchers.is(1L));
+		Assert.assertThat(metric("github.rate-limit.queue"), Matchers.is(0));
+	}
+
+	@Test(expected = GitHubRateLimitException.class)
+	public void testExceededRateLimitIsReported() {
+		gitHub.respond("/user", new GitHubStandIn.Response(403, "application/json", "{}".getBytes()).header("X-RateLimit-Remaining", "0")
+				.header("X-RateLimit-Reset", reset(3600)));
+		clientFactory.withAccessToken("token").getUser();
+	}
+
+	private static GitHubStandIn.Response user() {
+		return GitHubStandIn.json("{\"login\":\"octocat\"}");
+	}
+
+	private static String reset(long seconds) {
+		return String.valueOf(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + seconds);
+	}
+
+	private Object metric(String name) {
+		return clientFactory.metrics().stream().filter(m -> name.equals(m.getName())).findFirst().get().getValue();
+	}
+}
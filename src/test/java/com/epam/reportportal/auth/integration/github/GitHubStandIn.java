@@ -0,0 +1,155 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.integration.github;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Local stand-in of GitHub API. Serves canned responses and records requests
+ */
+class GitHubStandIn implements AutoCloseable {
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final Map<String, Response> responses = new ConcurrentHashMap<>();
+	private final List<Request> requests = new CopyOnWriteArrayList<>();
+
+	GitHubStandIn() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		executor = Executors.newCachedThreadPool();
+		server.setExecutor(executor);
+		server.createContext("/", this::handle);
+		server.start();
+	}
+
+	String getUrl() {
+		return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+	}
+
+	GitHubStandIn respond(String path, String json) {
+		return respond(path, json(json));
+	}
+
+	GitHubStandIn respond(String path, Response response) {
+		responses.put(path, response);
+		return this;
+	}
+
+	List<Request> getRequests() {
+		return requests;
+	}
+
+	long count(String path) {
+		return requests.stream().filter(rq -> path.equals(rq.path)).count();
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		String path = exchange.getRequestURI().getPath();
+		requests.add(new Request(path, exchange.getRequestHeaders(), exchange.getRemoteAddress().getPort()));
+		Response response = responses.get(path);
+		try {
+			if (null == response) {
+				exchange.sendResponseHeaders(404, -1);
+				return;
+			}
+			if (response.delay > 0) {
+				Thread.sleep(response.delay);
+			}
+			response.headers.forEach((name, value) -> exchange.getResponseHeaders().add(name, value));
+			String etag = response.headers.get("ETag");
+			if (null != etag && etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+				exchange.sendResponseHeaders(304, -1);
+				return;
+			}
+			exchange.getResponseHeaders().add("Content-Type", response.contentType);
+			exchange.sendResponseHeaders(response.status, response.body.length == 0 ? -1 : response.body.length);
+			if (response.body.length > 0) {
+				try (OutputStream body = exchange.getResponseBody()) {
+					body.write(response.body);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			exchange.close();
+		}
+	}
+
+	static Response json(String json) {
+		return new Response(200, "application/json", json.getBytes(StandardCharsets.UTF_8));
+	}
+
+	static class Response {
+		final int status;
+		final String contentType;
+		final byte[] body;
+		final Map<String, String> headers = new ConcurrentHashMap<>();
+		long delay;
+
+		Response(int status, String contentType, byte[] body) {
+			this.status = status;
+			this.contentType = contentType;
+			this.body = body;
+		}
+
+		Response header(String name, String value) {
+			headers.put(name, value);
+			return this;
+		}
+
+		Response delay(long millis) {
+			this.delay = millis;
+			return this;
+		}
+	}
+
+	static class Request {
+		final String path;
+		final Headers headers;
+		final int port;
+
+		Request(String path, Headers headers, int port) {
+			this.path = path;
+			this.headers = headers;
+			this.port = port;
+		}
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.integration.github;
+
+import com.epam.ta.reportportal.database.dao.UserRepository;
+import com.epam.ta.reportportal.database.entity.settings.OAuth2LoginDetails;
+import com.epam.ta.reportportal.database.entity.user.User;
+import com.epam.ta.reportportal.database.entity.user.UserRole;
+import com.epam.ta.reportportal.database.entity.user.UserType;
+import com.google.common.collect.ImmutableMap;
+import org.hamcrest.Matchers;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class GitHubTokenServicesTest {
+
+	private static final long DELAY = 300;
+
+	private GitHubStandIn gitHub;
+	private GitHubClientFactory clientFactory;
+	private GitHubUserReplicator replicator;
+
+	@Before
+	public void setUp() throws IOException {
+		gitHub = new GitHubStandIn();
+		gitHub.respond("/user", GitHubStandIn.json("{\"login\":\"octocat\"}").delay(DELAY));
+		gitHub.respond("/user/orgs", GitHubStandIn.json("[{\"login\":\"github\"}]").delay(DELAY));
+		gitHub.respond("/user/emails", GitHubStandIn.json("[]").delay(DELAY));
+		clientFactory = new GitHubClientFactory(gitHub.getUrl(), 1000, 5000, 10, 10, 1024 * 1024, 60, 4, 10, 10, 200, 10);
+
+		UserRepository userRepository = (UserRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class[] { UserRepository.class }, (proxy, method, args) -> {
+					if ("toString".equals(method.getName())) {
+						return UserRepository.class.getSimpleName();
+					}
+					if (!"findOne".equals(method.getName())) {
+						throw new UnsupportedOperationException(method.getName());
+					}
+					User user = new User();
+					user.setLogin(args[0].toString());
+					user.setType(UserType.GITHUB);
+					user.setRole(UserRole.USER);
+					return user;
+				});
+		replicator = new GitHubUserReplicator(userRepository, null, null, null, clientFactory, null);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		clientFactory.destroy();
+		gitHub.close();
+	}
+
+	@Test
+	public void testCallsAreConcurrent() {
+		long start = System.nanoTime();
+		OAuth2Authentication authentication = tokenServices("github", 5000).loadAuthentication("token");
+		long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+		Assert.assertNotNull(authentication);
+		Assert.assertThat(authentication.getOAuth2Request().getExtensions().get("upstream_token"), Matchers.is("token"));
+		Assert.assertThat("Calls should not be executed one by one", duration, Matchers.lessThan(DELAY * 3));
+		Assert.assertThat(gitHub.count("/user"), Matchers.is(1L));
+		Assert.assertThat(gitHub.count("/user/orgs"), Matchers.is(1L));
+		Assert.assertThat("Emails of replicated user should not be requested", gitHub.count("/user/emails"), Matchers.is(0L));
+		Assert.assertThat(metric("github.call.user.count"), Matchers.is(1L));
+		Assert.assertThat(metric("github.call.user.orgs.count"), Matchers.is(1L));
+	}
+
+	@Test(expected = GitHubTokenServices.InsufficientOrganizationException.class)
+	public void testUserNotInOrganization() {
+		tokenServices("epam", 5000).loadAuthentication("token");
+	}
+
+	@Test
+	public void testDeadline() {
+		gitHub.respond("/user", GitHubStandIn.json("{\"login\":\"octocat\"}").delay(2000));
+		long start = System.nanoTime();
+		try {
+			tokenServices("github", DELAY).loadAuthentication("token");
+			Assert.fail("Login should not wait for GitHub longer than deadline");
+		} catch (AuthenticationServiceException e) {
+			Assert.assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), Matchers.lessThan(1000L));
+		}
+	}
+
+	private GitHubTokenServices tokenServices(String organizations, long timeout) {
+		OAuth2LoginDetails loginDetails = new OAuth2LoginDetails() {
+			@Override
+			public Map<String, String> getRestrictions() {
+				return ImmutableMap.of("organizations", organizations);
+			}
+		};
+		return new GitHubTokenServices(replicator, clientFactory, () -> loginDetails, timeout);
+	}
+
+	private Object metric(String name) {
+		return clientFactory.metrics().stream().filter(m -> name.equals(m.getName())).findFirst().get().getValue();
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.limiter;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.concurrent.TimeUnit;
+
+public class RedisAttemptLimiterTest {
+
+	private RedisServer redisServer;
+	private JedisConnectionFactory connectionFactory;
+
+	@Before
+	public void startRedis() throws IOException {
+		int port;
+		try (ServerSocket socket = new ServerSocket(0)) {
+			port = socket.getLocalPort();
+		}
+		redisServer = new RedisServer(port);
+		redisServer.start();
+
+		connectionFactory = new JedisConnectionFactory();
+		connectionFactory.setPort(port);
+		connectionFactory.setTimeout(500);
+		connectionFactory.afterPropertiesSet();
+	}
+
+	@After
+	public void stopRedis() {
+		connectionFactory.destroy();
+		redisServer.stop();
+	}
+
+	@Test
+	public void testFailuresAreShared() {
+		RedisAttemptLimiter first = limiter();
+		RedisAttemptLimiter second = limiter();
+		first.recordFailure("ip:127.0.0.1");
+		second.recordFailure("ip:127.0.0.1");
+		first.recordFailure("ip:127.0.0.1");
+		Assert.assertFalse(second.isBlocked("ip:127.0.0.1"));
+
+		second.recordFailure("ip:127.0.0.1");
+		Assert.assertTrue("Failures of all instances should be counted", first.isBlocked("ip:127.0.0.1"));
+		Assert.assertTrue(second.isBlocked("ip:127.0.0.1"));
+		Assert.assertFalse(first.isBlocked("ip:127.0.0.2"));
+	}
+
+	@Test
+	public void testLocalCountingWhenRedisIsDown() {
+		RedisAttemptLimiter limiter = limiter();
+		redisServer.stop();
+		for (int i = 0; i < 4; i++) {
+			limiter.recordFailure("user:default");
+		}
+		Assert.assertTrue("Local failures should be counted without Redis", limiter.isBlocked("user:default"));
+		Assert.assertFalse(limiter.isBlocked("user:other"));
+	}
+
+	@Test
+	public void testSourceWithoutLocalFailuresIsReadInBackground() throws InterruptedException {
+		RedisAttemptLimiter first = limiter(0);
+		RedisAttemptLimiter second = limiter(60000);
+		for (int i = 0; i < 4; i++) {
+			first.recordFailure("ip:127.0.0.1");
+		}
+		Assert.assertFalse("Source without local failures should be checked without waiting for Redis", second.isBlocked("ip:127.0.0.1"));
+
+		long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+		while (!second.isBlocked("ip:127.0.0.1")) {
+			Assert.assertTrue("Shared counters should be read in background", System.currentTimeMillis() < deadline);
+			TimeUnit.MILLISECONDS.sleep(10);
+		}
+	}
+
+	private RedisAttemptLimiter limiter() {
+		return limiter(0);
+	}
+
+	private RedisAttemptLimiter limiter(long cacheMillis) {
+		return new RedisAttemptLimiter("ui", new SlidingWindowLimiter(new AttemptPolicy(3, 30), 1000), connectionFactory, 1000, cacheMillis);
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.limiter;
+
+import com.google.common.base.Ticker;
+import org.hamcrest.Matchers;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SlidingWindowLimiterTest {
+
+	private final AtomicLong time = new AtomicLong();
+	private final Ticker ticker = new Ticker() {
+		@Override
+		public long read() {
+			return time.get();
+		}
+	};
+
+	@Test
+	public void testBlockedAfterMaxAttempts() {
+		SlidingWindowLimiter limiter = new SlidingWindowLimiter(new AttemptPolicy(3, 30), 100, 4, ticker);
+		for (int i = 0; i < 3; i++) {
+			limiter.recordFailure("127.0.0.1");
+			Assert.assertFalse(limiter.isBlocked("127.0.0.1"));
+		}
+		limiter.recordFailure("127.0.0.1");
+		Assert.assertTrue(limiter.isBlocked("127.0.0.1"));
+		Assert.assertFalse(limiter.isBlocked("127.0.0.2"));
+	}
+
+	@Test
+	public void testWindowSlides() {
+		SlidingWindowLimiter limiter = new SlidingWindowLimiter(new AttemptPolicy(3, 30), 100, 4, ticker);
+		for (int i = 0; i < 4; i++) {
+			limiter.recordFailure("127.0.0.1");
+		}
+		advance(45);
+		Assert.assertThat("Half of previous window is still counted", limiter.getAttempts("127.0.0.1"), Matchers.closeTo(2, 0.01));
+		Assert.assertFalse(limiter.isBlocked("127.0.0.1"));
+
+		limiter.recordFailure("127.0.0.1");
+		limiter.recordFailure("127.0.0.1");
+		Assert.assertTrue(limiter.isBlocked("127.0.0.1"));
+
+		advance(60);
+		Assert.assertThat(limiter.getAttempts("127.0.0.1"), Matchers.is(0d));
+	}
+
+	@Test
+	public void testMemoryIsBounded() {
+		SlidingWindowLimiter limiter = new SlidingWindowLimiter(new AttemptPolicy(3, 30), 1000, 16, ticker);
+		for (int i = 0; i < 100_000; i++) {
+			limiter.recordFailure(ip(i));
+		}
+		Assert.assertThat(limiter.size(), Matchers.lessThanOrEqualTo(1000L));
+	}
+
+	@Test
+	public void testBlockedSourceSurvivesFlood() {
+		SlidingWindowLimiter limiter = new SlidingWindowLimiter(new AttemptPolicy(3, 30), 10_000, 64, ticker);
+		for (int i = 0; i < 5; i++) {
+			limiter.recordFailure("10.0.0.1");
+		}
+		for (int i = 0; i < 100_000; i++) {
+			limiter.recordFailure(ip(i));
+		}
+		Assert.assertTrue("Flood of new sources should not unblock blocked one", limiter.isBlocked("10.0.0.1"));
+	}
+
+	@Test
+	public void testExpiredSourcesAreRemovedFirst() {
+		SlidingWindowLimiter limiter = new SlidingWindowLimiter(new AttemptPolicy(3, 30), 2, 1, ticker);
+		limiter.recordFailure("expired");
+		advance(61);
+		limiter.recordFailure("first");
+		limiter.recordFailure("second");
+		Assert.assertThat(limiter.size(), Matchers.is(2L));
+		Assert.assertThat(limiter.getAttempts("first"), Matchers.is(1d));
+		Assert.assertThat(metric(limiter, "evicted"), Matchers.is(0L));
+	}
+
+	private void advance(long seconds) {
+		time.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+	}
+
+	private static String ip(int i) {
+		return "192." + (i >>> 16 & 0xFF) + "." + (i >>> 8 & 0xFF) + "." + (i & 0xFF);
+	}
+
+	private static Object metric(SlidingWindowLimiter limiter, String name) {
+		return limiter.metrics("").stream().filter(m -> name.equals(m.getName())).findFirst().get().getValue();
+	}
+}
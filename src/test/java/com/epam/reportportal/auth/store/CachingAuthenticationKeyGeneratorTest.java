@@ -0,0 +1,64 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.store;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.DefaultAuthenticationKeyGenerator;
+
+import java.util.Collections;
+import java.util.Set;
+
+public class CachingAuthenticationKeyGeneratorTest {
+
+	private final DefaultAuthenticationKeyGenerator defaultGenerator = new DefaultAuthenticationKeyGenerator();
+	private final CachingAuthenticationKeyGenerator cachingGenerator = new CachingAuthenticationKeyGenerator(10);
+
+	@Test
+	public void testSameKeysAsDefault() {
+		for (OAuth2Authentication authentication : new OAuth2Authentication[] { authentication("user", "ui", ImmutableSet.of("ui")),
+				authentication("user", "api", ImmutableSet.of("api")), authentication("other", "ui", ImmutableSet.of("ui")),
+				authentication("user", "ui", ImmutableSet.of("ui", "api")), authentication("user", "ui", Collections.emptySet()),
+				authentication(null, "ui", ImmutableSet.of("ui")) }) {
+			// twice to check cached value as well
+			for (int i = 0; i < 2; i++) {
+				Assert.assertEquals(defaultGenerator.extractKey(authentication), cachingGenerator.extractKey(authentication));
+			}
+		}
+	}
+
+	@Test
+	public void testScopeOrderDoesNotMatter() {
+		Assert.assertEquals(cachingGenerator.extractKey(authentication("user", "ui", ImmutableSet.of("ui", "api"))),
+				cachingGenerator.extractKey(authentication("user", "ui", ImmutableSet.of("api", "ui"))));
+	}
+
+	private static OAuth2Authentication authentication(String user, String client, Set<String> scope) {
+		OAuth2Request request = new OAuth2Request(ImmutableMap.of(), client, Collections.emptyList(), true, scope,
+				Collections.emptySet(), null, Collections.emptySet(), Collections.emptyMap());
+		return new OAuth2Authentication(request, null == user ? null : new UsernamePasswordAuthenticationToken(user, null));
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.store;
+
+import com.epam.reportportal.auth.store.codec.BinaryTokenCodec;
+import com.epam.reportportal.auth.store.codec.TokenCodec;
+import com.epam.reportportal.auth.store.entity.OAuth2AccessTokenEntity;
+import com.mongodb.DBObject;
+import org.hamcrest.Matchers;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ExpiredTokensSweeperTest {
+
+	private final TokenCodec tokenCodec = new BinaryTokenCodec();
+	private final List<Object> removed = new ArrayList<>();
+	private final Map<Object, Object> backfilled = new HashMap<>();
+
+	@Test
+	public void testTokensAreSwept() {
+		DefaultOAuth2AccessToken expired = new DefaultOAuth2AccessToken("expired");
+		expired.setExpiration(new Date(System.currentTimeMillis() - 1000));
+		Date expiration = new Date(System.currentTimeMillis() + 1000);
+		DefaultOAuth2AccessToken valid = new DefaultOAuth2AccessToken("valid");
+		valid.setExpiration(expiration);
+
+		ExpiredTokensSweeper sweeper = sweeper(Arrays.asList(entity(expired), entity(valid), entity(new DefaultOAuth2AccessToken("never"))));
+		sweeper.sweep();
+
+		Assert.assertThat(removed, Matchers.contains("expired"));
+		Assert.assertThat(backfilled, Matchers.hasEntry("valid", expiration));
+		Assert.assertTrue("Non-expiring token should be marked with explicit null", backfilled.containsKey("never"));
+		Assert.assertNull(backfilled.get("never"));
+	}
+
+	@Test
+	public void testUnreadableTokenIsSkipped() {
+		OAuth2AccessTokenEntity unreadable = new OAuth2AccessTokenEntity();
+		unreadable.setTokenId("unreadable");
+		unreadable.setToken(new byte[] { 1, 2, 3 });
+
+		ExpiredTokensSweeper sweeper = sweeper(Collections.singletonList(unreadable));
+		sweeper.sweep();
+
+		Assert.assertThat(removed, Matchers.empty());
+		Assert.assertThat(backfilled.size(), Matchers.is(0));
+		Assert.assertThat(sweeper.metrics().stream().filter(m -> "token.sweeper.skipped".equals(m.getName())).findFirst().get().getValue(),
+				Matchers.is(1L));
+	}
+
+	private ExpiredTokensSweeper sweeper(List<OAuth2AccessTokenEntity> legacy) {
+		BulkOperations operations = proxy(BulkOperations.class, (method, args) -> {
+			switch (method) {
+				case "remove":
+					removed.add(((Query) args[0]).getQueryObject().get("_id"));
+					break;
+				case "updateOne":
+					backfilled.put(((Query) args[0]).getQueryObject().get("_id"),
+							((DBObject) ((Update) args[1]).getUpdateObject().get("$set")).get("expiresAt"));
+					break;
+				case "execute":
+					Assert.assertFalse("Empty bulk should not be executed", removed.isEmpty() && backfilled.isEmpty());
+					return null;
+				default:
+					throw new UnsupportedOperationException(method);
+			}
+			return null;
+		});
+		MongoOperations mongoOperations = proxy(MongoOperations.class, (method, args) -> {
+			switch (method) {
+				case "find":
+					return OAuth2AccessTokenEntity.class.equals(args[1]) ? legacy : Collections.emptyList();
+				case "bulkOps":
+					return operations;
+				default:
+					throw new UnsupportedOperationException(method);
+			}
+		});
+		return new ExpiredTokensSweeper(mongoOperations, tokenCodec, 10, 0);
+	}
+
+	private OAuth2AccessTokenEntity entity(DefaultOAuth2AccessToken token) {
+		OAuth2AccessTokenEntity entity = new OAuth2AccessTokenEntity();
+		entity.setTokenId(token.getValue());
+		entity.setToken(tokenCodec.encodeAccessToken(token));
+		return entity;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T proxy(Class<T> type, Handler handler) {
+		return (T) Proxy.newProxyInstance(ExpiredTokensSweeperTest.class.getClassLoader(), new Class[] { type },
+				(proxy, method, args) -> "toString".equals(method.getName()) ? type.getSimpleName() : handler.handle(method.getName(), args));
+	}
+
+	private interface Handler {
+		Object handle(String method, Object[] args) throws Exception;
+	}
+}
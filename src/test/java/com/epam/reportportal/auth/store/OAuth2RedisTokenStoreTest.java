@@ -0,0 +1,296 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.store;
+
+import com.epam.reportportal.auth.ReportPortalTokenServices;
+import com.epam.reportportal.auth.store.codec.BinaryTokenCodec;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.hamcrest.Matchers;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class OAuth2RedisTokenStoreTest {
+
+	private static RedisServer redisServer;
+	private static JedisConnectionFactory connectionFactory;
+
+	private OAuth2RedisTokenStore tokenStore;
+
+	@BeforeClass
+	public static void startRedis() throws IOException {
+		int port;
+		try (ServerSocket socket = new ServerSocket(0)) {
+			port = socket.getLocalPort();
+		}
+		redisServer = new RedisServer(port);
+		redisServer.start();
+
+		connectionFactory = new JedisConnectionFactory();
+		connectionFactory.setPort(port);
+		connectionFactory.afterPropertiesSet();
+	}
+
+	@AfterClass
+	public static void stopRedis() {
+		connectionFactory.destroy();
+		redisServer.stop();
+	}
+
+	@Before
+	public void setUp() {
+		tokenStore = new OAuth2RedisTokenStore(connectionFactory, new BinaryTokenCodec());
+	}
+
+	@After
+	public void cleanUp() {
+		RedisConnection connection = connectionFactory.getConnection();
+		connection.flushDb();
+		connection.close();
+	}
+
+	@Test
+	public void testStoreAndRead() {
+		OAuth2AccessToken token = token("token", TimeUnit.MINUTES.toMillis(30));
+		OAuth2Authentication authentication = authentication("user", "ui");
+		tokenStore.storeAccessToken(token, authentication);
+
+		Assert.assertEquals(token, tokenStore.readAccessToken("token"));
+		Assert.assertEquals("user", tokenStore.readAuthentication("token").getName());
+		Assert.assertEquals(token, tokenStore.getAccessToken(authentication));
+		Assert.assertThat(tokenStore.findTokensByClientIdAndUserName("ui", "user"), Matchers.contains(token));
+		Assert.assertThat(tokenStore.findTokensByClientId("ui"), Matchers.contains(token));
+		Assert.assertThat(tokenStore.findTokensByClientIdAndUserName("api", "user"), Matchers.empty());
+	}
+
+	@Test
+	public void testNativeExpiration() {
+		tokenStore.storeAccessToken(token("token", TimeUnit.MINUTES.toMillis(30)), authentication("user", "ui"));
+		tokenStore.storeAccessToken(token("api-token", -1), authentication("user", "api"));
+
+		Assert.assertThat(ttl("rp:oauth:access:token"), Matchers.allOf(Matchers.greaterThan(1700L), Matchers.lessThanOrEqualTo(1800L)));
+		Assert.assertThat(ttl("rp:oauth:auth:token"), Matchers.greaterThan(1700L));
+		Assert.assertThat("Non-expiring token should be persistent", ttl("rp:oauth:access:api-token"), Matchers.is(-1L));
+	}
+
+	@Test
+	public void testLookupSetsExpire() {
+		tokenStore.storeAccessToken(token("token", TimeUnit.MINUTES.toMillis(30)), authentication("user", "ui"));
+		tokenStore.storeAccessToken(token("api-token", -1), authentication("user", "api"));
+
+		Assert.assertThat(ttl("rp:oauth:uname_to_access:ui:user"),
+				Matchers.allOf(Matchers.greaterThan(1700L), Matchers.lessThanOrEqualTo(1800L)));
+		Assert.assertThat(ttl("rp:oauth:client_id_to_access:ui"), Matchers.greaterThan(1700L));
+		Assert.assertThat("Sets of non-expiring tokens should be persistent", ttl("rp:oauth:uname_to_access:api:user"), Matchers.is(-1L));
+		Assert.assertThat(ttl("rp:oauth:client_id_to_access:api"), Matchers.is(-1L));
+
+		tokenStore.storeAccessToken(token("next-token", TimeUnit.MINUTES.toMillis(60)), authentication("user", "ui"));
+		Assert.assertThat("Sets should live as long as the latest token", ttl("rp:oauth:uname_to_access:ui:user"),
+				Matchers.greaterThan(3500L));
+	}
+
+	@Test
+	public void testRemoveAccessToken() {
+		OAuth2AccessToken token = token("token", TimeUnit.MINUTES.toMillis(30));
+		OAuth2Authentication authentication = authentication("user", "ui");
+		tokenStore.storeAccessToken(token, authentication);
+		tokenStore.removeAccessToken(token);
+
+		Assert.assertNull(tokenStore.readAccessToken("token"));
+		Assert.assertNull(tokenStore.readAuthentication("token"));
+		Assert.assertNull(tokenStore.getAccessToken(authentication));
+		Assert.assertThat(tokenStore.findTokensByClientIdAndUserName("ui", "user"), Matchers.empty());
+	}
+
+	@Test
+	public void testRefreshToken() {
+		DefaultOAuth2AccessToken token = token("token", TimeUnit.MINUTES.toMillis(30));
+		DefaultExpiringOAuth2RefreshToken refreshToken = new DefaultExpiringOAuth2RefreshToken("refresh",
+				new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1)));
+		token.setRefreshToken(refreshToken);
+		OAuth2Authentication authentication = authentication("user", "ui");
+
+		tokenStore.storeAccessToken(token, authentication);
+		tokenStore.storeRefreshToken(refreshToken, authentication);
+
+		Assert.assertEquals(refreshToken, tokenStore.readRefreshToken("refresh"));
+		Assert.assertEquals("user", tokenStore.readAuthenticationForRefreshToken(refreshToken).getName());
+
+		tokenStore.removeAccessTokenUsingRefreshToken(refreshToken);
+		Assert.assertNull(tokenStore.readAccessToken("token"));
+
+		tokenStore.removeRefreshToken(refreshToken);
+		Assert.assertNull(tokenStore.readRefreshToken("refresh"));
+	}
+
+	@Test
+	public void testRemoveUserTokens() {
+		DefaultOAuth2AccessToken uiToken = token("ui-token", TimeUnit.MINUTES.toMillis(30));
+		DefaultExpiringOAuth2RefreshToken refreshToken = new DefaultExpiringOAuth2RefreshToken("refresh",
+				new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1)));
+		uiToken.setRefreshToken(refreshToken);
+		OAuth2Authentication uiAuthentication = authentication("user", "ui");
+		tokenStore.storeAccessToken(uiToken, uiAuthentication);
+		tokenStore.storeRefreshToken(refreshToken, uiAuthentication);
+		tokenStore.storeAccessToken(token("api-token", -1), authentication("user", "api"));
+		OAuth2AccessToken otherToken = token("other-token", TimeUnit.MINUTES.toMillis(30));
+		tokenStore.storeAccessToken(otherToken, authentication("other", "ui"));
+
+		Assert.assertThat(tokenStore.removeUserTokens("user", Arrays.asList("ui", "api", "internal")), Matchers.is(2));
+
+		Assert.assertNull(tokenStore.readAccessToken("ui-token"));
+		Assert.assertNull(tokenStore.readAccessToken("api-token"));
+		Assert.assertNull(tokenStore.readRefreshToken("refresh"));
+		Assert.assertNull(tokenStore.getAccessToken(uiAuthentication));
+		Assert.assertThat(tokenStore.findTokensByClientId("ui"), Matchers.contains(otherToken));
+		Assert.assertThat(tokenStore.findTokensByClientId("api"), Matchers.empty());
+		Assert.assertThat(tokenStore.removeUserTokens("user", Collections.singleton("ui")), Matchers.is(0));
+		Assert.assertThat(members("rp:oauth:uname_to_access:ui:user"), Matchers.is(0L));
+		Assert.assertThat(members("rp:oauth:client_id_to_access:ui"), Matchers.is(1L));
+		Assert.assertThat(members("rp:oauth:client_id_to_access:api"), Matchers.is(0L));
+	}
+
+	@Test
+	public void testExpiredLookupEntriesAreCleaned() {
+		tokenStore.storeAccessToken(token("token", TimeUnit.MINUTES.toMillis(30)), authentication("user", "ui"));
+		RedisConnection connection = connectionFactory.getConnection();
+		connection.del("rp:oauth:access:token".getBytes(StandardCharsets.UTF_8));
+		connection.close();
+
+		Assert.assertThat(tokenStore.findTokensByClientIdAndUserName("ui", "user"), Matchers.empty());
+		connection = connectionFactory.getConnection();
+		Assert.assertThat(connection.sCard("rp:oauth:uname_to_access:ui:user".getBytes(StandardCharsets.UTF_8)), Matchers.is(0L));
+		connection.close();
+	}
+
+	/*
+	 * Reads api token the same way GET /sso/me/apitoken does while token is rotated. Reader may find no token
+	 * between removal and issuance, but never gets token of another key removed by the first rotation
+	 */
+	@Test
+	public void testApiTokenIsReadDuringRotation() throws Exception {
+		ReportPortalTokenServices tokenServices = new ReportPortalTokenServices();
+		tokenServices.setTokenStore(tokenStore);
+		OAuth2Authentication authentication = authentication("user", "api");
+		tokenStore.storeAccessToken(token("other-key", -1), authentication("user", "api", "legacy"));
+		tokenServices.createAccessToken(authentication);
+
+		Set<String> issued = ConcurrentHashMap.newKeySet();
+		issued.add(tokenServices.replaceAccessToken(authentication).getValue());
+		Assert.assertNull(tokenStore.readAccessToken("other-key"));
+
+		Set<String> read = ConcurrentHashMap.newKeySet();
+		AtomicBoolean rotating = new AtomicBoolean(true);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<?> reader = executor.submit(() -> {
+				while (rotating.get()) {
+					OAuth2AccessToken token = tokenServices.getAccessToken(authentication);
+					if (null == token) {
+						token = tokenStore.findTokensByClientIdAndUserName("api", "user").stream().findAny().orElse(null);
+					}
+					if (null != token) {
+						read.add(token.getValue());
+					}
+				}
+			});
+			OAuth2AccessToken last = null;
+			for (int i = 0; i < 200; i++) {
+				last = tokenServices.replaceAccessToken(authentication);
+				issued.add(last.getValue());
+			}
+			rotating.set(false);
+			reader.get(10, TimeUnit.SECONDS);
+
+			Assert.assertThat(read, Matchers.not(Matchers.hasItem("other-key")));
+			Assert.assertTrue("Only rotated tokens should be read", issued.containsAll(read));
+			Assert.assertEquals(last, tokenServices.getAccessToken(authentication));
+			Assert.assertThat(tokenStore.findTokensByClientIdAndUserName("api", "user"), Matchers.contains(last));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static long members(String key) {
+		RedisConnection connection = connectionFactory.getConnection();
+		try {
+			return connection.sCard(key.getBytes(StandardCharsets.UTF_8));
+		} finally {
+			connection.close();
+		}
+	}
+
+	private static long ttl(String key) {
+		RedisConnection connection = connectionFactory.getConnection();
+		try {
+			return connection.ttl(key.getBytes(StandardCharsets.UTF_8));
+		} finally {
+			connection.close();
+		}
+	}
+
+	private static DefaultOAuth2AccessToken token(String value, long validity) {
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(value);
+		if (validity > 0) {
+			token.setExpiration(new Date(System.currentTimeMillis() + validity));
+		}
+		return token;
+	}
+
+	private static OAuth2Authentication authentication(String user, String client) {
+		return authentication(user, client, client);
+	}
+
+	private static OAuth2Authentication authentication(String user, String client, String scope) {
+		OAuth2Request request = new OAuth2Request(ImmutableMap.of("username", user), client, Collections.emptyList(), true,
+				ImmutableSet.of(scope), Collections.emptySet(), null, Collections.emptySet(), Collections.emptyMap());
+		return new OAuth2Authentication(request,
+				new UsernamePasswordAuthenticationToken(user, null, Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER"))));
+	}
+}
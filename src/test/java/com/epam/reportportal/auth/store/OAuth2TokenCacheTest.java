@@ -0,0 +1,269 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.store;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.hamcrest.Matchers;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+public class OAuth2TokenCacheTest {
+
+	@Test
+	public void testLoadedOnce() {
+		OAuth2TokenCache cache = new OAuth2TokenCache(10, 60);
+		AtomicInteger loads = new AtomicInteger();
+
+		for (int i = 0; i < 3; i++) {
+			OAuth2AccessToken token = cache.getAccessToken("token", id -> {
+				loads.incrementAndGet();
+				return new DefaultOAuth2AccessToken(id);
+			});
+			Assert.assertEquals("token", token.getValue());
+		}
+		Assert.assertThat("Token should be loaded only once", loads.get(), Matchers.is(1));
+		Assert.assertThat(metric(cache, "cache.oauth.token.hit"), Matchers.is(2L));
+		Assert.assertThat(metric(cache, "cache.oauth.token.miss"), Matchers.is(1L));
+	}
+
+	@Test
+	public void testNullsAreNotCached() {
+		OAuth2TokenCache cache = new OAuth2TokenCache(10, 60);
+		Assert.assertNull(cache.getAccessToken("token", id -> null));
+		Assert.assertNotNull(cache.getAccessToken("token", DefaultOAuth2AccessToken::new));
+	}
+
+	@Test
+	public void testEvict() {
+		OAuth2TokenCache cache = new OAuth2TokenCache(10, 60);
+		cache.getAccessToken("token", DefaultOAuth2AccessToken::new);
+		cache.evict("token");
+		Assert.assertNull(cache.getAccessToken("token", id -> null));
+	}
+
+	@Test
+	public void testSizeEviction() {
+		OAuth2TokenCache cache = new OAuth2TokenCache(1, 60);
+		cache.getAccessToken("first", DefaultOAuth2AccessToken::new);
+		cache.getAccessToken("second", DefaultOAuth2AccessToken::new);
+		Assert.assertThat(metric(cache, "cache.oauth.token.eviction"), Matchers.is(1L));
+	}
+
+	@Test
+	public void testNotFoundTokenIsRejectedWithoutLookup() {
+		OAuth2TokenCache cache = new OAuth2TokenCache(10, 60, 60);
+		AtomicInteger loads = new AtomicInteger();
+		for (int i = 0; i < 3; i++) {
+			Assert.assertNull(cache.getAccessToken("invalid", id -> {
+				loads.incrementAndGet();
+				return null;
+			}));
+		}
+		Assert.assertThat("Not found token should be looked up once", loads.get(), Matchers.is(1));
+		Assert.assertThat(metric(cache, "cache.oauth.negative.rejected"), Matchers.is(2L));
+	}
+
+	@Test
+	public void testStoredTokenIsNotRejected() {
+		OAuth2TokenCache cache = new OAuth2TokenCache(10, 60, 60);
+		Assert.assertNull(cache.getAccessToken("token", id -> null));
+		cache.evict("token");
+		Assert.assertNotNull(cache.getAccessToken("token", DefaultOAuth2AccessToken::new));
+	}
+
+	@Test
+	public void testMissingTokenDoesNotHideAuthentication() {
+		OAuth2TokenCache cache = new OAuth2TokenCache(10, 60, 60);
+		Assert.assertNull(cache.getAccessToken("token", id -> null));
+		Assert.assertNotNull(cache.getAuthentication("token", id -> authentication()));
+	}
+
+	@Test
+	public void testEvictionIsBroadcasted() throws InterruptedException {
+		List<byte[]> published = new CopyOnWriteArrayList<>();
+		RedisConnection connection = proxy(RedisConnection.class, (method, args) -> {
+			if ("publish".equals(method)) {
+				published.add((byte[]) args[1]);
+			}
+			return null;
+		});
+		RedisConnectionFactory connectionFactory = proxy(RedisConnectionFactory.class, (method, args) -> connection);
+		OAuth2TokenCache local = new OAuth2TokenCache(10, 60, 60, connectionFactory);
+		OAuth2TokenCache remote = new OAuth2TokenCache(10, 60, 60, connectionFactory);
+		for (OAuth2TokenCache cache : Arrays.asList(local, remote)) {
+			cache.getAccessToken("first", DefaultOAuth2AccessToken::new);
+			cache.getAccessToken("second", DefaultOAuth2AccessToken::new);
+			cache.getTokenId("key", key -> "first");
+		}
+
+		local.evict(Arrays.asList("first", "second"));
+		local.evictAuthenticationKey("key");
+		await(() -> published.size() == 2);
+		for (byte[] message : published) {
+			DefaultMessage received = new DefaultMessage(OAuth2TokenCache.TOPIC.getTopic().getBytes(), message);
+			local.onMessage(received, null);
+			remote.onMessage(received, null);
+		}
+
+		Assert.assertNull(remote.getAccessToken("first", id -> null));
+		Assert.assertNull(remote.getAccessToken("second", id -> null));
+		Assert.assertNull(remote.getTokenId("key", key -> null));
+		Assert.assertThat(metric(remote, "cache.oauth.eviction.received"), Matchers.is(2L));
+		Assert.assertThat("Own evictions should not be applied twice", metric(local, "cache.oauth.eviction.received"),
+				Matchers.is(0L));
+		local.destroy();
+		remote.destroy();
+	}
+
+	@Test
+	public void testEvictionIsLocalIfRedisIsNotAvailable() throws InterruptedException {
+		RedisConnectionFactory connectionFactory = proxy(RedisConnectionFactory.class, (method, args) -> {
+			throw new IllegalStateException("Redis is not available");
+		});
+		OAuth2TokenCache cache = new OAuth2TokenCache(10, 60, 60, connectionFactory);
+		cache.getAccessToken("token", DefaultOAuth2AccessToken::new);
+		cache.evict("token");
+		Assert.assertNull("Token should be evicted locally", cache.getAccessToken("token", id -> null));
+		await(() -> 1L == metric(cache, "cache.oauth.eviction.unshared").longValue());
+		cache.destroy();
+	}
+
+	@Test
+	public void testTokenIdByAuthenticationKey() {
+		OAuth2TokenCache cache = new OAuth2TokenCache(10, 60, 60);
+		Assert.assertNull(cache.getTokenId("key", key -> null));
+		Assert.assertEquals("token", cache.getTokenId("key", key -> "token"));
+		Assert.assertEquals("token", cache.getTokenId("key", key -> "other"));
+
+		cache.evictAuthenticationKey("key");
+		Assert.assertEquals("other", cache.getTokenId("key", key -> "other"));
+		Assert.assertThat(metric(cache, "cache.oauth.key.hit"), Matchers.is(1L));
+	}
+
+	@Test
+	public void testConcurrentMissesShareLoad() throws Exception {
+		OAuth2TokenCache cache = new OAuth2TokenCache(10, 60, 60);
+		AtomicInteger loads = new AtomicInteger();
+		CountDownLatch loading = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<OAuth2AccessToken>> results = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				results.add(executor.submit(() -> cache.getAccessToken("token", id -> {
+					loads.incrementAndGet();
+					Uninterruptibles.awaitUninterruptibly(loading);
+					return new DefaultOAuth2AccessToken(id);
+				})));
+			}
+			TimeUnit.MILLISECONDS.sleep(200);
+			loading.countDown();
+			for (Future<OAuth2AccessToken> result : results) {
+				Assert.assertEquals("token", result.get(5, TimeUnit.SECONDS).getValue());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		Assert.assertThat("Concurrent misses should share one load", loads.get(), Matchers.is(1));
+	}
+
+	@Test
+	public void testConcurrentNotFoundMissesShareLoad() throws Exception {
+		OAuth2TokenCache cache = new OAuth2TokenCache(10, 60, 60);
+		AtomicInteger loads = new AtomicInteger();
+		CountDownLatch loading = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<OAuth2AccessToken>> results = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				results.add(executor.submit(() -> cache.getAccessToken("invalid", id -> {
+					loads.incrementAndGet();
+					Uninterruptibles.awaitUninterruptibly(loading);
+					return null;
+				})));
+			}
+			TimeUnit.MILLISECONDS.sleep(200);
+			loading.countDown();
+			for (Future<OAuth2AccessToken> result : results) {
+				Assert.assertNull(result.get(5, TimeUnit.SECONDS));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		Assert.assertThat(loads.get(), Matchers.is(1));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testLoadFailureIsPropagated() {
+		new OAuth2TokenCache(10, 60).getAccessToken("token", id -> {
+			throw new IllegalArgumentException();
+		});
+	}
+
+	private static void await(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+		while (!condition.getAsBoolean()) {
+			Assert.assertTrue("Condition is not met in time", System.currentTimeMillis() < deadline);
+			TimeUnit.MILLISECONDS.sleep(10);
+		}
+	}
+
+	private static OAuth2Authentication authentication() {
+		OAuth2Request request = new OAuth2Request(Collections.emptyMap(), "ui", Collections.emptyList(), true, Collections.singleton("ui"),
+				Collections.emptySet(), null, Collections.emptySet(), Collections.emptyMap());
+		return new OAuth2Authentication(request, null);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T proxy(Class<T> type, Handler handler) {
+		return (T) Proxy.newProxyInstance(OAuth2TokenCacheTest.class.getClassLoader(), new Class[] { type },
+				(proxy, method, args) -> "toString".equals(method.getName()) ? type.getSimpleName() : handler.handle(method.getName(), args));
+	}
+
+	private interface Handler {
+		Object handle(String method, Object[] args) throws Exception;
+	}
+
+	private static Number metric(OAuth2TokenCache cache, String name) {
+		return cache.metrics().stream().filter(m -> name.equals(m.getName())).findFirst().map(Metric::getValue).orElse(null);
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.store;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.WriteResult;
+import org.hamcrest.Matchers;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.IndexOperations;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class TokenIndexVerifierTest {
+
+	private final AtomicReference<Aggregation> aggregation = new AtomicReference<>();
+	private final AtomicReference<Query> removed = new AtomicReference<>();
+
+	@Test
+	public void testTokenWithoutExpirationIsKept() {
+		Date never = new Date(Long.MAX_VALUE);
+		DBObject group = new BasicDBObject("_id", "authentication").append("ids", Arrays.asList("dated", "without-expiration"))
+				.append("ranks", Arrays.asList(new Date(), never))
+				.append("count", 2);
+		verify(Collections.singletonList(group));
+
+		Assert.assertThat("Missing expiration should be ranked as the latest one", aggregation.get().toString(),
+				Matchers.containsString("$ifNull"));
+		Assert.assertThat(removedIds(), Matchers.contains("dated"));
+	}
+
+	@Test
+	public void testTokenWhichExpiresLastIsKept() {
+		long now = System.currentTimeMillis();
+		DBObject group = new BasicDBObject("_id", "authentication").append("ids", Arrays.asList("older", "latest", "oldest"))
+				.append("ranks", Arrays.asList(new Date(now), new Date(now + 1000), new Date(now - 1000)))
+				.append("count", 3);
+		verify(Collections.singletonList(group));
+
+		Assert.assertThat(removedIds(), Matchers.containsInAnyOrder("older", "oldest"));
+	}
+
+	private void verify(List<DBObject> duplicates) {
+		IndexOperations indexOperations = proxy(IndexOperations.class, (method, args) -> "getIndexInfo".equals(method) ?
+				Collections.emptyList() :
+				null);
+		MongoOperations mongoOperations = proxy(MongoOperations.class, (method, args) -> {
+			switch (method) {
+				case "indexOps":
+					return indexOperations;
+				case "aggregate":
+					aggregation.set((Aggregation) args[0]);
+					return new AggregationResults<>(duplicates, new BasicDBObject());
+				case "remove":
+					removed.set((Query) args[0]);
+					return new WriteResult(duplicates.size(), false, null);
+				default:
+					throw new UnsupportedOperationException(method);
+			}
+		});
+		new TokenIndexVerifier(mongoOperations, new MongoMappingContext(), true).afterPropertiesSet();
+	}
+
+	private List<?> removedIds() {
+		return (List<?>) ((DBObject) removed.get().getQueryObject().get("_id")).get("$in");
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T proxy(Class<T> type, Handler handler) {
+		return (T) Proxy.newProxyInstance(TokenIndexVerifierTest.class.getClassLoader(), new Class[] { type },
+				(proxy, method, args) -> "toString".equals(method.getName()) ? type.getSimpleName() : handler.handle(method.getName(), args));
+	}
+
+	private interface Handler {
+		Object handle(String method, Object[] args) throws Exception;
+	}
+}
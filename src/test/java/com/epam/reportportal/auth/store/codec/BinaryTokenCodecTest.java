@@ -0,0 +1,135 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.store.codec;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.hamcrest.Matchers;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.ExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.common.util.SerializationUtils;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+
+import java.util.Collections;
+import java.util.Date;
+
+public class BinaryTokenCodecTest {
+
+	private final TokenCodec codec = new BinaryTokenCodec();
+
+	@Test
+	public void testAccessTokenRoundTrip() {
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("token");
+		token.setExpiration(new Date(1000L));
+		token.setScope(Collections.singleton("ui"));
+		token.setRefreshToken(new DefaultExpiringOAuth2RefreshToken("refresh", new Date(2000L)));
+
+		OAuth2AccessToken decoded = codec.decodeAccessToken(codec.encodeAccessToken(token));
+		Assert.assertEquals(token, decoded);
+		Assert.assertEquals(token.getExpiration(), decoded.getExpiration());
+		Assert.assertEquals(token.getScope(), decoded.getScope());
+		Assert.assertEquals(token.getTokenType(), decoded.getTokenType());
+		Assert.assertEquals(new Date(2000L), ((ExpiringOAuth2RefreshToken) decoded.getRefreshToken()).getExpiration());
+	}
+
+	@Test
+	public void testRefreshTokenRoundTrip() {
+		OAuth2RefreshToken token = new DefaultExpiringOAuth2RefreshToken("refresh", new Date(2000L));
+		OAuth2RefreshToken decoded = codec.decodeRefreshToken(codec.encodeRefreshToken(token));
+		Assert.assertEquals(token, decoded);
+		Assert.assertEquals(new Date(2000L), ((ExpiringOAuth2RefreshToken) decoded).getExpiration());
+	}
+
+	@Test
+	public void testAuthenticationRoundTrip() {
+		OAuth2Authentication authentication = authentication();
+		byte[] encoded = codec.encodeAuthentication(authentication);
+		OAuth2Authentication decoded = codec.decodeAuthentication(encoded, null);
+
+		Assert.assertEquals(authentication.getName(), decoded.getName());
+		Assert.assertEquals(authentication.getAuthorities(), decoded.getAuthorities());
+		Assert.assertEquals(authentication.getOAuth2Request(), decoded.getOAuth2Request());
+		Assert.assertEquals(authentication.getUserAuthentication().getDetails(), decoded.getUserAuthentication().getDetails());
+		Assert.assertEquals(authentication.getPrincipal(), decoded.getPrincipal());
+		Assert.assertTrue(decoded.isAuthenticated());
+
+		Assert.assertThat("Binary format should be more compact", encoded.length,
+				Matchers.lessThan(SerializationUtils.serialize(authentication).length / 2));
+	}
+
+	@Test
+	public void testLegacyFormat() {
+		OAuth2Authentication authentication = authentication();
+		OAuth2Authentication decoded = codec.decodeAuthentication(SerializationUtils.serialize(authentication), null);
+		Assert.assertEquals(authentication.getName(), decoded.getName());
+
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("token");
+		Assert.assertEquals(token, codec.decodeAccessToken(SerializationUtils.serialize(token)));
+	}
+
+	@Test
+	public void testUnsupportedContentFallsBackToJavaSerialization() {
+		OAuth2Authentication authentication = new OAuth2Authentication(request(), new TestingAuthenticationToken("user", "N/A"));
+		byte[] encoded = codec.encodeAuthentication(authentication);
+		Assert.assertTrue(JavaSerializationTokenCodec.isSerialized(encoded));
+		Assert.assertEquals("user", codec.decodeAuthentication(encoded, null).getName());
+	}
+
+	@Test
+	public void testLongStringFallsBackToJavaSerialization() {
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(Strings.repeat("x", 70000));
+		byte[] encoded = codec.encodeAccessToken(token);
+		Assert.assertTrue(JavaSerializationTokenCodec.isSerialized(encoded));
+		Assert.assertEquals(token, codec.decodeAccessToken(encoded));
+
+		User user = new User(Strings.repeat("u", 70000), "", Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER")));
+		OAuth2Authentication authentication = new OAuth2Authentication(request(),
+				new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities()));
+		encoded = codec.encodeAuthentication(authentication);
+		Assert.assertTrue(JavaSerializationTokenCodec.isSerialized(encoded));
+		Assert.assertEquals(user.getUsername(), codec.decodeAuthentication(encoded, null).getName());
+	}
+
+	private static OAuth2Authentication authentication() {
+		User user = new User("default", "", Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER")));
+		user.eraseCredentials();
+		UsernamePasswordAuthenticationToken userAuth = new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities());
+		userAuth.setDetails(ImmutableMap.of("grant_type", "password", "username", "default"));
+		return new OAuth2Authentication(request(), userAuth);
+	}
+
+	private static OAuth2Request request() {
+		return new OAuth2Request(ImmutableMap.of("grant_type", "password", "username", "default"), "ui", Collections.emptyList(), true,
+				ImmutableSet.of("ui"), Collections.emptySet(), null, Collections.emptySet(),
+				ImmutableMap.of("upstream_token", "github"));
+	}
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2016 EPAM Systems
+ *
+ *
+ * This file is part of EPAM Report Portal.
+ * https://github.com/reportportal/service-authorization
+ *
+ * Report Portal is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Report Portal is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Report Portal.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.epam.reportportal.auth.store.jwt;
+
+import com.epam.reportportal.auth.ReportPortalTokenServices;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.security.authentication.ProviderManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetailsByNameServiceWrapper;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.oauth2.common.ExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidGrantException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.TokenRequest;
+import org.springframework.security.oauth2.provider.token.store.InMemoryTokenStore;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationProvider;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SignedTokenStoreTest {
+
+	private static RedisServer redisServer;
+	private static JedisConnectionFactory connectionFactory;
+
+	private InMemoryTokenStore opaqueTokens;
+	private TokenDenyList denyList;
+	private SignedTokenStore tokenStore;
+	private ReportPortalTokenServices tokenServices;
+	private final AtomicInteger decodes = new AtomicInteger();
+
+	@BeforeClass
+	public static void startRedis() throws IOException {
+		int port;
+		try (ServerSocket socket = new ServerSocket(0)) {
+			port = socket.getLocalPort();
+		}
+		redisServer = new RedisServer(port);
+		redisServer.start();
+
+		connectionFactory = new JedisConnectionFactory();
+		connectionFactory.setPort(port);
+		connectionFactory.afterPropertiesSet();
+	}
+
+	@AfterClass
+	public static void stopRedis() {
+		connectionFactory.destroy();
+		redisServer.stop();
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		RedisConnection connection = connectionFactory.getConnection();
+		connection.flushDb();
+		connection.close();
+
+		SignedTokenConverter converter = new SignedTokenConverter(Collections.singleton("api")) {
+			@Override
+			protected Map<String, Object> decode(String token) {
+				decodes.incrementAndGet();
+				return super.decode(token);
+			}
+		};
+		converter.setSigningKey("secret");
+		converter.afterPropertiesSet();
+
+		opaqueTokens = new InMemoryTokenStore();
+		denyList = new TokenDenyList(connectionFactory, 1800);
+		tokenStore = new SignedTokenStore(opaqueTokens, converter, denyList);
+
+		tokenServices = new ReportPortalTokenServices();
+		tokenServices.setTokenStore(tokenStore);
+		tokenServices.setTokenEnhancer(converter);
+		tokenServices.setSupportRefreshToken(true);
+		tokenServices.afterPropertiesSet();
+	}
+
+	@Test
+	public void testSignedTokenIsNotStored() {
+		OAuth2AccessToken token = tokenServices.createAccessToken(authentication("user", "ui"));
+		Assert.assertTrue(SignedTokenConverter.isSigned(token.getValue()));
+		Assert.assertEquals(0, opaqueTokens.getAccessTokenCount());
+
+		OAuth2Authentication authentication = tokenServices.loadAuthentication(token.getValue());
+		Assert.assertEquals("user", authentication.getName());
+		Assert.assertEquals("ui", authentication.getOAuth2Request().getClientId());
+	}
+
+	@Test
+	public void testOpaqueClient() {
+		OAuth2AccessToken token = tokenServices.createAccessToken(authentication("user", "api"));
+		Assert.assertFalse(SignedTokenConverter.isSigned(token.getValue()));
+		Assert.assertEquals(1, opaqueTokens.getAccessTokenCount());
+		Assert.assertEquals("user", tokenServices.loadAuthentication(token.getValue()).getName());
+	}
+
+	@Test
+	public void testOpaqueTokenIsReused() {
+		OAuth2AccessToken token = tokenServices.createAccessToken(authentication("user", "api"));
+		Assert.assertEquals(token, tokenServices.createAccessToken(authentication("user", "api")));
+		Assert.assertEquals(1, opaqueTokens.getAccessTokenCount());
+
+		tokenServices.revokeToken(token.getValue());
+		Assert.assertNotEquals(token, tokenServices.createAccessToken(authentication("user", "api")));
+		Assert.assertEquals(1, opaqueTokens.getAccessTokenCount());
+	}
+
+	@Test
+	public void testOpaqueTokenIsReplaced() {
+		OAuth2AccessToken token = tokenServices.createAccessToken(authentication("user", "api"));
+		OAuth2AccessToken replaced = tokenServices.replaceAccessToken(authentication("user", "api"));
+		Assert.assertNotEquals(token, replaced);
+		Assert.assertEquals(1, opaqueTokens.getAccessTokenCount());
+		Assert.assertNull(tokenStore.readAccessToken(token.getValue()));
+		Assert.assertEquals(replaced, tokenStore.getAccessToken(authentication("user", "api")));
+	}
+
+	@Test
+	public void testSignedTokenIsReplaced() throws InterruptedException {
+		OAuth2AccessToken token = tokenServices.createAccessToken(authentication("user", "ui"));
+		TimeUnit.MILLISECONDS.sleep(5);
+		OAuth2AccessToken replaced = tokenServices.replaceAccessToken(authentication("user", "ui"));
+		Assert.assertNull(tokenStore.readAccessToken(token.getValue()));
+		Assert.assertNotNull(tokenStore.readAccessToken(replaced.getValue()));
+	}
+
+	@Test
+	public void testSignedRefreshFlow() {
+		OAuth2AccessToken token = tokenServices.createAccessToken(authentication("user", "ui"));
+		OAuth2AccessToken refreshed = tokenServices.refreshAccessToken(token.getRefreshToken().getValue(), refreshRequest("ui"));
+		Assert.assertNotEquals(token.getValue(), refreshed.getValue());
+		Assert.assertEquals("user", tokenServices.loadAuthentication(refreshed.getValue()).getName());
+	}
+
+	@Test
+	public void testOpaqueRefreshFlow() throws Exception {
+		useOpaqueClients("api", "ui");
+		OAuth2AccessToken token = tokenServices.createAccessToken(authentication("user", "ui"));
+		Assert.assertFalse(SignedTokenConverter.isSigned(token.getValue()));
+
+		OAuth2AccessToken refreshed = tokenServices.refreshAccessToken(token.getRefreshToken().getValue(), refreshRequest("ui"));
+		Assert.assertNotEquals(token.getValue(), refreshed.getValue());
+		Assert.assertEquals(token.getRefreshToken(), refreshed.getRefreshToken());
+		Assert.assertEquals(1, opaqueTokens.getAccessTokenCount());
+		Assert.assertEquals(1, opaqueTokens.getRefreshTokenCount());
+		Assert.assertNull(opaqueTokens.readAccessToken(token.getValue()));
+		Assert.assertEquals("user", tokenServices.loadAuthentication(refreshed.getValue()).getName());
+	}
+
+	@Test(expected = InvalidGrantException.class)
+	public void testRefreshWithWrongClient() {
+		OAuth2AccessToken token = tokenServices.createAccessToken(authentication("user", "ui"));
+		tokenServices.refreshAccessToken(token.getRefreshToken().getValue(), refreshRequest("api"));
+	}
+
+	@Test(expected = InvalidGrantException.class)
+	public void testRefreshWithRevokedToken() throws Exception {
+		useOpaqueClients("api", "ui");
+		OAuth2AccessToken token = tokenServices.createAccessToken(authentication("user", "ui"));
+		tokenServices.revokeToken(token.getValue());
+		tokenServices.refreshAccessToken(token.getRefreshToken().getValue(), refreshRequest("ui"));
+	}
+
+	@Test
+	public void testRevokedRefreshTokenIsDeniedTillExpiration() throws Exception {
+		denyList = new TokenDenyList(connectionFactory, 0);
+		useOpaqueClients("api");
+		OAuth2AccessToken token = tokenServices.createAccessToken(authentication("user", "ui"));
+		OAuth2RefreshToken refreshToken = tokenStore.readRefreshToken(token.getRefreshToken().getValue());
+		Assert.assertTrue(refreshToken instanceof ExpiringOAuth2RefreshToken);
+
+		tokenStore.removeRefreshToken(refreshToken);
+		Assert.assertTrue(denyList.isDenied(refreshToken.getValue()));
+		Assert.assertNull(tokenStore.readRefreshToken(refreshToken.getValue()));
+	}
+
+	@Test(expected = UsernameNotFoundException.class)
+	public void testRemovedUserCannotRefresh() {
+		PreAuthenticatedAuthenticationProvider provider = new PreAuthenticatedAuthenticationProvider();
+		provider.setPreAuthenticatedUserDetailsService(new UserDetailsByNameServiceWrapper<>(username -> {
+			throw new UsernameNotFoundException(username);
+		}));
+		tokenServices.setAuthenticationManager(new ProviderManager(Collections.singletonList(provider)));
+
+		OAuth2AccessToken token = tokenServices.createAccessToken(authentication("user", "ui"));
+		tokenServices.refreshAccessToken(token.getRefreshToken().getValue(), refreshRequest("ui"));
+	}
+
+	@Test
+	public void testRevokeToken() {
+		OAuth2AccessToken token = tokenServices.createAccessToken(authentication("user", "ui"));
+		Assert.assertTrue(tokenServices.revokeToken(token.getValue()));
+		Assert.assertNull(tokenStore.readAccessToken(token.getValue()));
+	}
+
+	@Test
+	public void testRevokeUserTokens() throws InterruptedException {
+		OAuth2AccessToken revoked = tokenServices.createAccessToken(authentication("user", "ui"));
+		OAuth2AccessToken other = tokenServices.createAccessToken(authentication("other", "ui"));
+		tokenStore.removeUserTokens("user", Collections.singleton("ui"));
+		TimeUnit.MILLISECONDS.sleep(5);
+		OAuth2AccessToken issuedAfter = tokenServices.createAccessToken(authentication("user", "ui"));
+
+		Assert.assertNull(tokenStore.readAccessToken(revoked.getValue()));
+		Assert.assertNotNull(tokenStore.readAccessToken(other.getValue()));
+		Assert.assertNotNull(tokenStore.readAccessToken(issuedAfter.getValue()));
+	}
+
+	@Test
+	public void testTokenIsDecodedOncePerRead() {
+		OAuth2AccessToken token = tokenServices.createAccessToken(authentication("user", "ui"));
+		tokenStore.removeUserTokens("other", Collections.singleton("ui"));
+		decodes.set(0);
+
+		Assert.assertNotNull(tokenStore.readAccessToken(token.getValue()));
+		Assert.assertNotNull(tokenStore.readAuthentication(token.getValue()));
+		Assert.assertEquals("Revocation should be checked against already decoded claims", 2, decodes.get());
+	}
+
+	@Test
+	public void testRevocationIsShared() throws Exception {
+		OAuth2AccessToken token = tokenServices.createAccessToken(authentication("user", "ui"));
+		TokenDenyList loaded = new TokenDenyList(connectionFactory, 1800);
+
+		TokenDenyList subscribed = new TokenDenyList(connectionFactory, 1800);
+		RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+		container.setConnectionFactory(connectionFactory);
+		container.addMessageListener(subscribed, TokenDenyList.TOPIC);
+		container.afterPropertiesSet();
+		container.start();
+		try {
+			TimeUnit.MILLISECONDS.sleep(500);
+			tokenServices.revokeToken(token.getValue());
+			tokenStore.removeUserTokens("user", Collections.singleton("ui"));
+
+			for (int i = 0; i < 50 && !subscribed.isDenied(token.getValue()); i++) {
+				TimeUnit.MILLISECONDS.sleep(100);
+			}
+			Assert.assertTrue("Revocation should be delivered to subscribed instance", subscribed.isDenied(token.getValue()));
+
+			loaded.load();
+			Assert.assertTrue("Revocation should be loaded on startup", loaded.isDenied(token.getValue()));
+			Assert.assertTrue(loaded.isRevoked("user", "ui", System.currentTimeMillis() - 1000));
+		} finally {
+			container.destroy();
+		}
+	}
+
+	private void useOpaqueClients(String... clients) throws Exception {
+		SignedTokenConverter converter = new SignedTokenConverter(ImmutableSet.copyOf(clients));
+		converter.setSigningKey("secret");
+		converter.afterPropertiesSet();
+		tokenStore = new SignedTokenStore(opaqueTokens, converter, denyList);
+		tokenServices.setTokenStore(tokenStore);
+		tokenServices.setTokenEnhancer(converter);
+	}
+
+	private static TokenRequest refreshRequest(String client) {
+		return new TokenRequest(ImmutableMap.of("grant_type", "refresh_token"), client, Collections.emptySet(), "refresh_token");
+	}
+
+	private static OAuth2Authentication authentication(String user, String client) {
+		OAuth2Request request = new OAuth2Request(ImmutableMap.of("username", user), client, Collections.emptyList(), true,
+				ImmutableSet.of(client), Collections.emptySet(), null, Collections.emptySet(), Collections.emptyMap());
+		return new OAuth2Authentication(request,
+				new UsernamePasswordAuthenticationToken(user, null, Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER"))));
+	}
+}